@@ -41,7 +41,9 @@ public interface Activity {
 	/**
 	 * Execute the activity action and return one of ExecutionResultType types as the result. If the
 	 * execution fails, retries the execution given that ActivityAction.canRetry() return true.
-	 * Continues to retry until ActivityAction.canRetry() returns false.
+	 * Continues to retry, after the delays of the action's {@link RetryPolicy}, until
+	 * ActivityAction.canRetry() returns false or the policy allows no further retries. An attempt
+	 * that does not complete within the timeout of a {@link TimeLimitedAction} fails.
 	 *
 	 * @return {@link ExecutionResultType}
 	 *
@@ -69,6 +71,8 @@ public interface Activity {
 	 * activity.
 	 *
 	 * @param succeedingActivities The activities that this activity must run before.
+	 * @throws IllegalStateException Thrown if a dependency would create a cycle between the
+	 * activities.
 	 */
 	public void before(Activity... succeedingActivities);
 	
@@ -78,6 +82,8 @@ public interface Activity {
 	 * provided activities.
 	 *
 	 * @param precedingActivities TThe activities this activity must run after.
+	 * @throws IllegalStateException Thrown if a dependency would create a cycle between the
+	 * activities.
 	 */
 	public void after(Activity... precedingActivities);
 	
@@ -39,10 +39,9 @@ public interface ActivityAction {
 		DISABLE,
 	
 	    /**
-	     * The action will be disabled for the current execution cycle, but will be executed
-	     * in the next cycle. This is only available when using {@link com.quest.glue.api.services.activities.ActivityService2}.
-	     * When using {@link com.quest.glue.api.services.activities.ActivityService}, this is
-	     * equivalent to returning {@link #DISABLE}
+	     * The action will be disabled for the current execution cycle, along with its dependents,
+	     * but will be executed in the next cycle. The related
+	     * {@link com.activities.api.Activity#isEnabled()} is not affected.
 	     */
 	    DISABLE_ONCE
 	}
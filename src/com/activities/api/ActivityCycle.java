@@ -0,0 +1,58 @@
+package com.activities.api;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A handle to a single execution cycle of an {@link ActivityService}, that is one execution of
+ * its activities while maintaining their dependencies. The cycle executes in the background; the
+ * handle is used to wait for it or to cancel it.
+ */
+public interface ActivityCycle {
+	// Operations
+
+	/**
+	 * Cancels the cycle. No further activities are started and activities that are waiting for a
+	 * thread are removed from the executor. This method does not wait for the activities that are
+	 * executing; they complete, or respond to being interrupted, in the background.
+	 *
+	 * @param mayInterruptIfRunning If true, the threads executing activities of the cycle are
+	 * interrupted. Otherwise, those activities are allowed to complete.
+	 * @return True, if the cycle was cancelled by this call. False, if it had already completed or
+	 * been cancelled.
+	 */
+	public boolean cancel(boolean mayInterruptIfRunning);
+
+	/**
+	 * @return True, if the cycle was cancelled before it completed.
+	 */
+	public boolean isCancelled();
+
+	/**
+	 * @return True, if the cycle completed, failed or was cancelled.
+	 */
+	public boolean isDone();
+
+	/**
+	 * Waits until the cycle has completed.
+	 *
+	 * @throws InterruptedException Thrown if the waiting thread was interrupted, or execution was
+	 * interrupted.
+	 * @throws ActivityException Thrown if an activity failed unexpectedly.
+	 * @throws CancellationException Thrown if the cycle was cancelled.
+	 */
+	public void await() throws InterruptedException, ActivityException;
+
+	/**
+	 * Waits at most the given time until the cycle has completed.
+	 *
+	 * @param timeout The maximum time to wait.
+	 * @param unit The unit of the timeout.
+	 * @return True, if the cycle completed. False, if the time elapsed first.
+	 * @throws InterruptedException Thrown if the waiting thread was interrupted, or execution was
+	 * interrupted.
+	 * @throws ActivityException Thrown if an activity failed unexpectedly.
+	 * @throws CancellationException Thrown if the cycle was cancelled.
+	 */
+	public boolean await(long timeout, TimeUnit unit) throws InterruptedException, ActivityException;
+}
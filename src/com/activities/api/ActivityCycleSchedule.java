@@ -0,0 +1,68 @@
+package com.activities.api;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A handle to the recurring execution cycles of an {@link ActivityService}. Only one cycle of a
+ * schedule executes at a time. Triggers that arrive while a cycle is executing, whether from the
+ * schedule itself or from {@link #trigger()}, are coalesced into a single cycle that starts as
+ * soon as the executing cycle completes.
+ */
+public interface ActivityCycleSchedule {
+	// Operations
+
+	/**
+	 * Requests an execution cycle right away, in addition to the scheduled ones. If a cycle is
+	 * executing, the request is coalesced with any other requests made while it executes.
+	 */
+	public void trigger();
+
+	/**
+	 * Cancels the schedule such that no further cycles are started.
+	 *
+	 * @param mayInterruptIfRunning If true, the thread executing the current cycle, if any, is
+	 * interrupted. Otherwise, the current cycle is allowed to complete.
+	 * @return True, if the schedule was cancelled by this call. False, if it was already cancelled.
+	 */
+	public boolean cancel(boolean mayInterruptIfRunning);
+
+	/**
+	 * @return True, if the schedule was cancelled.
+	 */
+	public boolean isCancelled();
+
+	/**
+	 * @return True, if a cycle is executing.
+	 */
+	public boolean isRunning();
+
+	/**
+	 * @return The number of cycles that have completed, successfully or not.
+	 */
+	public long getCycleCount();
+
+	/**
+	 * @return The number of triggers that arrived while a cycle was executing and were coalesced
+	 * into a later cycle, including the periods skipped because a cycle overran them.
+	 */
+	public long getCoalescedTriggerCount();
+
+	/**
+	 * @return The number of cycles that took longer than the period of the schedule.
+	 */
+	public long getOverrunCount();
+
+	/**
+	 * @param unit The unit of the returned duration.
+	 * @return The longest amount of time by which a cycle took longer than the period of the
+	 * schedule.
+	 */
+	public long getMaxOverrun(TimeUnit unit);
+
+	/**
+	 * @param unit The unit of the returned duration.
+	 * @return The sum of the amounts of time by which cycles took longer than the period of the
+	 * schedule.
+	 */
+	public long getTotalOverrun(TimeUnit unit);
+}
@@ -0,0 +1,152 @@
+package com.activities.api;
+
+import java.util.concurrent.TimeUnit;
+
+import com.activities.api.ActivityAction.ExecutionResultType;
+
+/**
+ * Describes something that happened to an activity while an execution cycle was executing it.
+ * Events are delivered to the {@link ActivityListener}s of the {@link ActivityService} that
+ * executes the cycle.
+ */
+public class ActivityEvent {
+	// Attributes
+
+	/**
+	 * What happened to the activity.
+	 */
+	private final Type mType;
+
+	/**
+	 * The result of the activity, if any.
+	 */
+	private final ExecutionResultType mResult;
+
+	/**
+	 * When it happened, in milliseconds since the epoch.
+	 */
+	private final long mTimestamp;
+
+	/**
+	 * How long the activity took to execute, in nanoseconds.
+	 */
+	private final long mDuration;
+
+	// Associations
+
+	/**
+	 * The activity.
+	 */
+	private final Activity mActivity;
+
+	// Constructors
+
+	/**
+	 * Constructs the event.
+	 *
+	 * @param type What happened to the activity.
+	 * @param activity The activity.
+	 * @param result The result of the activity, or null if it has none.
+	 * @param timestamp When it happened, in milliseconds since the epoch.
+	 * @param duration How long the activity took to execute, in nanoseconds. Zero if it did not
+	 * finish executing.
+	 */
+	public ActivityEvent(Type type, Activity activity, ExecutionResultType result, long timestamp,
+		long duration) {
+		mType = type;
+		mActivity = activity;
+		mResult = result;
+		mTimestamp = timestamp;
+		mDuration = duration;
+	}
+
+	// Operations
+
+	/**
+	 * @return What happened to the activity.
+	 */
+	public Type getType() {
+		return mType;
+	}
+
+	/**
+	 * @return The activity.
+	 */
+	public Activity getActivity() {
+		return mActivity;
+	}
+
+	/**
+	 * @return The result of the activity for {@link Type#FINISHED}, {@link Type#RETRIED} and
+	 * {@link Type#REUSED} events. Otherwise, null.
+	 */
+	public ExecutionResultType getResult() {
+		return mResult;
+	}
+
+	/**
+	 * @return When it happened, in milliseconds since the epoch.
+	 */
+	public long getTimestamp() {
+		return mTimestamp;
+	}
+
+	/**
+	 * @param unit The unit of the returned duration.
+	 * @return How long the last attempt of the activity took for {@link Type#FINISHED} and
+	 * {@link Type#RETRIED} events. Otherwise, zero.
+	 */
+	public long getDuration(TimeUnit unit) {
+		return unit.convert(mDuration, TimeUnit.NANOSECONDS);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "ActivityEvent [type=" + mType + ", activity=" + mActivity.getActionName() +
+			", result=" + mResult + ", timestamp=" + mTimestamp + ", duration=" +
+			TimeUnit.NANOSECONDS.toMillis(mDuration) + "ms]";
+	}
+
+	// Inner classes
+
+	/**
+	 * What happened to an activity.
+	 */
+	public static enum Type {
+		/**
+		 * An attempt to execute the activity has started.
+		 */
+		STARTED,
+
+		/**
+		 * The activity has finished executing and will not be attempted again in this cycle.
+		 */
+		FINISHED,
+
+		/**
+		 * An attempt to execute the activity failed and it will be attempted again after a delay.
+		 */
+		RETRIED,
+
+		/**
+		 * The activity will not be executed in this cycle because an activity it depends on did
+		 * not execute successfully.
+		 */
+		DISABLED,
+
+		/**
+		 * The activity was not executed because the cycle passed its deadline.
+		 */
+		SKIPPED,
+
+		/**
+		 * The activity was not executed because neither its inputs nor the activities it depends
+		 * on have changed since its last successful execution, and is treated as successful.
+		 */
+		REUSED
+	}
+}
@@ -31,7 +31,10 @@ public interface ActivityGroup extends Activity {
 	/**
 	 * By default, groups execute their contained activities on a single
 	 * threaded, in sequence. This can be changed to use the same pool of
-	 * threads that the service allocates to all activities.
+	 * threads that the service allocates to all activities. The thread
+	 * executing a multi-threaded group helps executing its activities
+	 * rather than waiting for a free thread, so nested groups cannot
+	 * exhaust the pool.
 	 *
 	 * @param multithreaded true if the activities contained in this group should
 	 *                 be executed in parallel and false if they should be
@@ -0,0 +1,44 @@
+package com.activities.api;
+
+/**
+ * Receives the {@link ActivityEvent}s of the execution cycles of an {@link ActivityService} as
+ * they happen, rather than once a cycle has completed.
+ * <p/>
+ * Every listener has a bounded buffer of its own that events are queued in, so a slow listener
+ * neither delays other listeners nor holds the threads executing activities, unless its
+ * {@link OverflowPolicy} says so. Events are delivered to a listener in the order they were
+ * queued, by one thread at a time.
+ */
+public interface ActivityListener {
+	// Operations
+
+	/**
+	 * Called for every event. Must not throw; exceptions are logged and otherwise ignored.
+	 *
+	 * @param event The event.
+	 */
+	public void onEvent(ActivityEvent event);
+
+	// Inner classes
+
+	/**
+	 * What to do with an event when the buffer of a listener is full.
+	 */
+	public static enum OverflowPolicy {
+		/**
+		 * Wait for the listener to make room, stalling the thread that executes the activity.
+		 * No events are lost.
+		 */
+		BLOCK,
+
+		/**
+		 * Discard the oldest event in the buffer to make room.
+		 */
+		DROP_OLDEST,
+
+		/**
+		 * Discard the new event.
+		 */
+		DROP_NEWEST
+	}
+}
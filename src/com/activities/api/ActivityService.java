@@ -2,6 +2,7 @@ package com.activities.api;
 
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The activities service provides the capability to manage activities, execute the required
@@ -19,6 +20,40 @@ public interface ActivityService {
 	 */
 	public Activity create(ActivityAction action) throws ActivityException;
 	
+	/**
+	 * Creates an empty activity group. The group is executed like any other activity once it is
+	 * added to the execution queue, and executes the activities added to it in turn.
+	 *
+	 * @param name The name of the group. Cannot be null or an empty string.
+	 * @return The created group.
+	 * @throws ActivityException Thrown if the name is null or an empty string.
+	 */
+	public ActivityGroup createGroup(String name) throws ActivityException;
+	
+	/**
+	 * Creates a slot through which the activity hands its output to the activities that depend
+	 * on it. All slots of an activity share its output.
+	 *
+	 * @param activity The activity producing the output. Cannot be null.
+	 * @param type The type of the output. Cannot be null.
+	 * @return The created slot.
+	 * @throws ActivityException Thrown if the activity or the type is null.
+	 */
+	public <T> OutputSlot<T> createOutputSlot(Activity activity, Class<T> type) throws ActivityException;
+	
+	/**
+	 * Creates a resource of which only a limited number of tokens exist, to be needed by
+	 * {@link ResourceAction}s. Should a resource with the same name exist already, the existing
+	 * resource is returned instead, with its own capacity.
+	 *
+	 * @param name The name of the resource. Cannot be null or an empty string.
+	 * @param capacity The number of tokens of the resource. Must be positive.
+	 * @return The resource.
+	 * @throws ActivityException Thrown if the name is null or an empty string, or the capacity is
+	 * not positive.
+	 */
+	public Resource createResource(String name, int capacity) throws ActivityException;
+	
 	/**
 	 * Add the activities to the execution queue.
 	 *
@@ -33,6 +68,8 @@ public interface ActivityService {
 	 *
 	 * @param activity The activity to add before one or more activities.
 	 * @param succeedingActivities The activities to run before the activity being added.
+	 * @throws IllegalStateException Thrown if a dependency would create a cycle between the
+	 * activities. Dependencies added before it are kept.
 	 */
 	public void before(Activity activity, Activity... succeedingActivities);
 	
@@ -43,6 +80,8 @@ public interface ActivityService {
 	 *
 	 * @param activity The activity to add after one or more activities.
 	 * @param precedingActivities The activities to run after the activity being added.
+	 * @throws IllegalStateException Thrown if a dependency would create a cycle between the
+	 * activities. Dependencies added before it are kept.
 	 */
 	public void after(Activity activity, Activity... precedingActivities);
 	
@@ -90,11 +129,112 @@ public interface ActivityService {
 	public void executeFiltered(List<Activity> activityList, boolean parallelExecution)
 		throws InterruptedException, ActivityException;
 	
+	/**
+	 * Iterate over the execution queue executing activities in the defined order within a
+	 * deadline. Activities still executing when the deadline passes are interrupted and treated
+	 * as failed, so their dependents are disabled, and activities that have not started by then
+	 * are skipped.
+	 * @param parallelExecution If true, actions will be executed in parallel while maintaining their
+	 * dependencies. If false, actions will be executed sequentially.
+	 * @param timeout How long the execution may take. Zero or less for no limit.
+	 * @param unit The unit of the timeout.
+	 * @throws InterruptedException Thrown if execution was interrupted
+	 * @throws ActivityException Thrown if an activity failed unexpectedly, or activities that do
+	 * not respond to being interrupted were still executing a grace period after the deadline.
+	 */
+	public void executeAll(boolean parallelExecution, long timeout, TimeUnit unit)
+		throws InterruptedException, ActivityException;
+	
+	/**
+	 * Executes the provided activities in the defined order within a deadline, as described by
+	 * {@link #executeAll(boolean, long, TimeUnit)}.
+	 * @param activityList The list of activities to execute.
+	 * @param parallelExecution If true, actions will be executed in parallel while maintaining their
+	 * dependencies. If false, actions will be executed sequentially.
+	 * @param timeout How long the execution may take. Zero or less for no limit.
+	 * @param unit The unit of the timeout.
+	 * @throws InterruptedException Thrown if execution was interrupted
+	 * @throws ActivityException Thrown if an activity failed unexpectedly, or activities that do
+	 * not respond to being interrupted were still executing a grace period after the deadline.
+	 */
+	public void executeFiltered(List<Activity> activityList, boolean parallelExecution, long timeout,
+		TimeUnit unit) throws InterruptedException, ActivityException;
+	
+	/**
+	 * Starts an execution cycle of all activities in the defined order without waiting for it.
+	 * @param parallelExecution If true, actions will be executed in parallel while maintaining their
+	 * dependencies. If false, actions will be executed sequentially on a thread of the service.
+	 * @return The handle to wait for, or cancel, the cycle with.
+	 */
+	public ActivityCycle submitAll(boolean parallelExecution);
+	
+	/**
+	 * Starts an execution cycle of the provided activities in the defined order without waiting
+	 * for it.
+	 * @param activityList The list of activities to execute.
+	 * @param parallelExecution If true, actions will be executed in parallel while maintaining their
+	 * dependencies. If false, actions will be executed sequentially on a thread of the service.
+	 * @return The handle to wait for, or cancel, the cycle with.
+	 */
+	public ActivityCycle submitFiltered(List<Activity> activityList, boolean parallelExecution);
+	
+	/**
+	 * Adds a listener that receives an {@link ActivityEvent} as each activity of an execution
+	 * cycle starts, finishes, is retried, disabled or skipped.
+	 * @param listener The listener to add.
+	 * @param capacity The number of events that may be buffered for the listener.
+	 * @param overflowPolicy What to do with an event when the buffer of the listener is full.
+	 * @throws IllegalArgumentException Thrown if the capacity is not positive.
+	 */
+	public void addListener(ActivityListener listener, int capacity,
+		ActivityListener.OverflowPolicy overflowPolicy);
+	
+	/**
+	 * Removes a listener. Events already buffered for it are still delivered.
+	 * @param listener The listener to remove.
+	 * @return True, if the listener was removed. False, if it had not been added.
+	 */
+	public boolean removeListener(ActivityListener listener);
+	
+	/**
+	 * Executes all activities in recurring cycles that start at a fixed rate. If a cycle takes
+	 * longer than the period, the triggers that arrive while it executes are coalesced into a
+	 * single cycle that starts as soon as it completes.
+	 *
+	 * @param initialDelay The delay before the first cycle.
+	 * @param period The period between the starts of consecutive cycles.
+	 * @param maxJitter The maximum random delay added to every start. Zero for none.
+	 * @param unit The unit of the delays and period.
+	 * @param parallelExecution If true, actions will be executed in parallel while maintaining their
+	 * dependencies. If false, actions will be executed sequentially.
+	 * @return The handle to the schedule.
+	 */
+	public ActivityCycleSchedule scheduleAtFixedRate(long initialDelay, long period, long maxJitter,
+		TimeUnit unit, boolean parallelExecution);
+	
+	/**
+	 * Executes all activities in recurring cycles with a fixed delay between the end of one cycle
+	 * and the start of the next. Cycles requested through {@link ActivityCycleSchedule#trigger()}
+	 * while a cycle executes are coalesced into a single cycle that starts as soon as it completes.
+	 *
+	 * @param initialDelay The delay before the first cycle.
+	 * @param delay The delay between the end of one cycle and the start of the next.
+	 * @param maxJitter The maximum random delay added to every start. Zero for none.
+	 * @param unit The unit of the delays.
+	 * @param parallelExecution If true, actions will be executed in parallel while maintaining their
+	 * dependencies. If false, actions will be executed sequentially.
+	 * @return The handle to the schedule.
+	 */
+	public ActivityCycleSchedule scheduleWithFixedDelay(long initialDelay, long delay, long maxJitter,
+		TimeUnit unit, boolean parallelExecution);
+	
 	/**
 	 * Resets the execution queue such that all activities are removed from the execution along with
 	 * any tags that the activities were tagged with. After calling executeAll(), it is recommended
 	 * that the execution queue be reset in order to avoid having duplicate activities in the execution
-	 * queue that share the same action.
+	 * queue that share the same action. A reset is not needed to execute activities again that
+	 * failed or returned {@link ActivityAction.ExecutionResultType#DISABLE_ONCE}; they, and their
+	 * dependents, are executed by the next execution anyway.
 	 */
 	public void reset();
 	
@@ -131,4 +271,28 @@ public interface ActivityService {
 	 * @param tags The tags to untag the activity with.
 	 */
 	public void untag(Activity activity, Tag... tags);
+	
+	/**
+	 * Limits how fast activities whose actions carry the tag are started, replacing any limit the
+	 * tag had. Up to a burst of activities may start at once, after which they start at the given
+	 * rate. Activities over the limit are deferred without holding a thread until they may start.
+	 * An activity whose action carries several limited tags waits for all of them.
+	 *
+	 * @param tag The tag to limit.
+	 * @param permitsPerSecond The number of activities that may start per second. Zero or less to
+	 * remove the limit.
+	 * @param burst The number of activities that may start at once after a quiet period. At least
+	 * one is always allowed.
+	 */
+	public void setRateLimit(Tag tag, double permitsPerSecond, int burst);
+	
+	/**
+	 * Returns how long an activity whose action carries the tag would currently be deferred by
+	 * the limit of the tag before it could start.
+	 *
+	 * @param tag The tag.
+	 * @param unit The unit of the returned delay.
+	 * @return The throttle delay. Zero if the tag is not limited or not throttled at the moment.
+	 */
+	public long getThrottleDelay(Tag tag, TimeUnit unit);
 }
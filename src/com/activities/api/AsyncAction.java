@@ -0,0 +1,32 @@
+package com.activities.api;
+
+import java.util.concurrent.CompletionStage;
+
+import com.activities.api.ActivityAction.ExecutionResultType;
+
+/**
+ * An {@link com.activities.api.ActivityAction} that spends most of its time waiting on
+ * something else, a callback based client for example, can implement this optional interface
+ * so that no thread is held while it waits. The service then calls {@link #performAsync()}
+ * instead of {@link com.activities.api.ActivityAction#perform()} and releases the dependent
+ * activities once the returned stage completes.
+ * <p/>
+ * Failed executions are retried, while {@link com.activities.api.ActivityAction#canRetry()}
+ * returns true, by calling {@link #performAsync()} again once the previous stage has completed.
+ * A stage that completes exceptionally is treated as {@link ExecutionResultType#FAILURE}.
+ * <p/>
+ * Actions implementing this interface can be freely combined with regular actions in the same
+ * set of activities.
+ */
+public interface AsyncAction {
+	/**
+	 * Starts the action and returns without waiting for it to complete. The returned stage must
+	 * eventually complete, otherwise the activity and its dependents never complete either.
+	 *
+	 * @return The stage that completes with one of the {@link ExecutionResultType} types once
+	 * the action has completed.
+	 *
+	 * @throws Exception if the action could not be started
+	 */
+	public CompletionStage<ExecutionResultType> performAsync() throws Exception;
+}
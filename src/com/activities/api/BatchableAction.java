@@ -0,0 +1,58 @@
+package com.activities.api;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.activities.api.ActivityAction.ExecutionResultType;
+
+/**
+ * An {@link ActivityAction} whose work is cheaper to do for many actions at once, for example
+ * one small remote call per action that a remote service also accepts in bulk, can implement
+ * this optional interface. Activities that are ready to be executed, and whose actions return
+ * equal batch keys, are then collected into a batch and performed by a single call to
+ * {@link #performBatch(List)} instead of calling {@link ActivityAction#perform()} on each.
+ * <p/>
+ * A batch is opened by the first activity that becomes ready and is performed once it holds the
+ * maximum number of actions or once its linger time has elapsed, whichever comes first. Its
+ * size and linger time are those of the action that opened it. Activities executed
+ * sequentially are only batched with activities that are ready at the same time.
+ * <p/>
+ * Every action of the batch gets its own result. Activities whose action failed are retried,
+ * and their dependents released or disabled, as if they had been executed by themselves.
+ */
+public interface BatchableAction {
+	/**
+	 * @return The key of the batches the action may be part of. Actions are only batched with
+	 * actions whose keys are equal, typically actions of the same class calling the same remote
+	 * service.
+	 */
+	public Object getBatchKey();
+
+	/**
+	 * @return The maximum number of actions of a batch opened by this action. One or less for no
+	 * batching.
+	 */
+	public int getMaxBatchSize();
+
+	/**
+	 * @param unit The unit of the returned time.
+	 * @return How long a batch opened by this action waits for further actions before it is
+	 * performed. Zero or less to perform it as soon as a thread is free to, with whatever actions
+	 * have joined it by then.
+	 */
+	public long getBatchLinger(TimeUnit unit);
+
+	/**
+	 * Performs the actions of a batch. Called on one of the actions of the batch, which is
+	 * included in the list.
+	 *
+	 * @param actions The actions of the batch, all with equal batch keys.
+	 * @return The results of the actions in the order of the list. A missing or null result is
+	 * treated as {@link ExecutionResultType#FAILURE}.
+	 *
+	 * @throws Exception if the batch could not be performed, in which case every action of the
+	 * batch failed
+	 */
+	public List<ExecutionResultType> performBatch(List<ActivityAction> actions)
+		throws InterruptedException, Exception;
+}
@@ -0,0 +1,25 @@
+package com.activities.api;
+
+/**
+ * An {@link ActivityAction} whose {@link ActivityAction#perform()} method recomputes the same
+ * output as long as its inputs are unchanged can implement this optional interface to be
+ * skipped by execution cycles in which nothing it depends on has changed. The fingerprint
+ * identifies the inputs of the action, for example a version number or a checksum of the data
+ * it reads.
+ * <p/>
+ * An activity is skipped, and treated as having executed successfully, if its fingerprint is
+ * equal to the one of its last successful execution and none of the activities it depends on
+ * has executed since. The activities it depends on must therefore implement this interface as
+ * well, or it is always executed. Its dependents are released right away.
+ * <p/>
+ * The results are kept by the service in a cache of bounded size, configured through a system
+ * property, which evicts the least recently used results first.
+ */
+public interface FingerprintedAction {
+	/**
+	 * @return A value identifying the inputs of the action, which must implement
+	 * {@link Object#equals(Object)} and {@link Object#hashCode()}. Null if the inputs are unknown,
+	 * in which case the action is performed.
+	 */
+	public Object getFingerprint();
+}
@@ -0,0 +1,21 @@
+package com.activities.api;
+
+/**
+ * An {@link ActivityAction} that is idempotent, and whose {@link ActivityAction#perform()} method
+ * occasionally takes much longer than usual, for example because it happened to call a slow
+ * replica, can implement this marker interface to have the execution cycles hedge it. If an
+ * attempt has not finished once it has taken longer than a percentile of the action's most
+ * recent durations, configured through a system property, a second attempt is started on another
+ * thread of the service's executor.
+ * <p/>
+ * Whichever attempt succeeds first wins, and the other one is interrupted. A hedge that wins
+ * completes the activity and releases its dependents right away; the result of the first attempt
+ * is discarded whenever it returns, and the activity may be executed again before it has. A hedge
+ * that fails leaves the first attempt to finish on its own. Since both attempts may perform the
+ * action at the same time, it must be safe to perform concurrently with itself.
+ * <p/>
+ * Actions are only hedged once enough of their durations have been recorded, and
+ * {@link AsyncAction}s and {@link BatchableAction}s are never hedged.
+ */
+public interface HedgeableAction {
+}
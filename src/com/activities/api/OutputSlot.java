@@ -0,0 +1,49 @@
+package com.activities.api;
+
+/**
+ * A typed slot through which an activity hands its output to the activities that depend on it.
+ * Every execution cycle keeps the outputs of its own activities: the action of the producing
+ * activity sets the output while it is being performed, and the actions of its dependents get
+ * it, by reference, once they are performed in turn. The output is released as soon as the last
+ * dependent of the producing activity has completed, so large intermediate results do not live
+ * for the whole cycle.
+ * <p/>
+ * Outputs can only be set and got from {@link ActivityAction#perform()}, on the thread
+ * performing the action, while the activity is executed by an execution cycle. They are not
+ * available to {@link AsyncAction}s or {@link BatchableAction}s, nor to activities executed
+ * directly through {@link Activity#execute()}.
+ *
+ * @param <T> The type of the output.
+ */
+public interface OutputSlot<T> {
+	/**
+	 * @return The activity producing the output.
+	 */
+	public Activity getActivity();
+
+	/**
+	 * @return The type of the output.
+	 */
+	public Class<T> getType();
+
+	/**
+	 * Sets the output of the producing activity for the execution cycle executing it, replacing
+	 * any output it set before. The output is not set if no activity depends on the producing
+	 * activity.
+	 *
+	 * @param value The output, or null to clear it.
+	 * @throws IllegalStateException Thrown if not called by the action of the producing activity
+	 * while it is executed by an execution cycle.
+	 * @throws ClassCastException Thrown if the output is not of the type of the slot.
+	 */
+	public void set(T value);
+
+	/**
+	 * @return The output set by the producing activity in the execution cycle executing the
+	 * calling activity, or null if it set none, for example because it was not part of the cycle
+	 * or its last result was reused.
+	 * @throws IllegalStateException Thrown if not called by the action of an activity that depends
+	 * on the producing activity while it is executed by an execution cycle.
+	 */
+	public T get();
+}
@@ -0,0 +1,25 @@
+package com.activities.api;
+
+/**
+ * A named resource of which only a limited number of tokens exist, for example the connections
+ * of a database pool or the requests allowed to one host at a time. Activities whose actions are
+ * {@link ResourceAction}s are only started by an execution cycle once a token of every resource
+ * they need is free, and hold the tokens until their attempt has finished. Resources are created
+ * by, and shared between the execution cycles of, an {@link ActivityService}.
+ */
+public interface Resource {
+	/**
+	 * @return The name of the resource.
+	 */
+	public String getName();
+
+	/**
+	 * @return The number of tokens of the resource.
+	 */
+	public int getCapacity();
+
+	/**
+	 * @return The number of tokens of the resource no attempt is holding at the moment.
+	 */
+	public int getAvailable();
+}
@@ -0,0 +1,22 @@
+package com.activities.api;
+
+/**
+ * An {@link ActivityAction} that needs limited resources, such as database connections or a
+ * share of the requests allowed to a host, can implement this optional interface to declare
+ * them instead of acquiring them inside its {@link ActivityAction#perform()} method. An execution
+ * cycle only starts the activity once a token of every resource it needs is free; until then,
+ * it executes other ready activities rather than blocking a thread on the resources.
+ * <p/>
+ * This is the counterpart of {@link PostponableAction} for limits the service knows about. The
+ * tokens are held from the start of an attempt until it has finished, and are released before
+ * the activity waits to be retried. Actions that need resources are neither batched nor hedged.
+ */
+public interface ResourceAction {
+	/**
+	 * @return The resources a token of each of which is needed to perform the action. A resource
+	 * listed more than once needs as many tokens, but no more than its capacity; otherwise the
+	 * execution fails with an {@link IllegalArgumentException} once the action would have to wait
+	 * for them. The resources must have been created by the service executing the activity.
+	 */
+	public Resource[] getResources();
+}
@@ -0,0 +1,114 @@
+package com.activities.api;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how often, and after which delay, an activity whose action failed is retried. The
+ * delay grows exponentially with every retry up to a maximum. With jitter, every delay is
+ * randomly shortened by up to half, so that activities failing together do not retry in lock
+ * step.
+ * <p/>
+ * {@link ActivityAction#canRetry()} is still consulted before every retry.
+ */
+public class RetryPolicy {
+	// Attributes
+
+	/**
+	 * The maximum number of retries after the first attempt.
+	 */
+	private final int mMaxRetries;
+
+	/**
+	 * The delay before the first retry, in nanoseconds.
+	 */
+	private final long mInitialDelay;
+
+	/**
+	 * The maximum delay before a retry, in nanoseconds.
+	 */
+	private final long mMaxDelay;
+
+	/**
+	 * The factor the delay grows by with every retry.
+	 */
+	private final double mMultiplier;
+
+	/**
+	 * Indicates whether delays are randomly shortened by up to half.
+	 */
+	private final boolean mJitter;
+
+	// Constructors
+
+	/**
+	 * Constructs the retry policy.
+	 *
+	 * @param maxRetries The maximum number of retries after the first attempt. Zero for none.
+	 * @param initialDelay The delay before the first retry.
+	 * @param maxDelay The maximum delay before a retry.
+	 * @param unit The unit of the delays.
+	 * @param multiplier The factor the delay grows by with every retry. One for a constant delay.
+	 * @param jitter If true, every delay is randomly shortened by up to half.
+	 * @throws IllegalArgumentException Thrown if the number of retries or a delay is negative, or
+	 * the multiplier is less than one.
+	 */
+	public RetryPolicy(int maxRetries, long initialDelay, long maxDelay, TimeUnit unit,
+		double multiplier, boolean jitter) {
+		if (maxRetries < 0 || initialDelay < 0 || maxDelay < 0 || !(multiplier >= 1)) {
+			throw new IllegalArgumentException("Invalid retry policy [maxRetries: " + maxRetries +
+				", initialDelay: " + initialDelay + ", maxDelay: " + maxDelay + ", multiplier: " +
+				multiplier + "].");
+		}
+
+		mMaxRetries = maxRetries;
+		mInitialDelay = unit.toNanos(initialDelay);
+		mMaxDelay = unit.toNanos(maxDelay);
+		mMultiplier = multiplier;
+		mJitter = jitter;
+	}
+
+	// Operations
+
+	/**
+	 * @return The maximum number of retries after the first attempt.
+	 */
+	public int getMaxRetries() {
+		return mMaxRetries;
+	}
+
+	/**
+	 * @param retryCount The number of retries attempted so far.
+	 * @return True, if another retry is allowed.
+	 */
+	public boolean canRetry(int retryCount) {
+		return retryCount < mMaxRetries;
+	}
+
+	/**
+	 * @param retryCount The number of retries attempted so far.
+	 * @param unit The unit of the returned delay.
+	 * @return The delay before the next retry.
+	 */
+	public long getDelay(int retryCount, TimeUnit unit) {
+		double delay = Math.min(mInitialDelay * Math.pow(mMultiplier, retryCount), mMaxDelay);
+
+		if (mJitter) {
+			delay -= ThreadLocalRandom.current().nextDouble() * delay / 2;
+		}
+
+		return unit.convert((long)delay, TimeUnit.NANOSECONDS);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "RetryPolicy [maxRetries=" + mMaxRetries + ", initialDelay=" +
+			TimeUnit.NANOSECONDS.toMillis(mInitialDelay) + "ms, maxDelay=" +
+			TimeUnit.NANOSECONDS.toMillis(mMaxDelay) + "ms, multiplier=" + mMultiplier +
+			", jitter=" + mJitter + "]";
+	}
+}
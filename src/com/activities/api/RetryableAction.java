@@ -0,0 +1,19 @@
+package com.activities.api;
+
+/**
+ * An {@link ActivityAction} that fails can be retried by the service, after a delay, while
+ * {@link ActivityAction#canRetry()} returns {@code true}. By default, every action is retried
+ * according to the same policy, configured through system properties. Actions that fail for
+ * reasons that need a different number of retries or a different delay, for example a flapping
+ * remote dependency, can implement this optional interface to provide their own policy.
+ * <p/>
+ * No thread is held by an activity while it waits to be retried. Other activities may be
+ * executed in the meantime.
+ */
+public interface RetryableAction {
+	/**
+	 * @return The policy deciding how often, and after which delay, the action is retried once it
+	 *         has failed. If null, the default policy is used.
+	 */
+	public RetryPolicy getRetryPolicy();
+}
@@ -0,0 +1,24 @@
+package com.activities.api;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link ActivityAction} whose {@link ActivityAction#perform()} method may block for a long
+ * time, for example on a network call, can limit how long each attempt may take by implementing
+ * this optional interface. By default, every attempt is limited by the same timeout, configured
+ * through a system property, which is unlimited unless set.
+ * <p/>
+ * Once the timeout expires, the thread performing the action is interrupted and the attempt is
+ * treated as a {@link ActivityAction.ExecutionResultType#FAILURE}, so the dependents of the
+ * activity are disabled while the other activities continue to execute. Cancellation is
+ * cooperative: an action that neither blocks interruptibly nor checks
+ * {@link Thread#isInterrupted()} still holds its thread until it returns. The asynchronous
+ * operation of an {@link AsyncAction} is not interrupted; its late result is ignored.
+ */
+public interface TimeLimitedAction {
+	/**
+	 * @param unit The unit of the returned timeout.
+	 * @return How long an attempt to perform the action may take. Zero or less for no limit.
+	 */
+	public long getTimeout(TimeUnit unit);
+}
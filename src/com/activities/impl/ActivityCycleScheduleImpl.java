@@ -0,0 +1,408 @@
+package com.activities.impl;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.activities.api.ActivityCycleSchedule;
+import com.activities.api.ActivityException;
+import com.activities.utils.CorePoolThreadFactory;
+
+/**
+ * Executes all activities of a service in recurring cycles, either at a fixed rate or with a
+ * fixed delay between the end of one cycle and the start of the next. A random jitter of up to a
+ * configured amount is added to every delay, so that the cycles of many services do not start in
+ * lock step.
+ * <p/>
+ * The triggers of all schedules are fired by a single timer thread, while the cycles themselves
+ * are executed on threads of their own, so neither the timer nor the activity executor's threads
+ * are held by a cycle that is waiting for its activities.
+ */
+/*pkg*/ class ActivityCycleScheduleImpl implements ActivityCycleSchedule {
+	// Constants
+
+	/**
+	 * The Logger instance.
+	 */
+	private static final Log CAT = LogFactory.getLog(ActivityCycleScheduleImpl.class);
+
+	/**
+	 * The timer thread firing the triggers of all schedules.
+	 */
+	private static final ScheduledThreadPoolExecutor TIMER;
+
+	static {
+		TIMER = new ScheduledThreadPoolExecutor(1, new CorePoolThreadFactory("ActivityCycleTimer"));
+		TIMER.setRemoveOnCancelPolicy(true);
+	}
+
+	// Attributes
+
+	/**
+	 * Indicates whether the activities are executed in parallel.
+	 */
+	private final boolean mParallelExecution;
+
+	/**
+	 * Indicates whether cycles start at a fixed rate, rather than with a fixed delay in between.
+	 */
+	private final boolean mFixedRate;
+
+	/**
+	 * The period, or the delay between cycles, in nanoseconds.
+	 */
+	private final long mPeriod;
+
+	/**
+	 * The maximum jitter added to every delay, in nanoseconds.
+	 */
+	private final long mMaxJitter;
+
+	/**
+	 * The time the next trigger is due without jitter, in {@link System#nanoTime()} terms. Only
+	 * used at a fixed rate.
+	 */
+	private long mNextTriggerTime;
+
+	/**
+	 * Indicates whether a cycle is executing.
+	 */
+	private boolean mRunning;
+
+	/**
+	 * Indicates whether a trigger arrived while a cycle was executing.
+	 */
+	private boolean mTriggerPending;
+
+	/**
+	 * Indicates whether the schedule was cancelled.
+	 */
+	private volatile boolean mCancelled;
+
+	/**
+	 * The number of cycles that have completed.
+	 */
+	private long mCycleCount;
+
+	/**
+	 * The number of triggers that were coalesced into a later cycle.
+	 */
+	private long mCoalescedTriggerCount;
+
+	/**
+	 * The number of cycles that took longer than the period.
+	 */
+	private long mOverrunCount;
+
+	/**
+	 * The longest overrun, in nanoseconds.
+	 */
+	private long mMaxOverrun;
+
+	/**
+	 * The sum of all overruns, in nanoseconds.
+	 */
+	private long mTotalOverrun;
+
+	// Associations
+
+	/**
+	 * The service whose activities are executed.
+	 */
+	private final ActivityServiceImpl mService;
+
+	/**
+	 * The next scheduled trigger.
+	 */
+	private ScheduledFuture<?> mTriggerFuture;
+
+	/**
+	 * The cycle that is executing.
+	 */
+	private ExecutionCycle mCycle;
+
+	// Constructors
+
+	/**
+	 * Constructs the schedule. It is started by {@link #start(long)}.
+	 *
+	 * @param service The service whose activities are executed.
+	 * @param parallelExecution If true, activities are executed in parallel while maintaining their
+	 * dependencies. If false, activities are executed sequentially.
+	 * @param fixedRate If true, cycles start at a fixed rate. If false, with a fixed delay between
+	 * the end of one cycle and the start of the next.
+	 * @param period The period, or the delay between cycles, in nanoseconds.
+	 * @param maxJitter The maximum jitter added to every delay, in nanoseconds.
+	 */
+	/*pkg*/ ActivityCycleScheduleImpl(ActivityServiceImpl service, boolean parallelExecution,
+		boolean fixedRate, long period, long maxJitter) {
+		mService = service;
+		mParallelExecution = parallelExecution;
+		mFixedRate = fixedRate;
+		mPeriod = period;
+		mMaxJitter = maxJitter;
+	}
+
+	// Operations
+
+	/**
+	 * Schedules the first trigger.
+	 *
+	 * @param initialDelay The delay before the first cycle, in nanoseconds.
+	 */
+	/*pkg*/ synchronized void start(long initialDelay) {
+		mNextTriggerTime = System.nanoTime() + initialDelay;
+		scheduleTrigger(initialDelay);
+	}
+
+	/**
+	 * Schedules the next trigger after the delay plus jitter. The caller must hold the lock.
+	 *
+	 * @param delay The delay in nanoseconds.
+	 */
+	private void scheduleTrigger(long delay) {
+		long jitter = (mMaxJitter > 0) ? ThreadLocalRandom.current().nextLong(mMaxJitter + 1) : 0;
+
+		mTriggerFuture = TIMER.schedule(new Runnable() {
+			@Override
+			public void run() {
+				scheduledTrigger();
+			}
+		}, delay + jitter, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Fires a scheduled trigger and, at a fixed rate, schedules the next one. Periods that have
+	 * already passed because a cycle overran them are skipped and counted as coalesced.
+	 */
+	private synchronized void scheduledTrigger() {
+		if (mCancelled) {
+			return;
+		}
+
+		if (mFixedRate) {
+			long now = System.nanoTime();
+
+			mNextTriggerTime += mPeriod;
+
+			if (mNextTriggerTime - now < 0) {
+				long skippedPeriods = (now - mNextTriggerTime) / mPeriod + 1;
+
+				mNextTriggerTime += skippedPeriods * mPeriod;
+				mCoalescedTriggerCount += skippedPeriods;
+			}
+
+			scheduleTrigger(mNextTriggerTime - now);
+		}
+
+		trigger();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityCycleSchedule#trigger()
+	 */
+	@Override
+	public synchronized void trigger() {
+		if (mCancelled) {
+			return;
+		}
+
+		if (mRunning) {
+			mTriggerPending = true;
+			mCoalescedTriggerCount++;
+
+			return;
+		}
+
+		if (!mFixedRate && mTriggerFuture != null) {
+			// the next trigger is scheduled once this cycle completes
+			mTriggerFuture.cancel(false);
+		}
+
+		mRunning = true;
+		ActivityServiceImpl.CYCLE_RUNNER.execute(new Runnable() {
+			@Override
+			public void run() {
+				runCycles();
+			}
+		});
+	}
+
+	/**
+	 * Executes cycles until no trigger is pending.
+	 */
+	private void runCycles() {
+		while (true) {
+			long startTime = System.nanoTime();
+
+			try {
+				ExecutionCycle cycle = mService.createCycle(null, 0);
+
+				synchronized (this) {
+					if (mCancelled) {
+						mRunning = false;
+
+						return;
+					}
+
+					mCycle = cycle;
+				}
+
+				cycle.execute(mParallelExecution);
+			}
+			catch (CancellationException e) {
+				if (CAT.isDebugEnabled()) {
+					CAT.debug("Execution cycle was cancelled.");
+				}
+			}
+			catch (InterruptedException e) {
+				if (!mCancelled) {
+					CAT.warn("Execution cycle was interrupted.", e);
+				}
+			}
+			catch (ActivityException e) {
+				CAT.warn("Execution cycle failed.", e);
+			}
+			catch (RuntimeException e) {
+				CAT.error("Execution cycle failed unexpectedly.", e);
+			}
+
+			synchronized (this) {
+				cycleCompleted(System.nanoTime() - startTime);
+
+				if (mTriggerPending && !mCancelled) {
+					mTriggerPending = false;
+
+					continue;
+				}
+
+				mRunning = false;
+				mCycle = null;
+
+				// clear an interrupt that arrived after the cycle completed
+				Thread.interrupted();
+
+				if (!mFixedRate && !mCancelled) {
+					scheduleTrigger(mPeriod);
+				}
+
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Records the completion of a cycle. The caller must hold the lock.
+	 *
+	 * @param duration How long the cycle took, in nanoseconds.
+	 */
+	private void cycleCompleted(long duration) {
+		mCycleCount++;
+
+		long overrun = duration - mPeriod;
+
+		if (overrun > 0) {
+			mOverrunCount++;
+			mTotalOverrun += overrun;
+			mMaxOverrun = Math.max(mMaxOverrun, overrun);
+
+			if (CAT.isDebugEnabled()) {
+				CAT.debug("Execution cycle overran its period by " +
+					Long.toString(TimeUnit.NANOSECONDS.toMillis(overrun)) + " ms.");
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityCycleSchedule#cancel(boolean)
+	 */
+	@Override
+	public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+		if (mCancelled) {
+			return false;
+		}
+
+		mCancelled = true;
+		mTriggerPending = false;
+
+		if (mTriggerFuture != null) {
+			mTriggerFuture.cancel(false);
+		}
+
+		if (mayInterruptIfRunning && mCycle != null) {
+			mCycle.cancel(true);
+		}
+
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityCycleSchedule#isCancelled()
+	 */
+	@Override
+	public boolean isCancelled() {
+		return mCancelled;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityCycleSchedule#isRunning()
+	 */
+	@Override
+	public synchronized boolean isRunning() {
+		return mRunning;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityCycleSchedule#getCycleCount()
+	 */
+	@Override
+	public synchronized long getCycleCount() {
+		return mCycleCount;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityCycleSchedule#getCoalescedTriggerCount()
+	 */
+	@Override
+	public synchronized long getCoalescedTriggerCount() {
+		return mCoalescedTriggerCount;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityCycleSchedule#getOverrunCount()
+	 */
+	@Override
+	public synchronized long getOverrunCount() {
+		return mOverrunCount;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityCycleSchedule#getMaxOverrun(java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public synchronized long getMaxOverrun(TimeUnit unit) {
+		return unit.convert(mMaxOverrun, TimeUnit.NANOSECONDS);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityCycleSchedule#getTotalOverrun(java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public synchronized long getTotalOverrun(TimeUnit unit) {
+		return unit.convert(mTotalOverrun, TimeUnit.NANOSECONDS);
+	}
+}
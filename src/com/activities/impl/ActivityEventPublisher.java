@@ -0,0 +1,228 @@
+package com.activities.impl;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.activities.api.Activity;
+import com.activities.api.ActivityAction.ExecutionResultType;
+import com.activities.api.ActivityEvent;
+import com.activities.api.ActivityListener;
+import com.activities.api.ActivityListener.OverflowPolicy;
+
+/**
+ * Publishes the {@link ActivityEvent}s of the execution cycles of a service to its listeners.
+ * Every listener is subscribed with a bounded buffer of its own. Events are delivered from the
+ * buffer by a thread of the shared cycle runner, which is only borrowed while there are events
+ * to deliver.
+ * <p/>
+ * Publishing an event allocates nothing but the event, and nothing at all while there are no
+ * listeners.
+ */
+/*pkg*/ class ActivityEventPublisher {
+	// Constants
+
+	/**
+	 * The Logger instance.
+	 */
+	private static final Log CAT = LogFactory.getLog(ActivityEventPublisher.class);
+
+	// Associations
+
+	/**
+	 * The subscriptions of the listeners.
+	 */
+	private final List<Subscription> mSubscriptionList = new CopyOnWriteArrayList<Subscription>();
+
+	// Operations
+
+	/**
+	 * Subscribes the listener to the events.
+	 *
+	 * @param listener The listener.
+	 * @param capacity The number of events that may be buffered for the listener.
+	 * @param overflowPolicy What to do with an event when the buffer is full.
+	 * @throws IllegalArgumentException Thrown if the capacity is not positive.
+	 */
+	/*pkg*/ void subscribe(ActivityListener listener, int capacity, OverflowPolicy overflowPolicy) {
+		if (listener == null || overflowPolicy == null) {
+			throw new NullPointerException();
+		}
+
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Invalid capacity of the event buffer: " + capacity);
+		}
+
+		mSubscriptionList.add(new Subscription(listener, capacity, overflowPolicy));
+	}
+
+	/**
+	 * Unsubscribes the listener. Events already buffered for it are still delivered.
+	 *
+	 * @param listener The listener.
+	 * @return True, if the listener was subscribed.
+	 */
+	/*pkg*/ boolean unsubscribe(ActivityListener listener) {
+		for (Subscription subscription : mSubscriptionList) {
+			if (subscription.mListener == listener) {
+				return mSubscriptionList.remove(subscription);
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Publishes an event to every listener.
+	 *
+	 * @param type What happened to the activity.
+	 * @param activity The activity.
+	 * @param result The result of the activity, or null if it has none.
+	 * @param duration How long the activity took to execute, in nanoseconds.
+	 */
+	/*pkg*/ void publish(ActivityEvent.Type type, Activity activity, ExecutionResultType result,
+		long duration) {
+		if (mSubscriptionList.isEmpty()) {
+			return;
+		}
+
+		ActivityEvent event = new ActivityEvent(type, activity, result, System.currentTimeMillis(), duration);
+
+		for (Subscription subscription : mSubscriptionList) {
+			subscription.offer(event);
+		}
+	}
+
+	// Inner classes
+
+	/**
+	 * The buffer of a listener and the task delivering its events.
+	 */
+	private static class Subscription implements Runnable {
+		// Attributes
+
+		/**
+		 * What to do with an event when the buffer is full.
+		 */
+		private final OverflowPolicy mOverflowPolicy;
+
+		/**
+		 * Indicates whether a thread is delivering, or about to deliver, the buffered events.
+		 */
+		private final AtomicBoolean mScheduled = new AtomicBoolean();
+
+		/**
+		 * The number of events dropped since the last report.
+		 */
+		private final AtomicLong mDroppedCount = new AtomicLong();
+
+		// Associations
+
+		/**
+		 * The listener.
+		 */
+		private final ActivityListener mListener;
+
+		/**
+		 * The buffered events.
+		 */
+		private final BlockingQueue<ActivityEvent> mQueue;
+
+		// Constructors
+
+		/**
+		 * Constructs the subscription.
+		 *
+		 * @param listener The listener.
+		 * @param capacity The number of events that may be buffered.
+		 * @param overflowPolicy What to do with an event when the buffer is full.
+		 */
+		private Subscription(ActivityListener listener, int capacity, OverflowPolicy overflowPolicy) {
+			mListener = listener;
+			mQueue = new ArrayBlockingQueue<ActivityEvent>(capacity);
+			mOverflowPolicy = overflowPolicy;
+		}
+
+		// Operations
+
+		/**
+		 * Buffers the event according to the overflow policy and makes sure it gets delivered.
+		 *
+		 * @param event The event.
+		 */
+		private void offer(ActivityEvent event) {
+			switch (mOverflowPolicy) {
+				case BLOCK:
+					try {
+						mQueue.put(event);
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						mDroppedCount.incrementAndGet();
+					}
+					break;
+
+				case DROP_OLDEST:
+					while (!mQueue.offer(event)) {
+						if (mQueue.poll() != null) {
+							mDroppedCount.incrementAndGet();
+						}
+					}
+					break;
+
+				case DROP_NEWEST:
+					if (!mQueue.offer(event)) {
+						mDroppedCount.incrementAndGet();
+					}
+					break;
+			}
+
+			if (mScheduled.compareAndSet(false, true)) {
+				try {
+					ActivityServiceImpl.CYCLE_RUNNER.execute(this);
+				}
+				catch (RuntimeException e) {
+					mScheduled.set(false);
+					CAT.error("Failed to deliver activity events to listener " + mListener + ".", e);
+				}
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			do {
+				ActivityEvent event;
+
+				while ((event = mQueue.poll()) != null) {
+					try {
+						mListener.onEvent(event);
+					}
+					catch (RuntimeException e) {
+						CAT.warn("Activity listener " + mListener + " failed to handle " + event + ".", e);
+					}
+				}
+
+				long droppedCount = mDroppedCount.getAndSet(0);
+
+				if (droppedCount > 0) {
+					CAT.warn("Dropped " + Long.toString(droppedCount) + " activity event(s) because the buffer of listener " +
+						mListener + " was full.");
+				}
+
+				mScheduled.set(false);
+
+				// an event may have been buffered after the queue was found empty
+			} while (!mQueue.isEmpty() && mScheduled.compareAndSet(false, true));
+		}
+	}
+}
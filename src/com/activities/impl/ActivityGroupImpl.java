@@ -0,0 +1,466 @@
+package com.activities.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.activities.api.Activity;
+import com.activities.api.ActivityAction;
+import com.activities.api.ActivityAction.ExecutionResultType;
+import com.activities.api.ActivityException;
+import com.activities.api.ActivityGroup;
+import com.activities.api.Tag;
+import com.activities.utils.CyclicDataException;
+import com.activities.utils.DAGVertex;
+import com.activities.utils.TopologicalOrder;
+
+/**
+ * An activity that executes a DAG of activities of its own. The activities of the group, and the
+ * dependencies between them, are kept apart from those of the service: an activity added to a
+ * group adds its dependencies to the group, and the group is executed like any other activity.
+ * <p/>
+ * Every execution of the group is an execution cycle of its own on the executor of the service.
+ * A single-threaded group executes its activities one after the other on the thread executing
+ * the group. A multi-threaded group submits them to the executor and, rather than blocking the
+ * thread executing the group while they are queued, has it run those no worker has started yet,
+ * so nested groups cannot exhaust the workers of the executor.
+ * <p/>
+ * The group fails if any of its activities failed, and is never retried as a whole; its
+ * activities are retried according to their own policies.
+ */
+public class ActivityGroupImpl extends ActivityImpl implements ActivityGroup {
+	// Constants
+
+	/**
+	 * The Logger instance.
+	 */
+	private static final Log CAT = LogFactory.getLog(ActivityGroupImpl.class);
+
+	// Attributes
+
+	/**
+	 * Indicates whether the activities of the group are executed in parallel.
+	 */
+	private volatile boolean mMultiThreaded;
+
+	/**
+	 * Incremented whenever activities or their dependencies are added or removed.
+	 */
+	private long mModificationCount;
+
+	// Associations
+
+	/**
+	 * Guards the activities of the group and their dependencies. The lock of the group itself is
+	 * held while the group executes.
+	 */
+	private final Object mGraphLock = new Object();
+
+	/**
+	 * Map of vertex indexed by activity.
+	 */
+	private final HashMap<Activity, DAGVertex<Activity>> mVertexByActivityMap =
+		new HashMap<Activity, DAGVertex<Activity>>();
+
+	/**
+	 * The topological order of the vertices, maintained as dependencies are added.
+	 */
+	private final TopologicalOrder<Activity> mTopologicalOrder = new TopologicalOrder<Activity>();
+
+	/**
+	 * The plan of the activities, compiled by the most recent execution.
+	 */
+	private ExecutionPlan mPlan;
+
+	/**
+	 * The service the group executes its activities with.
+	 */
+	private final ActivityServiceImpl mService;
+
+	// Constructors
+
+	/**
+	 * Constructs an empty, single-threaded group.
+	 *
+	 * @param name The name of the group.
+	 * @param service The service the group executes its activities with.
+	 */
+	public ActivityGroupImpl(String name, ActivityServiceImpl service) {
+		this(new GroupAction(name), service);
+	}
+
+	/**
+	 * Constructs an empty, single-threaded group.
+	 *
+	 * @param action The action executing the group.
+	 * @param service The service the group executes its activities with.
+	 */
+	private ActivityGroupImpl(GroupAction action, ActivityServiceImpl service) {
+		super(action, service);
+
+		mService = service;
+		action.mGroup = this;
+	}
+
+	// Operations
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityGroup#add(com.activities.api.Activity[])
+	 */
+	@Override
+	public void add(Activity... activities) {
+		if (activities != null) {
+			synchronized (mGraphLock) {
+				for (Activity activityToAdd : activities) {
+					getVertex(activityToAdd);
+				}
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityGroup#remove(com.activities.api.Activity[])
+	 */
+	@Override
+	public void remove(Activity... activities) {
+		if (activities != null) {
+			synchronized (mGraphLock) {
+				for (Activity activityToRemove : activities) {
+					DAGVertex<Activity> vertex = mVertexByActivityMap.remove(activityToRemove);
+
+					if (vertex != null) {
+						mTopologicalOrder.remove(vertex);
+						leave(activityToRemove);
+						mModificationCount++;
+					}
+				}
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityGroup#removeAll()
+	 */
+	@Override
+	public void removeAll() {
+		synchronized (mGraphLock) {
+			for (Activity activity : mVertexByActivityMap.keySet()) {
+				leave(activity);
+			}
+
+			mVertexByActivityMap.clear();
+			mTopologicalOrder.clear();
+			mModificationCount++;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityGroup#setIsMultiThreaded(boolean)
+	 */
+	@Override
+	public void setIsMultiThreaded(boolean multithreaded) {
+		mMultiThreaded = multithreaded;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityGroup#iterator()
+	 */
+	@Override
+	public Iterator<Activity> iterator() {
+		List<Activity> activityList;
+
+		synchronized (mGraphLock) {
+			List<DAGVertex<Activity>> sortedVertexList = mTopologicalOrder.getSortedList();
+
+			activityList = new ArrayList<Activity>(sortedVertexList.size());
+
+			for (DAGVertex<Activity> vertex : sortedVertexList) {
+				activityList.add(vertex.getValue());
+			}
+		}
+
+		return Collections.unmodifiableList(activityList).iterator();
+	}
+
+	/**
+	 * Establishes dependencies between activities of the group such that the activity comes
+	 * before the succeeding activities. Activities that are not part of the group yet are added.
+	 *
+	 * @param activity The activity to precede in execution.
+	 * @param succeedingActivities The activities to succeed in execution.
+	 * @throws IllegalStateException Thrown if a dependency would create a cycle, in which case
+	 * it is not added.
+	 */
+	/*pkg*/ void addBefore(Activity activity, Activity... succeedingActivities) {
+		synchronized (mGraphLock) {
+			for (Activity succeedingActivity : succeedingActivities) {
+				if (succeedingActivity != null) {
+					addDependency(activity, succeedingActivity);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Establishes dependencies between activities of the group such that the activity comes
+	 * after the preceding activities. Activities that are not part of the group yet are added.
+	 *
+	 * @param activity The activity to succeed in execution.
+	 * @param precedingActivities The activities to precede in execution.
+	 * @throws IllegalStateException Thrown if a dependency would create a cycle, in which case
+	 * it is not added.
+	 */
+	/*pkg*/ void addAfter(Activity activity, Activity... precedingActivities) {
+		synchronized (mGraphLock) {
+			for (Activity precedingActivity : precedingActivities) {
+				if (precedingActivity != null) {
+					addDependency(precedingActivity, activity);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Establishes a dependency between two activities of the group. The caller must hold the
+	 * graph lock.
+	 *
+	 * @param precedingActivity The activity to precede in execution.
+	 * @param succeedingActivity The activity to succeed in execution.
+	 * @throws IllegalStateException Thrown if the dependency would create a cycle, in which case
+	 * it is not added.
+	 */
+	private void addDependency(Activity precedingActivity, Activity succeedingActivity) {
+		DAGVertex<Activity> precedingVertex = getVertex(precedingActivity);
+		DAGVertex<Activity> succeedingVertex = getVertex(succeedingActivity);
+
+		try {
+			mTopologicalOrder.before(precedingVertex, succeedingVertex);
+		}
+		catch (CyclicDataException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+
+		mModificationCount++;
+	}
+
+	/**
+	 * Gets the vertex corresponding to the activity, adding the activity to the group if it is
+	 * not part of it yet. The caller must hold the graph lock.
+	 *
+	 * @param activity The activity.
+	 * @return The vertex corresponding to the activity.
+	 * @throws IllegalArgumentException Thrown if the activity is the group itself.
+	 * @throws IllegalStateException Thrown if the activity belongs to another group, or contains
+	 * this group.
+	 */
+	private DAGVertex<Activity> getVertex(Activity activity) {
+		DAGVertex<Activity> vertex = mVertexByActivityMap.get(activity);
+
+		if (vertex == null) {
+			join(activity);
+
+			vertex = new DAGVertex<Activity>(activity);
+
+			mVertexByActivityMap.put(activity, vertex);
+			mTopologicalOrder.add(vertex);
+			mModificationCount++;
+
+			if (CAT.isDebugEnabled()) {
+				CAT.debug("Successfully added activity \"" + activity.getActionName() + "\" [class: \"" +
+					activity.getActionClassName() + "\"] to group \"" + getActionName() + "\".");
+			}
+		}
+
+		return vertex;
+	}
+
+	/**
+	 * Makes the activity a member of this group.
+	 *
+	 * @param activity The activity joining the group.
+	 * @throws IllegalArgumentException Thrown if the activity is the group itself.
+	 * @throws IllegalStateException Thrown if the activity belongs to another group, or contains
+	 * this group.
+	 */
+	private void join(Activity activity) {
+		if (activity == this) {
+			throw new IllegalArgumentException("Group \"" + getActionName() + "\" cannot contain itself.");
+		}
+
+		if (activity instanceof ActivityImpl) {
+			ActivityImpl activityImpl = (ActivityImpl)activity;
+			ActivityGroupImpl group = activityImpl.getGroup();
+
+			if (group != null && group != this) {
+				throw new IllegalStateException(activity + " already belongs to group \"" +
+					group.getActionName() + "\".");
+			}
+
+			for (ActivityGroupImpl parent = getGroup(); parent != null; parent = parent.getGroup()) {
+				if (parent == activity) {
+					throw new IllegalStateException("Group \"" + getActionName() +
+						"\" cannot contain group \"" + parent.getActionName() + "\" which contains it.");
+				}
+			}
+
+			activityImpl.setGroup(this);
+		}
+	}
+
+	/**
+	 * Ends the membership of the activity in this group.
+	 *
+	 * @param activity The activity leaving the group.
+	 */
+	private void leave(Activity activity) {
+		if (activity instanceof ActivityImpl) {
+			((ActivityImpl)activity).setGroup(null);
+		}
+	}
+
+	/**
+	 * Gets the plan of the activities of the group. The plan is compiled once and cached until
+	 * the activities or their dependencies are modified.
+	 *
+	 * @return The execution plan.
+	 */
+	private ExecutionPlan getPlan() {
+		synchronized (mGraphLock) {
+			if (mPlan == null || mPlan.getModificationCount() != mModificationCount) {
+				mPlan = ExecutionPlan.compile(mTopologicalOrder.getSortedList(), mService.getDurationStatistics(),
+					mModificationCount);
+			}
+
+			return mPlan;
+		}
+	}
+
+	/**
+	 * Executes the activities of the group and waits until they have completed.
+	 *
+	 * @return {@link ExecutionResultType#FAILURE} if any activity failed. Otherwise,
+	 * {@link ExecutionResultType#SUCCESS}.
+	 * @throws InterruptedException Thrown if execution was interrupted
+	 * @throws ActivityException Thrown if an activity failed unexpectedly
+	 */
+	private ExecutionResultType executeActivities() throws InterruptedException, ActivityException {
+		ExecutionCycle cycle = mService.newCycle(getPlan(), 0);
+
+		if (cycle.isDone()) {
+			return ExecutionResultType.SUCCESS;
+		}
+
+		try {
+			if (mMultiThreaded) {
+				cycle.executeHelping();
+			}
+			else {
+				cycle.execute(false);
+			}
+		}
+		finally {
+			// stop the activities of the group if the group itself was interrupted
+			cycle.cancel(true);
+		}
+
+		return cycle.hasFailed() ? ExecutionResultType.FAILURE : ExecutionResultType.SUCCESS;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.impl.ActivityImpl#toString()
+	 */
+	@Override
+	public String toString() {
+		return "ActivityGroup: " + getActionName();
+	}
+
+	// Inner classes
+
+	/**
+	 * The action of a group, executing the activities of the group.
+	 */
+	private static class GroupAction implements ActivityAction {
+		// Attributes
+
+		/**
+		 * The name of the group.
+		 */
+		private final String mName;
+
+		// Associations
+
+		/**
+		 * The group.
+		 */
+		private ActivityGroupImpl mGroup;
+
+		// Constructors
+
+		/**
+		 * Constructs the action.
+		 *
+		 * @param name The name of the group.
+		 */
+		private GroupAction(String name) {
+			mName = name;
+		}
+
+		// Operations
+
+		/*
+		 * (non-Javadoc)
+		 * @see com.activities.api.ActivityAction#perform()
+		 */
+		@Override
+		public ExecutionResultType perform() throws InterruptedException, Exception {
+			return mGroup.executeActivities();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see com.activities.api.ActivityAction#canRetry()
+		 */
+		@Override
+		public boolean canRetry() {
+			return false;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see com.activities.api.ActivityAction#getName()
+		 */
+		@Override
+		public String getName() {
+			return mName;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see com.activities.api.ActivityAction#getTags()
+		 */
+		@Override
+		public Tag[] getTags() {
+			return null;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see com.activities.api.ActivityAction#isEnabled()
+		 */
+		@Override
+		public boolean isEnabled() {
+			return true;
+		}
+	}
+}
@@ -1,5 +1,16 @@
 package com.activities.impl;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -7,7 +18,13 @@ import com.activities.api.Activity;
 import com.activities.api.ActivityAction;
 import com.activities.api.ActivityAction.ExecutionResultType;
 import com.activities.api.ActivityException;
+import com.activities.api.AsyncAction;
+import com.activities.api.BatchableAction;
+import com.activities.api.RetryPolicy;
+import com.activities.api.RetryableAction;
 import com.activities.api.Tag;
+import com.activities.api.TimeLimitedAction;
+import com.activities.utils.HashedWheelTimer;
 
 /**
  * An activity is a single, general purpose, specific task that is performed.
@@ -24,6 +41,28 @@ public class ActivityImpl implements Activity {
 	 * The maximum number of retries allowed for an activity to recover from failure.
 	 */
 	private static final Long MAX_RETRIES = Long.getLong("com.quest.glue.maxActivityRetry.count", 5);
+	
+	/**
+	 * The delay before the first retry of an activity.
+	 */
+	private static final Long RETRY_DELAY_MS = Long.getLong("com.quest.glue.activityRetryDelay.ms", 100);
+	
+	/**
+	 * The maximum delay before a retry of an activity. The delay doubles with every retry.
+	 */
+	private static final Long MAX_RETRY_DELAY_MS = Long.getLong("com.quest.glue.maxActivityRetryDelay.ms", 10000);
+	
+	/**
+	 * The retry policy of actions that do not provide their own.
+	 */
+	private static final RetryPolicy DEFAULT_RETRY_POLICY = new RetryPolicy(MAX_RETRIES.intValue(),
+		RETRY_DELAY_MS, MAX_RETRY_DELAY_MS, TimeUnit.MILLISECONDS, 2, true);
+	
+	/**
+	 * How long an attempt of an action that does not limit its own attempts may take. Zero for no
+	 * limit.
+	 */
+	private static final Long ACTIVITY_TIMEOUT_MS = Long.getLong("com.quest.glue.activityTimeout.ms", 0);
 
 	// Attributes
 
@@ -35,14 +74,26 @@ public class ActivityImpl implements Activity {
 	/**
 	 * The enable flag that indicates whether the activity was disabled by the service.
 	 */
-	private boolean mEnabled;
+	private volatile boolean mEnabled;
 
 	/**
 	 * The executing flag that determines whether the activity is executing.
 	 */
-	private boolean mExecuting;
+	private volatile boolean mExecuting;
 
+	/**
+	 * The result of the most recently started asynchronous execution. Asynchronous executions
+	 * of the same activity are chained on each other so that they never overlap.
+	 */
+	private CompletableFuture<ExecutionResultType> mAsyncTail;
+	
 	private final ActivityServiceImpl mService;
+	
+	/**
+	 * The group the activity belongs to, if any. Dependencies of the activity are added to the
+	 * group instead of the service.
+	 */
+	private volatile ActivityGroupImpl mGroup;
 
 	// Constructors
 
@@ -106,7 +157,7 @@ public class ActivityImpl implements Activity {
 	 * @see com.activities.api.Activity#isExecuting()
 	 */
 	@Override
-	public synchronized boolean isExecuting() {
+	public boolean isExecuting() {
 		return mExecuting;
 	}
 
@@ -126,71 +177,125 @@ public class ActivityImpl implements Activity {
 	}
 
 	/**
-	 * Execute the activity action and return one of ExecutionResultType types as the result. If the
-	 * execution fails, retries the execution given that ActivityAction.canRetry() return true.
-	 * Continues to retry until ActivityAction.canRetry() returns false.
+	 * Marks the activity as executing if its action may be performed.
 	 *
-	 * @return {@link ExecutionResultType}
-	 *
-	 * @throws ActivityException
+	 * @return Null, if the action may be performed. Otherwise, the {@link ExecutionResultType} to
+	 * report instead of performing it.
 	 */
-	private ExecutionResultType exec() throws InterruptedException, ActivityException {
-		ExecutionResultType executionResult = ExecutionResultType.FAILURE;
-		final boolean executing = isExecuting();
-		final boolean enabled = isEnabled();
-	
-		if (!executing) {
-	        if(enabled) {
-	            try {
-	                setExecuting(true);
-	                executionResult = mAction.perform();
-	
-	                if (executionResult == ExecutionResultType.SUCCESS) {
-	                    if (CAT.isDebugEnabled()) {
-	                        CAT.debug("Successfully executed activity \"" + getActionName() + "\"");
-	                    }
-	                }
-	                else if (executionResult == ExecutionResultType.DISABLE) {
-	                    if (CAT.isDebugEnabled()) {
-	                        CAT.debug("Successfully executed activity \"" + getActionName() +
-                        		"\" however the activity and all its dependents will be disabled as requested.");
-	                    }
-	                }
-	                else {
-	                    if (CAT.isDebugEnabled()) {
-	                        CAT.debug("Execution did not succeed for activity \"" + getActionName() +
-                        		"\". Activity's action returned false.");
-	                    }
-	                }
-	            }
-	            catch (InterruptedException e) {
-	                CAT.debug("Interrupted while executing activity " + getActionName() +
-	                    "; rethrowing interrupted exception", e);
-	
-	                throw e;
-	            }
-	            catch (Exception e) {
-	                CAT.warn("Execution of activity \"" + getActionName() +
-                		"\" failed because it threw an exception.", e);
-	            }
-	            finally {
-	                setExecuting(false);
-	            }
-	    	}
-	        else {
-	            // activity already disabled
-	            executionResult = ExecutionResultType.DISABLE;
-
-	            if (CAT.isDebugEnabled()) {
-	                CAT.debug("Activity \"" + getActionName() +
-                		"\" was already disabled so all its dependents will be disabled if they are not already.");
-	            }
-	        }
-	    }
-		else {
+	private synchronized ExecutionResultType beginExecution() {
+		if (isExecuting()) {
 	        // we should never be trying to execute and activity that is already executing
 	        CAT.error("Failed to execute activity " + getActionName() +
         		" because its state is invalid since it is already executing");
+	
+	        return ExecutionResultType.FAILURE;
+		}
+	
+		if (!isEnabled()) {
+	        if (CAT.isDebugEnabled()) {
+	            CAT.debug("Activity \"" + getActionName() +
+            		"\" was already disabled so all its dependents will be disabled if they are not already.");
+	        }
+	
+	        // activity already disabled
+	        return ExecutionResultType.DISABLE;
+		}
+	
+		setExecuting(true);
+	
+		return null;
+	}
+	
+	/**
+	 * Marks the activity as no longer executing.
+	 */
+	private synchronized void endExecution() {
+		setExecuting(false);
+	
+		// an attempt of another execution may be waiting for this one
+		notifyAll();
+	}
+	
+	/**
+	 * Marks the activity as no longer executing and, if the action asked for it, disables it
+	 * before an attempt of another execution may begin.
+	 *
+	 * @param executionResult The result of the attempt.
+	 */
+	private synchronized void endExecution(ExecutionResultType executionResult) {
+		if (executionResult == ExecutionResultType.DISABLE) {
+			mEnabled = false;
+	
+			if (CAT.isDebugEnabled()) {
+				CAT.debug("Activity \"" + getActionName() + "\" was disabled.");
+			}
+		}
+	
+		endExecution();
+	}
+	
+	/**
+	 * Waits until no other attempt is executing the activity. The caller must hold the lock of
+	 * the activity.
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private void awaitExecution() throws InterruptedException {
+		while (isExecuting()) {
+			wait();
+		}
+	}
+	
+	/**
+	 * Logs the result returned by the action.
+	 *
+	 * @param executionResult The result returned by the action.
+	 */
+	private void logExecutionResult(ExecutionResultType executionResult) {
+	    if (executionResult == ExecutionResultType.SUCCESS) {
+	        if (CAT.isDebugEnabled()) {
+	            CAT.debug("Successfully executed activity \"" + getActionName() + "\"");
+	        }
+	    }
+	    else if (executionResult == ExecutionResultType.DISABLE) {
+	        if (CAT.isDebugEnabled()) {
+	            CAT.debug("Successfully executed activity \"" + getActionName() +
+            		"\" however the activity and all its dependents will be disabled as requested.");
+	        }
+	    }
+	    else {
+	        if (CAT.isDebugEnabled()) {
+	            CAT.debug("Execution did not succeed for activity \"" + getActionName() +
+            		"\". Activity's action returned false.");
+	        }
+	    }
+	}
+	
+	/**
+	 * Execute the activity action once and return one of ExecutionResultType types as the result.
+	 * The caller must have begun the execution and ends it once this returns.
+	 *
+	 * @return {@link ExecutionResultType}
+	 *
+	 * @throws InterruptedException if execution was interrupted
+	 */
+	private ExecutionResultType exec() throws InterruptedException {
+		ExecutionResultType executionResult = ExecutionResultType.FAILURE;
+	
+		try {
+			executionResult = mAction.perform();
+	
+			logExecutionResult(executionResult);
+		}
+		catch (InterruptedException e) {
+			CAT.debug("Interrupted while executing activity " + getActionName() +
+				"; rethrowing interrupted exception", e);
+	
+			throw e;
+		}
+		catch (Exception e) {
+			CAT.warn("Execution of activity \"" + getActionName() +
+				"\" failed because it threw an exception.", e);
 		}
 	
 		return executionResult;
@@ -201,53 +306,552 @@ public class ActivityImpl implements Activity {
 	 * @see com.activities.api.Activity#execute()
 	 */
 	@Override
-	public synchronized ExecutionResultType execute() throws InterruptedException, ActivityException {
-		ExecutionResultType executionResult = exec();
+	public ExecutionResultType execute() throws InterruptedException, ActivityException {
+		long timeout = getTimeout();
+		ExecutionResultType executionResult = attempt(timeout);
+		int retryCount = 0;
 	
-		if (executionResult == ExecutionResultType.DISABLE) {
-			disable();
+		// The calling thread is not executing a cycle, so it waits out the delays itself. Only
+		// the attempts hold the lock of the activity.
+		while (executionResult == ExecutionResultType.FAILURE && canRetry(retryCount)) {
+			TimeUnit.NANOSECONDS.sleep(getRetryDelay(retryCount));
+			retryCount++;
+	
+			executionResult = attempt(timeout);
 		}
-		else {
-			int retryCount = 0;
 	
-			while (executionResult == ExecutionResultType.FAILURE && mAction.canRetry()
-				&& retryCount <= MAX_RETRIES) {
-				retryCount++;
+		if (executionResult == ExecutionResultType.FAILURE) {
+			logFailure(retryCount);
+		}
 	
-				if (CAT.isDebugEnabled()) {
-					CAT.debug("Attempting to execute activity \"" + getActionName() +
-						"\". Try #" + Integer.toString(retryCount) + ".");
+		return executionResult;
+	}
+	
+	/**
+	 * Performs the action once. An activity taking part in several executions at once is
+	 * attempted by one of them at a time. Failed attempts are not retried; that is left to the
+	 * caller. An attempt that does not complete within the timeout is treated as a failure. Only
+	 * {@link ExecutionResultType#DISABLE} disables the activity.
+	 *
+	 * @param timeout How long the attempt may take, in nanoseconds. Zero or less for no limit.
+	 * @return {@link ExecutionResultType}
+	 *
+	 * @throws InterruptedException if execution was interrupted
+	 * @throws ActivityException if there was a problem during execution
+	 */
+	/*pkg*/ ExecutionResultType attempt(long timeout) throws InterruptedException, ActivityException {
+		return attempt(timeout, null);
+	}
+	
+	/**
+	 * Performs the action once, as {@link #attempt(long)} does, while a hedge may race it on
+	 * another thread. The hedge is ignored for an {@link AsyncAction}. The calling thread makes
+	 * the first attempt of a hedged action, so it returns once that attempt has returned, even if
+	 * the hedge succeeded long before; {@link #attemptHedged(long, ExecutionCycle.Hedge,
+	 * CompletableFuture)} lets the caller go on as soon as the hedge succeeded.
+	 *
+	 * @param timeout How long the attempt may take, in nanoseconds. Zero or less for no limit.
+	 * @param hedge The hedge racing the action, or null.
+	 * @return {@link ExecutionResultType}
+	 *
+	 * @throws InterruptedException if execution was interrupted
+	 * @throws ActivityException if there was a problem during execution
+	 */
+	/*pkg*/ ExecutionResultType attempt(long timeout, ExecutionCycle.Hedge hedge)
+		throws InterruptedException, ActivityException {
+		if (mAction instanceof AsyncAction) {
+			// the stage completes on another thread, so do not hold the lock while waiting
+			try {
+				return attemptAsync(timeout).toCompletableFuture().get();
+			}
+			catch (ExecutionException e) {
+				throw new ActivityException(getActionName(), "Asynchronous execution failed", e.getCause());
+			}
+		}
+	
+		if (hedge != null) {
+			CompletableFuture<ExecutionResultType> result = new CompletableFuture<ExecutionResultType>();
+	
+			attemptHedged(timeout, hedge, result);
+	
+			try {
+				return result.get();
+			}
+			catch (ExecutionException e) {
+				if (e.getCause() instanceof InterruptedException) {
+					throw (InterruptedException)e.getCause();
 				}
 	
+				throw new ActivityException(getActionName(), "Hedged execution failed", e.getCause());
+			}
+		}
+	
+		return attemptSync(timeout);
+	}
+	
+	/**
+	 * Performs the action once on the calling thread. If the timeout expires first, the thread is
+	 * interrupted and the attempt is treated as a failure.
+	 *
+	 * @param timeout How long the attempt may take, in nanoseconds. Zero or less for no limit.
+	 * @return {@link ExecutionResultType}
+	 *
+	 * @throws InterruptedException if execution was interrupted
+	 */
+	private ExecutionResultType attemptSync(long timeout) throws InterruptedException {
+		ExecutionResultType executionResult;
+	
+		// the lock is only held to begin and end the attempt, not while the action is performed
+		synchronized (this) {
+			awaitExecution();
+	
+			executionResult = beginExecution();
+		}
+	
+		if (executionResult != null) {
+			return executionResult;
+		}
+	
+		AttemptDeadline deadline = (timeout > 0) ? new AttemptDeadline(timeout) : null;
+	
+		executionResult = ExecutionResultType.FAILURE;
+	
+		try {
+			try {
 				executionResult = exec();
 			}
+			catch (InterruptedException e) {
+				if (deadline == null || !deadline.finish()) {
+					throw e;
+				}
+			}
+			finally {
+				if (deadline != null) {
+					deadline.finish();
+				}
+			}
 	
-			if (executionResult == ExecutionResultType.FAILURE) {
-				if (retryCount == MAX_RETRIES) {
-					if (CAT.isDebugEnabled()) {
-						CAT.debug("Attempted to execute activity \"" + getActionName() +
-							"\" maximum number of time(s) \"" + Long.toString(MAX_RETRIES) +
-							"\", however it continues to fail. Disabling it.");
+			if (deadline != null && deadline.finish()) {
+				logTimeout(timeout);
+	
+				executionResult = ExecutionResultType.FAILURE;
+			}
+		}
+		finally {
+			endExecution(executionResult);
+		}
+	
+		return executionResult;
+	}
+	
+	/**
+	 * Performs the action once on the calling thread while a hedge may race it on another
+	 * thread. The lock of the activity is not held while the action is performed. The attempt is
+	 * decided by the hedge if it succeeds first, and otherwise by the first attempt once it has
+	 * returned; the result of the other one is discarded whenever it returns. An attempt of
+	 * another execution waits until this one has been decided, not until both have returned. If
+	 * the timeout expires first, the calling thread is interrupted and the attempt is treated as
+	 * a failure.
+	 *
+	 * @param timeout How long the first attempt may take, in nanoseconds. Zero or less for no
+	 * limit.
+	 * @param hedge The hedge racing the action.
+	 * @param result The future to complete with the {@link ExecutionResultType} of the attempt as
+	 * soon as it has been decided, possibly on the thread of the hedge while the calling thread is
+	 * still performing the action. It only completes exceptionally, with an
+	 * {@link InterruptedException}, if the first attempt was interrupted other than by its timeout
+	 * before the hedge succeeded.
+	 *
+	 * @throws InterruptedException if interrupted while waiting for another attempt
+	 */
+	/*pkg*/ void attemptHedged(long timeout, ExecutionCycle.Hedge hedge, CompletableFuture<ExecutionResultType> result)
+		throws InterruptedException {
+		ExecutionResultType executionResult;
+	
+		synchronized (this) {
+			awaitExecution();
+	
+			executionResult = beginExecution();
+		}
+	
+		if (executionResult != null) {
+			result.complete(executionResult);
+	
+			return;
+		}
+	
+		AttemptDeadline deadline = (timeout > 0) ? new AttemptDeadline(timeout) : null;
+	
+		executionResult = ExecutionResultType.FAILURE;
+	
+		try {
+			executionResult = hedge.perform(this, result);
+		}
+		catch (InterruptedException e) {
+			if (deadline == null || !deadline.finish()) {
+	            CAT.debug("Interrupted while executing activity " + getActionName(), e);
+	
+	            endExecution();
+	            result.completeExceptionally(e);
+	
+	            return;
+			}
+		}
+		catch (Exception e) {
+            CAT.warn("Execution of activity \"" + getActionName() +
+        		"\" failed because it threw an exception.", e);
+		}
+		finally {
+			if (deadline != null) {
+				deadline.finish();
+			}
+		}
+	
+		if (executionResult == null) {
+			// the hedge succeeded first and has completed the attempt
+			return;
+		}
+	
+		if (deadline != null && deadline.finish()) {
+			logTimeout(timeout);
+	
+			executionResult = ExecutionResultType.FAILURE;
+		}
+	
+		completeAttempt(result, executionResult);
+	}
+	
+	/**
+	 * Ends an attempt made by {@link #attemptHedged(long, ExecutionCycle.Hedge, CompletableFuture)}
+	 * with the result that decided it.
+	 *
+	 * @param result The future to complete with the result of the attempt.
+	 * @param executionResult The result that decided the attempt.
+	 */
+	/*pkg*/ void completeAttempt(CompletableFuture<ExecutionResultType> result, ExecutionResultType executionResult) {
+		logExecutionResult(executionResult);
+		endExecution(executionResult);
+		result.complete(executionResult);
+	}
+	
+	/**
+	 * Performs the actions of a batch of activities, whose actions are {@link BatchableAction}s
+	 * with equal batch keys, by a single call to {@link BatchableAction#performBatch(List)} on the
+	 * calling thread. Failed attempts are not retried; that is left to the caller. If the timeout
+	 * expires first, the thread is interrupted and every action of the batch failed.
+	 *
+	 * @param activities The activities of the batch.
+	 * @param timeout How long the batch may take, in nanoseconds. Zero or less for no limit.
+	 * @return The results indexed like the activities. Null for an activity that was not attempted
+	 * because it is already being executed, for example by another execution.
+	 *
+	 * @throws InterruptedException if execution was interrupted
+	 */
+	/*pkg*/ static ExecutionResultType[] attemptBatch(ActivityImpl[] activities, long timeout)
+		throws InterruptedException {
+		ExecutionResultType[] results = new ExecutionResultType[activities.length];
+		List<ActivityAction> actionList = new ArrayList<ActivityAction>(activities.length);
+		int[] members = new int[activities.length];
+	
+		for (int i = 0; i < activities.length; i++) {
+			ActivityImpl activity = activities[i];
+	
+			synchronized (activity) {
+				if (activity.isExecuting()) {
+					continue;
+				}
+	
+				results[i] = activity.beginExecution();
+			}
+	
+			if (results[i] == null) {
+				members[actionList.size()] = i;
+				actionList.add(activity.mAction);
+			}
+		}
+	
+		int count = actionList.size();
+	
+		if (count == 0) {
+			return results;
+		}
+	
+		AttemptDeadline deadline = (timeout > 0) ? new AttemptDeadline(timeout) : null;
+		List<ExecutionResultType> batchResultList = null;
+	
+		try {
+			batchResultList = ((BatchableAction)actionList.get(0)).performBatch(
+				Collections.unmodifiableList(actionList));
+		}
+		catch (InterruptedException e) {
+			if (deadline == null || !deadline.finish()) {
+				throw e;
+			}
+		}
+		catch (Exception e) {
+			CAT.warn("Execution of a batch of " + Integer.toString(count) + " activities with activity \"" +
+				activities[members[0]].getActionName() + "\" failed because it threw an exception.", e);
+		}
+		finally {
+			if (deadline != null) {
+				deadline.finish();
+			}
+	
+			for (int j = 0; j < count; j++) {
+				activities[members[j]].endExecution();
+			}
+		}
+	
+		boolean expired = deadline != null && deadline.finish();
+	
+		if (expired) {
+			CAT.warn("Execution of a batch of " + Integer.toString(count) + " activities with activity \"" +
+				activities[members[0]].getActionName() + "\" did not complete within " +
+				Long.toString(TimeUnit.NANOSECONDS.toMillis(timeout)) + " ms. Treating them as failed.");
+		}
+	
+		for (int j = 0; j < count; j++) {
+			ActivityImpl activity = activities[members[j]];
+			ExecutionResultType executionResult = ExecutionResultType.FAILURE;
+	
+			if (!expired && batchResultList != null && j < batchResultList.size()
+				&& batchResultList.get(j) != null) {
+				executionResult = batchResultList.get(j);
+			}
+	
+			if (!expired) {
+				activity.logExecutionResult(executionResult);
+			}
+	
+			if (executionResult == ExecutionResultType.DISABLE) {
+				activity.disable();
+			}
+	
+			results[members[j]] = executionResult;
+		}
+	
+		return results;
+	}
+	
+	/**
+	 * Performs the action of an {@link AsyncAction} once without blocking the calling thread.
+	 * Attempts of the same activity are chained on each other so that they never overlap.
+	 *
+	 * @param timeout How long the attempt may take once it has started, in nanoseconds. Zero or
+	 * less for no limit.
+	 * @return The stage that completes with the {@link ExecutionResultType} of the attempt. The
+	 * stage never completes exceptionally because of the action.
+	 */
+	/*pkg*/ CompletionStage<ExecutionResultType> attemptAsync(final long timeout) {
+		final CompletableFuture<ExecutionResultType> result = new CompletableFuture<ExecutionResultType>();
+		final CompletableFuture<ExecutionResultType> previous;
+	
+		synchronized (this) {
+			previous = mAsyncTail;
+			mAsyncTail = result;
+		}
+	
+		if (previous == null || previous.isDone()) {
+			performAsync(result, timeout);
+		}
+		else {
+			// another attempt is still in progress, start once it has completed
+			previous.whenComplete(new BiConsumer<ExecutionResultType, Throwable>() {
+				@Override
+				public void accept(ExecutionResultType executionResult, Throwable failure) {
+					performAsync(result, timeout);
+				}
+			});
+		}
+	
+		return result;
+	}
+	
+	/**
+	 * Performs one asynchronous attempt and completes the result once it has completed. If the
+	 * timeout expires first, the result is completed with {@link ExecutionResultType#FAILURE},
+	 * the stage of the action is cancelled if it is a {@link CompletableFuture}, and the late
+	 * result of the action is ignored.
+	 *
+	 * @param result The future to complete with the result of the attempt.
+	 * @param timeout How long the attempt may take, in nanoseconds. Zero or less for no limit.
+	 */
+	private void performAsync(final CompletableFuture<ExecutionResultType> result, final long timeout) {
+		ExecutionResultType executionResult = beginExecution();
+	
+		if (executionResult != null) {
+			result.complete(executionResult);
+	
+			return;
+		}
+	
+		CompletionStage<ExecutionResultType> stage;
+	
+		try {
+			stage = ((AsyncAction)mAction).performAsync();
+		}
+		catch (Exception e) {
+			CAT.warn("Execution of activity \"" + getActionName() +
+        		"\" failed because it threw an exception.", e);
+	
+			stage = null;
+		}
+	
+		if (stage == null) {
+			endExecution();
+			result.complete(ExecutionResultType.FAILURE);
+	
+			return;
+		}
+	
+		// whichever of the action and the timeout comes first completes the attempt
+		final AtomicBoolean completed = new AtomicBoolean();
+		final HashedWheelTimer.Timeout attemptTimeout;
+	
+		if (timeout > 0) {
+			final CompletionStage<ExecutionResultType> actionStage = stage;
+	
+			attemptTimeout = ActivityServiceImpl.ACTIVITY_TIMER.schedule(new Runnable() {
+				@Override
+				public void run() {
+					if (completed.compareAndSet(false, true)) {
+						logTimeout(timeout);
+						endExecution();
+						result.complete(ExecutionResultType.FAILURE);
+	
+						if (actionStage instanceof CompletableFuture) {
+							((CompletableFuture<ExecutionResultType>)actionStage).cancel(true);
+						}
 					}
 				}
-				else if (retryCount > 0 && retryCount < MAX_RETRIES) {
+			}, timeout, TimeUnit.NANOSECONDS);
+		}
+		else {
+			attemptTimeout = null;
+		}
+	
+		stage.whenComplete(new BiConsumer<ExecutionResultType, Throwable>() {
+			@Override
+			public void accept(ExecutionResultType executionResult, Throwable failure) {
+				if (attemptTimeout != null) {
+					attemptTimeout.cancel();
+				}
+	
+				if (!completed.compareAndSet(false, true)) {
 					if (CAT.isDebugEnabled()) {
-						CAT.debug("Attempted to execute activity \"" + getActionName() + "\"" +
-							Integer.toString(retryCount) + " time(s), however it continues to fail. Disabling it.");
+						CAT.debug("Ignoring the result of activity \"" + getActionName() +
+							"\" because it completed after its timeout.");
 					}
+	
+					return;
+				}
+	
+				if (failure != null) {
+		            CAT.warn("Execution of activity \"" + getActionName() +
+	            		"\" failed because it completed exceptionally.", failure);
+	
+		            executionResult = ExecutionResultType.FAILURE;
 				}
 				else {
-					if (CAT.isDebugEnabled()) {
-						CAT.debug("Retry was not attempted to execute activity \"" + getActionName() +
-							"\" because either canRetry() is not implemented or it returned false.");
-					}
+					logExecutionResult(executionResult);
 				}
 	
-				disable();
+				endExecution(executionResult);
+				result.complete(executionResult);
 			}
+		});
+	}
+	
+	/**
+	 * @return How long an attempt to perform the action may take, in nanoseconds. Zero or less for
+	 * no limit.
+	 */
+	/*pkg*/ long getTimeout() {
+		if (mAction instanceof TimeLimitedAction) {
+			return ((TimeLimitedAction)mAction).getTimeout(TimeUnit.NANOSECONDS);
 		}
 	
-		return executionResult;
+		return TimeUnit.MILLISECONDS.toNanos(ACTIVITY_TIMEOUT_MS);
+	}
+	
+	/**
+	 * Logs that an attempt did not complete within its timeout.
+	 *
+	 * @param timeout The timeout of the attempt, in nanoseconds.
+	 */
+	private void logTimeout(long timeout) {
+		CAT.warn("Execution of activity \"" + getActionName() + "\" did not complete within " +
+			Long.toString(TimeUnit.NANOSECONDS.toMillis(timeout)) + " ms. Treating it as failed.");
+	}
+	
+	/**
+	 * @return The policy deciding how often, and after which delay, the activity is retried once
+	 * its action has failed.
+	 */
+	/*pkg*/ RetryPolicy getRetryPolicy() {
+		if (mAction instanceof RetryableAction) {
+			RetryPolicy retryPolicy = ((RetryableAction)mAction).getRetryPolicy();
+	
+			if (retryPolicy != null) {
+				return retryPolicy;
+			}
+		}
+	
+		return DEFAULT_RETRY_POLICY;
+	}
+	
+	/**
+	 * @param retryCount The number of retries attempted so far.
+	 * @return True, if the action may be retried after it has failed.
+	 */
+	/*pkg*/ boolean canRetry(int retryCount) {
+		return getRetryPolicy().canRetry(retryCount) && mAction.canRetry();
+	}
+	
+	/**
+	 * @param retryCount The number of retries attempted so far.
+	 * @return The delay before the next retry, in nanoseconds.
+	 */
+	/*pkg*/ long getRetryDelay(int retryCount) {
+		long delay = getRetryPolicy().getDelay(retryCount, TimeUnit.NANOSECONDS);
+	
+		if (CAT.isDebugEnabled()) {
+			CAT.debug("Attempting to execute activity \"" + getActionName() + "\" again in " +
+				Long.toString(TimeUnit.NANOSECONDS.toMillis(delay)) + " ms. Try #" +
+				Integer.toString(retryCount + 1) + ".");
+		}
+	
+		return delay;
+	}
+	
+	/**
+	 * Logs that the action failed and will no longer be retried. The activity is not disabled; it
+	 * is executed again by the next execution.
+	 *
+	 * @param retryCount The number of retries attempted.
+	 */
+	/*pkg*/ void logFailure(int retryCount) {
+		int maxRetries = getRetryPolicy().getMaxRetries();
+	
+		if (retryCount > 0 && retryCount == maxRetries) {
+			if (CAT.isDebugEnabled()) {
+				CAT.debug("Attempted to execute activity \"" + getActionName() +
+					"\" maximum number of time(s) \"" + Integer.toString(maxRetries) +
+					"\", however it continues to fail. Giving up until the next execution.");
+			}
+		}
+		else if (retryCount > 0 && retryCount < maxRetries) {
+			if (CAT.isDebugEnabled()) {
+				CAT.debug("Attempted to execute activity \"" + getActionName() + "\" " +
+					Integer.toString(retryCount) + " time(s), however it continues to fail. Giving up until the next execution.");
+			}
+		}
+		else {
+			if (CAT.isDebugEnabled()) {
+				CAT.debug("Retry was not attempted to execute activity \"" + getActionName() +
+					"\" because either canRetry() is not implemented or it returned false.");
+			}
+		}
 	}
 	
 	/*
@@ -278,7 +882,7 @@ public class ActivityImpl implements Activity {
 	 * @see com.activities.api.Activity#isEnabled()
 	 */
 	@Override
-	public synchronized boolean isEnabled() {
+	public boolean isEnabled() {
 		return mEnabled && mAction.isEnabled();
 	}
 	
@@ -296,7 +900,14 @@ public class ActivityImpl implements Activity {
 	 */
 	@Override
 	public void before(Activity... succeedingActivities) {
-	    mService.before(this, succeedingActivities);
+		ActivityGroupImpl group = mGroup;
+	
+		if (group != null) {
+			group.addBefore(this, succeedingActivities);
+		}
+		else {
+			mService.before(this, succeedingActivities);
+		}
 	}
 	
 	/*
@@ -305,7 +916,14 @@ public class ActivityImpl implements Activity {
 	 */
 	@Override
 	public void after(Activity... precedingActivities) {
-	    mService.after(this, precedingActivities);
+		ActivityGroupImpl group = mGroup;
+	
+		if (group != null) {
+			group.addAfter(this, precedingActivities);
+		}
+		else {
+			mService.after(this, precedingActivities);
+		}
 	}
 	
 	/*
@@ -314,7 +932,30 @@ public class ActivityImpl implements Activity {
 	 */
 	@Override
 	public void removeAllDependencies() {
-	    mService.remove(this);
+		ActivityGroupImpl group = mGroup;
+	
+		if (group != null) {
+			group.remove(this);
+		}
+		else {
+			mService.remove(this);
+		}
+	}
+	
+	/**
+	 * @return The group the activity belongs to, or null if it does not belong to a group.
+	 */
+	/*pkg*/ ActivityGroupImpl getGroup() {
+		return mGroup;
+	}
+	
+	/**
+	 * Sets the group the activity belongs to. Only to be called by the group.
+	 *
+	 * @param group The group, or null if the activity no longer belongs to a group.
+	 */
+	/*pkg*/ void setGroup(ActivityGroupImpl group) {
+		mGroup = group;
 	}
 	
 	/*
@@ -342,4 +983,91 @@ public class ActivityImpl implements Activity {
 	@Override
 	public void removeAllTags() {
 	}
+	
+	// Inner classes
+	
+	/**
+	 * Interrupts the thread attempting an action once the timeout of the attempt has expired. The
+	 * thread is interrupted at most once and never after the attempt has finished, so the
+	 * interrupt cannot leak into whatever the thread does next.
+	 */
+	private static class AttemptDeadline implements Runnable {
+		// Constants
+	
+		private static final int RUNNING = 0;
+		private static final int FINISHED = 1;
+		private static final int INTERRUPTING = 2;
+		private static final int INTERRUPTED = 3;
+		private static final int EXPIRED = 4;
+	
+		// Attributes
+	
+		/**
+		 * The thread attempting the action.
+		 */
+		private final Thread mThread;
+	
+		/**
+		 * The state of the attempt.
+		 */
+		private final AtomicInteger mState = new AtomicInteger(RUNNING);
+	
+		// Associations
+	
+		/**
+		 * The timeout interrupting the thread.
+		 */
+		private final HashedWheelTimer.Timeout mTimeout;
+	
+		// Constructors
+	
+		/**
+		 * Starts the deadline of an attempt made by the calling thread.
+		 *
+		 * @param timeout How long the attempt may take, in nanoseconds.
+		 */
+		private AttemptDeadline(long timeout) {
+			mThread = Thread.currentThread();
+			mTimeout = ActivityServiceImpl.ACTIVITY_TIMER.schedule(this, timeout, TimeUnit.NANOSECONDS);
+		}
+	
+		// Operations
+	
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			if (mState.compareAndSet(RUNNING, INTERRUPTING)) {
+				mThread.interrupt();
+				mState.set(INTERRUPTED);
+			}
+		}
+	
+		/**
+		 * Ends the attempt. If the thread was interrupted because the timeout expired, its
+		 * interrupt status is cleared. Must be called by the thread attempting the action and may
+		 * be called more than once.
+		 *
+		 * @return True, if the timeout expired before the attempt finished.
+		 */
+		private boolean finish() {
+			if (mState.compareAndSet(RUNNING, FINISHED)) {
+				mTimeout.cancel();
+	
+				return false;
+			}
+	
+			while (mState.get() == INTERRUPTING) {
+				Thread.yield();
+			}
+	
+			if (mState.compareAndSet(INTERRUPTED, EXPIRED)) {
+				Thread.interrupted();
+			}
+	
+			return mState.get() == EXPIRED;
+		}
+	}
 }
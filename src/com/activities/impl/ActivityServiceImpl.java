@@ -1,7 +1,6 @@
 package com.activities.impl;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -12,10 +11,9 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.concurrent.Callable;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
@@ -23,14 +21,24 @@ import org.apache.commons.logging.LogFactory;
 
 import com.activities.api.Activity;
 import com.activities.api.ActivityAction;
-import com.activities.api.ActivityAction.ExecutionResultType;
+import com.activities.api.ActivityCycle;
+import com.activities.api.ActivityCycleSchedule;
 import com.activities.api.ActivityException;
+import com.activities.api.ActivityGroup;
+import com.activities.api.ActivityListener;
+import com.activities.api.ActivityListener.OverflowPolicy;
 import com.activities.api.ActivityService;
+import com.activities.api.OutputSlot;
+import com.activities.api.Resource;
 import com.activities.api.Tag;
 import com.activities.utils.CorePoolThreadFactory;
 import com.activities.utils.CyclicDataException;
 import com.activities.utils.DAGVertex;
+import com.activities.utils.HashedWheelTimer;
+import com.activities.utils.PoolSizeController;
+import com.activities.utils.PriorityExecutor;
 import com.activities.utils.PriorityThreadPool;
+import com.activities.utils.TopologicalOrder;
 
 /**
  * The activities service provides the capability to manage activities, execute the required
@@ -57,6 +65,19 @@ public class ActivityServiceImpl implements ActivityService {
 	protected static final int MAX_POOL_SIZE =
 		Long.getLong("com.quest.glue.maxActivityPoolSize.count", 20).intValue();
 	
+	/**
+	 * The minimum number of threads to use while executing activities in parallel. Unless it is
+	 * less than the maximum, the pool has a fixed size. Otherwise, the size adapts to the load.
+	 */
+	protected static final int MIN_POOL_SIZE =
+		Long.getLong("com.quest.glue.minActivityPoolSize.count", MAX_POOL_SIZE).intValue();
+	
+	/**
+	 * The time between two samples of the load of a pool whose size adapts to it.
+	 */
+	private static final long POOL_SIZING_INTERVAL_MS =
+		Long.getLong("com.quest.glue.activityPoolSizingInterval.ms", 500);
+	
 	/**
 	 * The priority thread pool for executing activities in parallel.
 	 */
@@ -69,10 +90,74 @@ public class ActivityServiceImpl implements ActivityService {
 				new CorePoolThreadFactory("ActivityExecutor")
 		);
 	
+	/**
+	 * The threads executing cycles that run in the background, such as scheduled cycles and
+	 * sequential cycles started through a handle, and the expired timeouts of the timer.
+	 */
+	/*pkg*/ static final ExecutorService CYCLE_RUNNER =
+		Executors.newCachedThreadPool(new CorePoolThreadFactory("ActivityCycleRunner"));
+	
+	/**
+	 * The timer activities are parked on while they wait to be postponed or retried. Its expired
+	 * timeouts are run by the cycle runner, so that submitting activities never holds up the
+	 * timer shared by all services.
+	 */
+	/*pkg*/ static final HashedWheelTimer ACTIVITY_TIMER =
+		new HashedWheelTimer("ActivityTimer", 10, TimeUnit.MILLISECONDS, 512, CYCLE_RUNNER);
+	
+	static {
+		if (MIN_POOL_SIZE < MAX_POOL_SIZE) {
+			new PoolSizeController(ACTIVITY_POOL, MIN_POOL_SIZE, MAX_POOL_SIZE, POOL_SIZING_INTERVAL_MS,
+				TimeUnit.MILLISECONDS, ACTIVITY_TIMER).start();
+		}
+	}
+	
+	
 	// Attributes
 	
 	// Associations
 	
+	/**
+	 * The executor activities are submitted to while executing them in parallel.
+	 */
+	private final PriorityExecutor mExecutor;
+	
+	/**
+	 * Indicates whether the executor was created by, and is shut down with, this service.
+	 */
+	private final boolean mOwnsExecutor;
+	
+	/**
+	 * The controller adapting the size of the pool of the service to its load, if any.
+	 */
+	private PoolSizeController mPoolSizeController;
+	
+	/**
+	 * The durations recorded for actions, used to prioritize the activities on the critical path.
+	 */
+	private final DurationStatistics mDurationStatistics = new DurationStatistics();
+	
+	/**
+	 * The publisher of the events of the activities to the listeners of this service.
+	 */
+	private final ActivityEventPublisher mEventPublisher = new ActivityEventPublisher();
+	
+	/**
+	 * The successful executions of activities whose actions have fingerprints, used to skip the
+	 * activities whose inputs are unchanged.
+	 */
+	private final ResultCache mResultCache = new ResultCache();
+	
+	/**
+	 * The scheduler handing out the tokens of the resources of this service.
+	 */
+	private final ResourceScheduler mResourceScheduler = new ResourceScheduler();
+	
+	/**
+	 * The rate limits of the tags.
+	 */
+	private final RateLimiter mRateLimiter = new RateLimiter();
+	
 	/**
 	 * Map of vertex indexed by activity.
 	 */
@@ -86,20 +171,139 @@ public class ActivityServiceImpl implements ActivityService {
 			}
 		);
 	
+	/**
+	 * The topological order of the vertices, maintained as dependencies are added.
+	 */
+	private final TopologicalOrder<Activity> mTopologicalOrder = new TopologicalOrder<Activity>();
+	
 	/**
 	 * Map of list of activities indexed by Tag.
 	 */
 	private HashMap<Tag, List<Activity>> mActivityListByTag = new HashMap<Tag, List<Activity>>(3);
 	
 	/**
-	 * Map of activity info objects indexed by activity.
+	 * The plan of all activities, compiled by the most recent execution.
 	 */
-	private HashMap<Activity, ActivityInfo> mActivityInfoByActivityMap =
-		new HashMap<Activity, ActivityInfo>(3);
+	private ExecutionPlan mPlan;
+	
+	/**
+	 * Incremented whenever activities or their dependencies are added or removed.
+	 */
+	private long mModificationCount;
+	
+	/**
+	 * The recurring execution cycles of this service, cancelled when the service is shut down.
+	 */
+	private final List<ActivityCycleScheduleImpl> mScheduleList = new ArrayList<ActivityCycleScheduleImpl>();
+	
+	/**
+	 * The execution cycles of this service that may still be in progress, cancelled when the
+	 * service is shut down.
+	 */
+	private final List<ExecutionCycle> mCycleList = new ArrayList<ExecutionCycle>();
 	
 	// Constructors
 	
+	/**
+	 * Constructs the activities service which executes activities in parallel on the priority
+	 * thread pool shared by all services.
+	 */
 	public ActivityServiceImpl() {
+		this(ACTIVITY_POOL);
+	}
+	
+	/**
+	 * Constructs the activities service which executes activities in parallel on the provided
+	 * executor, for example a {@link com.activities.utils.WorkStealingPool} for many short
+	 * activities or a {@link com.activities.utils.VirtualThreadExecutor} for activities that
+	 * mostly block on I/O.
+	 *
+	 * @param executor The executor to submit activities to. Cannot be null.
+	 */
+	public ActivityServiceImpl(PriorityExecutor executor) {
+		this(executor, false);
+	}
+	
+	/**
+	 * Constructs the activities service with a priority thread pool of its own, sized from the
+	 * same system properties as the shared pool. The pool is shut down along with the service.
+	 *
+	 * @param poolName The name of the pool, used as prefix for its threads.
+	 */
+	public ActivityServiceImpl(String poolName) {
+		this(poolName, MIN_POOL_SIZE, MAX_POOL_SIZE, Integer.MAX_VALUE, 120, TimeUnit.SECONDS);
+	}
+	
+	/**
+	 * Constructs the activities service with a priority thread pool of its own, so that a burst of
+	 * activities in one service cannot starve the activities of another. The pool is shut down
+	 * along with the service.
+	 * <p/>
+	 * Once all threads are busy and the queue is full, further activities are set aside and
+	 * submitted again after a short delay, which slows down the execution instead of failing it.
+	 * They are never executed by the thread that submits them, which may be a worker or the
+	 * timer shared by all services.
+	 *
+	 * @param poolName The name of the pool, used as prefix for its threads.
+	 * @param maxPoolSize The maximum number of threads executing activities in parallel.
+	 * @param queueCapacity The maximum number of activities waiting for a thread.
+	 * @param keepAliveTime The time idle threads are kept before they terminate.
+	 * @param unit The unit of keepAliveTime.
+	 */
+	public ActivityServiceImpl(String poolName, int maxPoolSize, int queueCapacity,
+		long keepAliveTime, TimeUnit unit) {
+		this(poolName, maxPoolSize, maxPoolSize, queueCapacity, keepAliveTime, unit);
+	}
+	
+	/**
+	 * Constructs the activities service with a priority thread pool of its own whose size adapts
+	 * to the load, between the provided bounds. The pool grows while activities wait for a thread
+	 * and more threads finish more activities, as when activities block on I/O, and shrinks while
+	 * more threads do not help, as when activities are bound by the CPU. The pool is shut down
+	 * along with the service.
+	 *
+	 * @param poolName The name of the pool, used as prefix for its threads.
+	 * @param minPoolSize The minimum number of threads executing activities in parallel. If not
+	 * less than maxPoolSize, the pool has a fixed size.
+	 * @param maxPoolSize The maximum number of threads executing activities in parallel.
+	 * @param queueCapacity The maximum number of activities waiting for a thread.
+	 * @param keepAliveTime The time idle threads are kept before they terminate.
+	 * @param unit The unit of keepAliveTime.
+	 * @throws IllegalArgumentException Thrown if the pool size adapts and minPoolSize is not
+	 * positive.
+	 */
+	public ActivityServiceImpl(String poolName, int minPoolSize, int maxPoolSize, int queueCapacity,
+		long keepAliveTime, TimeUnit unit) {
+		this(new PriorityThreadPool(
+				1,  				// CORE_POOL_SIZE
+				maxPoolSize,
+				keepAliveTime,
+				unit,
+				queueCapacity,
+				new CorePoolThreadFactory(poolName),
+				new ThreadPoolExecutor.AbortPolicy()
+			), true);
+	
+		if (minPoolSize < maxPoolSize) {
+			mPoolSizeController = new PoolSizeController((PriorityThreadPool)mExecutor, minPoolSize,
+				maxPoolSize, POOL_SIZING_INTERVAL_MS, TimeUnit.MILLISECONDS, ACTIVITY_TIMER);
+			mPoolSizeController.start();
+		}
+	}
+	
+	/**
+	 * Constructs the activities service.
+	 *
+	 * @param executor The executor to submit activities to. Cannot be null.
+	 * @param ownsExecutor True, if the executor is to be shut down along with the service.
+	 */
+	private ActivityServiceImpl(PriorityExecutor executor, boolean ownsExecutor) {
+		if (executor == null) {
+			throw new NullPointerException("The activity executor cannot be null");
+		}
+	
+		mExecutor = executor;
+		mOwnsExecutor = ownsExecutor;
 	}
 	
 	// Operations
@@ -126,6 +330,51 @@ public class ActivityServiceImpl implements ActivityService {
 		throw new ActivityException("Cannot create an activity without an action.");
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityService#createGroup(java.lang.String)
+	 */
+	@Override
+	public ActivityGroup createGroup(String name) throws ActivityException {
+		if (name != null && name.length() > 0) {
+			ActivityGroup group = new ActivityGroupImpl(name, this);
+	
+			if (CAT.isDebugEnabled()) {
+				CAT.debug("Successfully created activity group \"" + name + "\".");
+			}
+	
+			return group;
+		}
+	
+		throw new ActivityException("Cannot create an activity group without a name.");
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityService#createOutputSlot(com.activities.api.Activity, java.lang.Class)
+	 */
+	@Override
+	public <T> OutputSlot<T> createOutputSlot(Activity activity, Class<T> type) throws ActivityException {
+		if (activity != null && type != null) {
+			return new OutputSlotImpl<T>(activity, type);
+		}
+	
+		throw new ActivityException("Cannot create an output slot without an activity and a type.");
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityService#createResource(java.lang.String, int)
+	 */
+	@Override
+	public Resource createResource(String name, int capacity) throws ActivityException {
+		if (name != null && name.length() > 0 && capacity > 0) {
+			return mResourceScheduler.createResource(name, capacity);
+		}
+	
+		throw new ActivityException("Cannot create resource \"" + name + "\" with " + capacity + " token(s).");
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see com.quest.glue.api.services.activities.ActivityService#add(com.quest.glue.api.services.activities.Activity)
@@ -150,12 +399,21 @@ public class ActivityServiceImpl implements ActivityService {
 	 *
 	 * @param precedingActivity The activity to precede in execution.
 	 * @param succeedingActivity The activity to succeed in execution.
+	 * @throws IllegalStateException Thrown if the dependency would create a cycle, in which case
+	 * it is not added.
 	 */
 	private void addDependency(Activity precedingActivity, Activity succeedingActivity) {
 	    DAGVertex<Activity> precedingVertex = getVertex(precedingActivity);
 	    DAGVertex<Activity> succeedingVertex = getVertex(succeedingActivity);
 	
-	    precedingVertex.before(succeedingVertex);
+	    try {
+	    	mTopologicalOrder.before(precedingVertex, succeedingVertex);
+	    }
+	    catch (CyclicDataException e) {
+	    	throw new IllegalStateException(e.getMessage(), e);
+	    }
+	
+	    modified();
 	}
 	
 	/**
@@ -175,7 +433,11 @@ public class ActivityServiceImpl implements ActivityService {
 	 */
 	private DAGVertex<Activity> getVertex(Activity activity) {
 	    if (!isVertexAvailable(activity)) {
-	        mVertextByActivityMap.put(activity, new DAGVertex<Activity>(activity));
+	    	DAGVertex<Activity> vertex = new DAGVertex<Activity>(activity);
+	
+	        mVertextByActivityMap.put(activity, vertex);
+	        mTopologicalOrder.add(vertex);
+	        modified();
 	    }
 	
 	    return mVertextByActivityMap.get(activity);
@@ -253,7 +515,9 @@ public class ActivityServiceImpl implements ActivityService {
 	
 			DAGVertex<Activity> vertex = mVertextByActivityMap.remove(activity);
 	
-			vertex.remove();
+			mTopologicalOrder.remove(vertex);
+			mResultCache.invalidate(activity);
+			modified();
 	
 			if (CAT.isDebugEnabled()) {
 				CAT.debug("Successfully deleted activity \"" + activity.getActionName() +
@@ -264,173 +528,6 @@ public class ActivityServiceImpl implements ActivityService {
 		return false;
 	}
 	
-	/**
-	 * Recursively disables activity and any of its dependents.
-	 *
-	 * @param activity The activity to disable.
-	 * @param dependentSetByActivityMap The map of set of dependent activities indexed by activity.
-	 */
-	private void disableDependentActivities(Activity activity,
-		HashMap<Activity, HashSet<Activity>> dependentSetByActivityMap) {
-	
-		if (!activity.isEnabled()) {
-			for (Activity dependent : dependentSetByActivityMap.get(activity)) {
-				if (dependent.isEnabled()) {
-					boolean disable = dependent.disable();
-	
-					if (!disable) {
-						if (CAT.isDebugEnabled()) {
-							CAT.debug("Failed to disable dependent activity \"" + dependent.getActionName() +
-								"\" [class: \"" + dependent.getActionClassName() + "\"]. Parent activity \"" +
-								activity.getActionName() + "\" [class: \"" + activity.getActionClassName() + "\"]");
-						}
-					}
-					else {
-						if (CAT.isDebugEnabled()) {
-							CAT.debug("Successfully disabled dependent activity \"" + dependent.getActionName() +
-								"\" [class: \"" + dependent.getActionClassName() + "\"]. Parent activity \"" +
-								activity.getActionName() + "\" [class: \"" + activity.getActionClassName() + "\"]");
-						}
-	
-						disableDependentActivities(dependent, dependentSetByActivityMap);
-					}
-				}
-			}
-		}
-	}
-	
-	/**
-	 * Executes the activity.
-	 *
-	 * @param activityInfo The activity info object containing execution information for the activity.
-	 *
-	 * @return {@link ExecutionResultType}
-	 *
-	 * @throws ActivityException
-	 */
-	private ExecutionResultType executeActivity(ActivityInfo activityInfo) throws InterruptedException, ActivityException {
-		Activity activity = activityInfo.getActivity();
-		int currentIndex = activityInfo.getCurrentIndex();
-		int executionListSize = activityInfo.getExecutionListSize();
-	
-		HashMap<Activity, HashSet<Activity>> dependentSetByActivityMap =
-			activityInfo.getDependentSetByActivityMap();
-	
-	    if (CAT.isDebugEnabled()) {
-	        CAT.debug("Executing " + Integer.toString(currentIndex) + "/" + executionListSize +
-        		": activity \"" + activity.getActionName() + "\" [class: \"" + activity.getActionClassName() + "\"].");
-	    }
-	
-	    ExecutionResultType executionResult = activity.execute();
-	
-	    if (executionResult == ExecutionResultType.FAILURE
-			|| executionResult == ExecutionResultType.DISABLE
-	        || executionResult == ExecutionResultType.DISABLE_ONCE ) {
-	    	if (executionResult == ExecutionResultType.FAILURE) {
-		    	CAT.warn("Failed to execute activity \"" + activity.getActionName() + "\" [class: \"" +
-	    			activity.getActionClassName() + "\"] successfully. Disabling all dependent activities.");
-	    	}
-	
-	    	if (!activity.isEnabled()) {
-	    		disableDependentActivities(activity, dependentSetByActivityMap);
-	    	}
-	    	else {
-	    		CAT.warn("Failed activity \"" + activity.getActionName() + "\" [class: \"" +
-    				activity.getActionClassName() + "\"] could not disabled. Trying to disable the activity and all its dependents.");
-	
-	    		boolean disable = activity.disable();
-	
-	    		if (disable) {
-	        		disableDependentActivities(activity, dependentSetByActivityMap);
-	    		}
-	    	}
-	    }
-	
-	    return executionResult;
-	}
-	
-	/**
-	 * @param dependsOnSetByActivityMap Map of set of depends on activities indexed by activity.
-	 *
-	 * @return The count of the number of direct or indirect activities the activity depends on.
-	 */
-	private int findMaxDepth(LinkedHashMap<Activity, HashSet<Activity>> dependsOnSetByActivityMap,
-		HashSet<Activity> dependsOnSet, LinkedHashMap<Activity, Integer> maxDepthByActivityMap) {
-		if (dependsOnSet.isEmpty()) {
-			return 0;
-		}
-		else {
-			int maxDepth = 0;
-	
-			for (Activity activity : dependsOnSet) {
-				if (maxDepthByActivityMap.containsKey(activity)) {
-					maxDepth = Math.max(maxDepth, maxDepthByActivityMap.get(activity));
-				}
-				else {
-					maxDepth = Math.max(maxDepth, findMaxDepth(dependsOnSetByActivityMap,
-						dependsOnSetByActivityMap.get(activity), maxDepthByActivityMap));
-				}
-			}
-	
-			return maxDepth + 1;
-		}
-	}
-	
-	/**
-	 * @param dependsOnSetByActivityMap Map of set of depends on activities indexed by activity.
-	 *
-	 * @return The map of set of activities indexed by priority. The map is sorted in descending order
-	 * with respect to priorities. The priority is calculated by counting the number of direct or
-	 * indirect activities the activity depends on.
-	 */
-	private TreeMap<Integer, HashSet<Activity>> getPriorities(
-		LinkedHashMap<Activity, HashSet<Activity>> dependsOnSetByActivityMap) {
-		LinkedHashMap<Activity, Integer> maxDepthByActivityMap =
-			new LinkedHashMap<Activity, Integer>(dependsOnSetByActivityMap.size());
-	
-		for (Iterator<Entry<Activity, HashSet<Activity>>> itr =
-			dependsOnSetByActivityMap.entrySet().iterator(); itr.hasNext();) {
-			Entry<Activity, HashSet<Activity>> dependsOnSetByActivityEntry = itr.next();
-			Activity activity = dependsOnSetByActivityEntry.getKey();
-			HashSet<Activity> dependsOnSet = dependsOnSetByActivityEntry.getValue();
-	
-			int maxDependsOnCount = findMaxDepth(dependsOnSetByActivityMap, dependsOnSet,
-				maxDepthByActivityMap);
-	
-			maxDepthByActivityMap.put(activity, maxDependsOnCount);
-		}
-	
-		int maxDependsOn = Collections.max(maxDepthByActivityMap.values());
-	
-		TreeMap<Integer, HashSet<Activity>> activitySetByPriorityMap =
-			new TreeMap<Integer, HashSet<Activity>>(
-				new Comparator<Integer>() {
-					@Override
-					public int compare(Integer priority1, Integer priority2) {
-						return priority2.intValue() - priority1.intValue();
-					}
-				}
-			);
-	
-		for (Iterator<Entry<Activity, Integer>> itr =
-			maxDepthByActivityMap.entrySet().iterator(); itr.hasNext();) {
-			Entry<Activity, Integer> maxDepthByActivityEntry = itr.next();
-			Activity activity = maxDepthByActivityEntry.getKey();
-			Integer maxDepth = maxDepthByActivityEntry.getValue();
-			int priority = maxDependsOn - maxDepth;
-			HashSet<Activity> activitySet = activitySetByPriorityMap.get(priority);
-	
-			if (activitySet == null) {
-				activitySet = new HashSet<Activity>(1);
-				activitySetByPriorityMap.put(priority, activitySet);
-			}
-	
-			activitySet.add(activity);
-		}
-	
-		return activitySetByPriorityMap;
-	}
-	
 	/**
 	 * @param activityList The list of activities.
 	 * @return The list of vertices corresponding to the provided list of activities. If the activity list
@@ -456,166 +553,124 @@ public class ActivityServiceImpl implements ActivityService {
 	}
 	
 	/**
-	 * Count down the latch corresponding to a priority level acquired by an activity.
-	 *
-	 * @param activity The activity whose latch needs to be counted down.
+	 * Records that the activities or their dependencies were modified, so that the cached plan is
+	 * compiled again before the next execution. The caller must hold the service's lock.
 	 */
-	private void countDownLevelLatch(Activity activity) {
-		ActivityInfo activityInfo = getActivityInfo(activity);
-		CountDownLatch latch = activityInfo.getLatch();
-	
-		latch.countDown();
+	private void modified() {
+		mModificationCount++;
 	}
 	
 	/**
-	 * @param activity The activity.
-	 * @return The ActivityInfo object corresponding to the activity.
+	 * Gets the plan of the activities to execute. The plan of all activities is compiled once and
+	 * cached until the activities or their dependencies are modified. The caller must hold the
+	 * service's lock.
+	 *
+	 * @param activityList The list of activities to execute. If null or empty, all activities are
+	 * executed.
+	 * @return The execution plan.
 	 */
-	private ActivityInfo getActivityInfo(Activity activity) {
-		return mActivityInfoByActivityMap.get(activity);
-	}
+	private ExecutionPlan getPlan(List<Activity> activityList) {
+		if (mPlan == null || mPlan.getModificationCount() != mModificationCount) {
+			// Dependencies that would create a cycle are rejected as they are added, so the
+			// maintained order is always a complete topological order
+		    List<DAGVertex<Activity>> sortedVertexList = mTopologicalOrder.getSortedList();
 	
-	private void executeActivities(List<Activity> activityList, boolean parallelExecution)
-		throws InterruptedException, ActivityException {
-	    List<DAGVertex<Activity>> vertexList = getVertexList(activityList);
-	
-		HashMap<Activity, HashSet<Activity>> dependentSetByActivityMap =
-			DAGVertex.getMapOfDependents(vertexList);
+			if (LOGGING_ENABLED) {
+				String graphVizOutput = DAGVertex.generateGraphVizOutput(sortedVertexList, 50, 50);
 	
-	    List<DAGVertex<Activity>> sortedVertexList = null;
+				CAT.debug("GraphViz output showcasing the dependencies between activities.\n\n" + graphVizOutput + "\n\n");
+			}
 	
-		if (LOGGING_ENABLED) {
-			String graphVizOutput = DAGVertex.generateGraphVizOutput(vertexList, 50, 50);
+			mPlan = ExecutionPlan.compile(sortedVertexList, mDurationStatistics, mModificationCount);
 	
-			CAT.debug("GraphViz output showcasing the dependencies between activities.\n\n" + graphVizOutput + "\n\n");
+			if (CAT.isDebugEnabled()) {
+				CAT.debug("Compiled the execution plan of " + Integer.toString(mPlan.size()) + " activities.");
+			}
 		}
 	
-		try {
-			sortedVertexList = DAGVertex.sort(vertexList);
-		}
-		catch (CyclicDataException e) {
-			throw new ActivityException("Cyclic dependency was encountered in the activity execution" +
-				" queue. Abandoning execution.", e);
+		if (activityList != null && !activityList.isEmpty()) {
+			return mPlan.subPlan(activityList);
 		}
 	
-		int executionListSize = sortedVertexList.size();
-	
-		if (executionListSize > 0) {
-			if (parallelExecution) {
-				LinkedHashMap<Activity, HashSet<Activity>> dependsOnSetByActivityMap =
-					DAGVertex.getMapOfDependsOn(vertexList);
-	
-				TreeMap<Integer, HashSet<Activity>> activitySetByPriorityMap =
-					getPriorities(dependsOnSetByActivityMap);
-	
-				LinkedHashMap<Future<Boolean>, Activity> activityByFutureMap =
-					new LinkedHashMap<Future<Boolean>, Activity>(executionListSize);
-	
-				LinkedHashMap<Activity, CountDownLatch> latchByActivityMap =
-					new LinkedHashMap<Activity, CountDownLatch>(executionListSize);
-	
-			    for (int i = 0; i < executionListSize; i++) {
-			        Activity activity = sortedVertexList.get(i).getValue();
-			        CountDownLatch latch = new CountDownLatch(1);
-	
-			        latchByActivityMap.put(activity, latch);
-			    }
-	
-			    int i = 0;
-	
-				for (Iterator<Entry<Integer, HashSet<Activity>>> itr =
-					activitySetByPriorityMap.entrySet().iterator(); itr.hasNext();) {
-					Entry<Integer, HashSet<Activity>> activitySetByPriorityEntry = itr.next();
-					Integer priority = activitySetByPriorityEntry.getKey();
-					HashSet<Activity> activitySet = activitySetByPriorityEntry.getValue();
-	
-				    for (Activity activity : activitySet) {
-				        HashSet<Activity> dependsOnSet = dependsOnSetByActivityMap.get(activity);
-	
-				        ActivityInfo activityInfo = new ActivityInfo(activity, ++i,
-			        		executionListSize, latchByActivityMap.get(activity),
-			        		dependentSetByActivityMap, dependsOnSet);
-	
-				        mActivityInfoByActivityMap.put(activity, activityInfo);
-				    }
-	
-				    for (Activity activity : activitySet) {
-				        ActivityInfo activityInfo = mActivityInfoByActivityMap.get(activity);
-				        ActivityExecutor executor = new ActivityExecutor(activityInfo);
-				        Future<Boolean> future = ACTIVITY_POOL.submit(executor, priority);
-	
-				        activityByFutureMap.put(future, activity);
-				    }
-	
-	                for (Activity activity : activitySet) {
-	                    ActivityInfo activityInfo = getActivityInfo(activity);
-	                    CountDownLatch activityLatch = activityInfo.getLatch();
-	
-	                    try {
-	                        activityLatch.await();
-	                    }
-	                    finally {
-	                        activityLatch.countDown();
-	                    }
-	                }
-	
-	                try {
-	                    for (Iterator<Map.Entry<Future<Boolean>, Activity>> it =
-	                		activityByFutureMap.entrySet().iterator(); it.hasNext();) {
-	                        Map.Entry<Future<Boolean>, Activity> entry = it.next();
-	
-	                        try {
-	                            entry.getKey().get();
-	                        }
-	                        finally {
-	                            countDownLevelLatch(entry.getValue());
-	                            it.remove();
-	                        }
-	                    }
-	                }
-	                catch (ExecutionException e) {
-	                    CAT.debug("Activity execution failed; rethrowing cause", e);
+		return mPlan;
+	}
 	
-	                    Throwable cause = e.getCause();
+	/**
+	 * Creates an execution cycle of the activities and keeps track of it until it is done, so
+	 * that it can be cancelled when the service is shut down. Only getting the plan of the
+	 * activities to execute holds the service's lock, so the service remains usable while the
+	 * activities execute and several executions can be in progress at the same time. An activity
+	 * taking part in several executions at once is executed by one of them at a time.
+	 *
+	 * @param activityList The list of activities to execute. If null or empty, all activities are
+	 * executed.
+	 * @param timeout How long the execution may take, in nanoseconds. Zero or less for no limit.
+	 * @return The execution cycle, which has not been started. A cycle without activities is done
+	 * right away.
+	 */
+	/*pkg*/ ExecutionCycle createCycle(List<Activity> activityList, long timeout) {
+		ExecutionPlan plan;
 	
-	                    if (cause instanceof InterruptedException) {
-	                        throw (InterruptedException)cause;
-	                    }
+		synchronized (this) {
+			plan = getPlan(activityList);
+		}
 	
-	                    throw new ActivityException("Execution failed while executing activity ",
-	                		cause);
-	                }
-	                finally {
-	                    // cancel remaining futures
-	                    for (Map.Entry<Future<Boolean>, Activity> entry :
-	                    	activityByFutureMap.entrySet()) {
-	                        entry.getKey().cancel(true);
-	                    }
-	                }
-			    }
-			}
-			else {
-				StringBuffer orderBuffer = new StringBuffer();
+		return newCycle(plan, timeout);
+	}
 	
-				for (DAGVertex<Activity> vertex : sortedVertexList) {
-					Activity activity = vertex.getValue();
+	/**
+	 * @return The duration statistics the plans of this service, and of its groups, resolve the
+	 * estimates of their activities from.
+	 */
+	/*pkg*/ DurationStatistics getDurationStatistics() {
+		return mDurationStatistics;
+	}
 	
-					orderBuffer.append(activity.getActionName() + "\n");
+	/**
+	 * Creates an execution cycle of the plan, such as the plan of the activities of a group, and
+	 * keeps track of it until it is done.
+	 *
+	 * @param plan The plan to execute.
+	 * @param timeout How long the execution may take, in nanoseconds. Zero or less for no limit.
+	 * @return The execution cycle, which has not been started. A cycle without activities is done
+	 * right away.
+	 */
+	/*pkg*/ ExecutionCycle newCycle(ExecutionPlan plan, long timeout) {
+		ExecutionCycle cycle = new ExecutionCycle(plan, mExecutor, mEventPublisher,
+			mResultCache, mResourceScheduler, mRateLimiter, timeout);
+	
+		synchronized (mCycleList) {
+			for (Iterator<ExecutionCycle> it = mCycleList.iterator(); it.hasNext();) {
+				if (it.next().isDone()) {
+					it.remove();
 				}
+			}
 	
-				if (CAT.isDebugEnabled()) {
-					CAT.debug("Executing activities in the following order:\n" + orderBuffer.toString() + ".");
-				}
+			if (!cycle.isDone()) {
+				mCycleList.add(cycle);
+			}
+		}
 	
-			    for (int i = 0; i < executionListSize; i++) {
-			        Activity activity = sortedVertexList.get(i).getValue();
+		return cycle;
+	}
 	
-			        ActivityInfo activityInfo = new ActivityInfo(activity, i + 1,
-		        		executionListSize, null, dependentSetByActivityMap, null);
+	/**
+	 * Executes the activities and waits until they have completed.
+	 *
+	 * @param activityList The list of activities to execute. If null or empty, all activities are
+	 * executed.
+	 * @param parallelExecution If true, actions will be executed in parallel while maintaining their
+	 * dependencies. If false, actions will be executed sequentially.
+	 * @param timeout How long the execution may take, in nanoseconds. Zero or less for no limit.
+	 * @throws InterruptedException Thrown if execution was interrupted
+	 * @throws ActivityException Thrown if an activity failed unexpectedly
+	 */
+	private void executeActivities(List<Activity> activityList, boolean parallelExecution,
+		long timeout) throws InterruptedException, ActivityException {
+		ExecutionCycle cycle = createCycle(activityList, timeout);
 	
-			        executeActivity(activityInfo);
-			    }
-			}
+		if (!cycle.isDone()) {
+			cycle.execute(parallelExecution);
 		}
 		else {
 			if (CAT.isDebugEnabled()) {
@@ -629,14 +684,9 @@ public class ActivityServiceImpl implements ActivityService {
 	 * @see com.quest.glue.api.services.activities.ActivityService#executeFiltered(java.util.List, boolean)
 	 */
 	@Override
-	public synchronized void executeFiltered(List<Activity> activityList, boolean parallelExecution)
+	public void executeFiltered(List<Activity> activityList, boolean parallelExecution)
 		throws InterruptedException, ActivityException {
-		try {
-			executeActivities(activityList, parallelExecution);
-		}
-		finally {
-			mActivityInfoByActivityMap.clear();
-		}
+		executeActivities(activityList, parallelExecution, 0);
 	}
 	
 	/*
@@ -644,13 +694,52 @@ public class ActivityServiceImpl implements ActivityService {
 	 * @see com.quest.glue.api.services.activities.ActivityService#runActivities()
 	 */
 	@Override
-	public synchronized void executeAll(boolean parallelExecution) throws InterruptedException, ActivityException {
-		try {
-			executeActivities(null, parallelExecution);
-		}
-		finally {
-			mActivityInfoByActivityMap.clear();
+	public void executeAll(boolean parallelExecution) throws InterruptedException, ActivityException {
+		executeActivities(null, parallelExecution, 0);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityService#executeFiltered(java.util.List, boolean, long, java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public void executeFiltered(List<Activity> activityList, boolean parallelExecution, long timeout,
+		TimeUnit unit) throws InterruptedException, ActivityException {
+		executeActivities(activityList, parallelExecution, unit.toNanos(timeout));
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityService#executeAll(boolean, long, java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public void executeAll(boolean parallelExecution, long timeout, TimeUnit unit)
+		throws InterruptedException, ActivityException {
+		executeActivities(null, parallelExecution, unit.toNanos(timeout));
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityService#submitAll(boolean)
+	 */
+	@Override
+	public ActivityCycle submitAll(boolean parallelExecution) {
+		return submitFiltered(null, parallelExecution);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityService#submitFiltered(java.util.List, boolean)
+	 */
+	@Override
+	public ActivityCycle submitFiltered(List<Activity> activityList, boolean parallelExecution) {
+		ExecutionCycle cycle = createCycle(activityList, 0);
+	
+		if (!cycle.isDone()) {
+			cycle.start(parallelExecution);
 		}
+	
+		return cycle;
 	}
 	
 	/*
@@ -674,10 +763,128 @@ public class ActivityServiceImpl implements ActivityService {
 		    }
 	
 		    mVertextByActivityMap.clear();
+		    mTopologicalOrder.clear();
 		    mActivityListByTag.clear();
 		}
 	
-		mActivityInfoByActivityMap.clear();
+		modified();
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityService#scheduleAtFixedRate(long, long, long, java.util.concurrent.TimeUnit, boolean)
+	 */
+	@Override
+	public ActivityCycleSchedule scheduleAtFixedRate(long initialDelay, long period, long maxJitter,
+		TimeUnit unit, boolean parallelExecution) {
+		return schedule(initialDelay, period, maxJitter, unit, parallelExecution, true);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityService#scheduleWithFixedDelay(long, long, long, java.util.concurrent.TimeUnit, boolean)
+	 */
+	@Override
+	public ActivityCycleSchedule scheduleWithFixedDelay(long initialDelay, long delay, long maxJitter,
+		TimeUnit unit, boolean parallelExecution) {
+		return schedule(initialDelay, delay, maxJitter, unit, parallelExecution, false);
+	}
+	
+	/**
+	 * Starts recurring execution cycles of all activities.
+	 *
+	 * @param initialDelay The delay before the first cycle.
+	 * @param period The period, or the delay between cycles.
+	 * @param maxJitter The maximum random delay added to every start.
+	 * @param unit The unit of the delays and period.
+	 * @param parallelExecution If true, actions will be executed in parallel.
+	 * @param fixedRate If true, cycles start at a fixed rate. Otherwise, with a fixed delay.
+	 * @return The handle to the schedule.
+	 */
+	private ActivityCycleSchedule schedule(long initialDelay, long period, long maxJitter,
+		TimeUnit unit, boolean parallelExecution, boolean fixedRate) {
+		if (initialDelay < 0 || period <= 0 || maxJitter < 0) {
+			throw new IllegalArgumentException("Invalid schedule [initialDelay: " + initialDelay +
+				", period: " + period + ", maxJitter: " + maxJitter + "].");
+		}
+	
+		ActivityCycleScheduleImpl schedule = new ActivityCycleScheduleImpl(this, parallelExecution,
+			fixedRate, unit.toNanos(period), unit.toNanos(maxJitter));
+	
+		synchronized (mScheduleList) {
+			for (Iterator<ActivityCycleScheduleImpl> it = mScheduleList.iterator(); it.hasNext();) {
+				if (it.next().isCancelled()) {
+					it.remove();
+				}
+			}
+	
+			mScheduleList.add(schedule);
+		}
+	
+		schedule.start(unit.toNanos(initialDelay));
+	
+		if (CAT.isDebugEnabled()) {
+			CAT.debug("Scheduled execution cycles " + (fixedRate ? "at a fixed rate of " : "with a fixed delay of ") +
+				Long.toString(unit.toMillis(period)) + " ms.");
+		}
+	
+		return schedule;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityService#addListener(com.activities.api.ActivityListener, int, com.activities.api.ActivityListener.OverflowPolicy)
+	 */
+	@Override
+	public void addListener(ActivityListener listener, int capacity, OverflowPolicy overflowPolicy) {
+		mEventPublisher.subscribe(listener, capacity, overflowPolicy);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityService#removeListener(com.activities.api.ActivityListener)
+	 */
+	@Override
+	public boolean removeListener(ActivityListener listener) {
+		return mEventPublisher.unsubscribe(listener);
+	}
+	
+	/**
+	 * Cancels the recurring execution cycles of this service and every execution cycle that is in
+	 * progress, interrupting the activities that are executing and removing the queued ones from
+	 * the executor, and shuts down the thread pool this service created for itself. No new
+	 * executions can be started on that pool. Executors provided by the caller and the shared
+	 * pool are left running. Threads waiting for a cancelled cycle, for example in
+	 * {@link #executeAll(boolean)}, get a {@link java.util.concurrent.CancellationException}.
+	 */
+	public void shutdown() {
+		synchronized (mScheduleList) {
+			for (ActivityCycleScheduleImpl schedule : mScheduleList) {
+				schedule.cancel(true);
+			}
+	
+			mScheduleList.clear();
+		}
+	
+		synchronized (mCycleList) {
+			for (ExecutionCycle cycle : mCycleList) {
+				cycle.cancel(true);
+			}
+	
+			mCycleList.clear();
+		}
+	
+		if (mPoolSizeController != null) {
+			mPoolSizeController.stop();
+		}
+	
+		if (mOwnsExecutor) {
+			if (CAT.isDebugEnabled()) {
+				CAT.debug("Shutting down the activity executor of the service.");
+			}
+	
+			mExecutor.shutdown();
+		}
 	}
 	
 	/*
@@ -804,168 +1011,23 @@ public class ActivityServiceImpl implements ActivityService {
 		}
 	}
 	
-	// Inner classes
-	
-	/**
-	 * Contains activity execution related information.
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityService#setRateLimit(com.activities.api.Tag, double, int)
 	 */
-	private class ActivityInfo {
-		// Attributes
-	
-		/**
-		 * The index of the activity in the execution queue that is being executed.
-		 */
-		final private int mCurrentIndex;
-	
-		/**
-		 * The size of the execution queue.
-		 */
-		final private int mExecutionListSize;
-	
-		/**
-		 * The activity being executed.
-		 */
-		final private Activity mActivity;
-	
-		/**
-		 * The count down latch that belongs to this activity.
-		 */
-		final private CountDownLatch mLatch;
-	
-		// Associations
-	
-		/**
-		 * Map of set of dependent activities indexed by activity.
-		 */
-		final private HashMap<Activity, HashSet<Activity>> mDependentSetByActivityMap;
-	
-		/**
-		 * Set of activities that this activity depends on.
-		 */
-		final private HashSet<Activity> mDependsOnSet;
-	
-		// Constructors
-	
-		/**
-		 * Constructs the activity info.
-		 *
-		 * @param activity The activity to execute.
-		 * @param currentIndex The index of the activity in the execution queue that is to be executed.
-		 * @param executionListSize The size of the execution queue.
-		 * @param dependentSetByActivityMap Map of set of dependent activities indexed by activity.
-		 * @param latch The count down latch that belongs to this activity.
-		 * @param dependsOnSet Set of activities this activity depends on.
-		 */
-		private ActivityInfo(Activity activity,	int currentIndex, int executionListSize,
-			CountDownLatch latch, HashMap<Activity, HashSet<Activity>> dependentSetByActivityMap,
-			HashSet<Activity> dependsOnSet) {
-			mActivity = activity;
-			mDependentSetByActivityMap = dependentSetByActivityMap;
-			mCurrentIndex = currentIndex;
-			mExecutionListSize = executionListSize;
-			mLatch = latch;
-			mDependsOnSet = dependsOnSet;
-		}
-	
-		// Operations
-	
-		/**
-		 * @return The index of the activity in the execution queue that is being executed.
-		 */
-		private int getCurrentIndex() {
-			return mCurrentIndex;
-		}
-	
-		/**
-		 * @return The size of the execution queue.
-		 */
-		private int getExecutionListSize() {
-			return mExecutionListSize;
-		}
-	
-		/**
-		 * @return The activity being executed.
-		 */
-		private Activity getActivity() {
-			return mActivity;
-		}
-	
-		/**
-		 * @return The map of set of dependent activities indexed by activity.
-		 */
-		private HashMap<Activity, HashSet<Activity>> getDependentSetByActivityMap() {
-			return mDependentSetByActivityMap;
-		}
-	
-		/**
-		 * @return The count down latch that belongs to this activity.
-		 */
-		private CountDownLatch getLatch() {
-			return mLatch;
-		}
-	
-		/**
-		 * @return The list of count down latches that belong to activities that this activity depends
-		 * on.
-		 */
-		private List<CountDownLatch> getDependsOnLatchList() {
-			List<CountDownLatch> dependsOnLatchList =
-				new ArrayList<CountDownLatch>(mDependsOnSet.size());
-	
-			for (Activity activity : mDependsOnSet) {
-				ActivityInfo activityInfo = getActivityInfo(activity);
-	
-				dependsOnLatchList.add(activityInfo.getLatch());
-			}
-	
-			return dependsOnLatchList;
+	@Override
+	public void setRateLimit(Tag tag, double permitsPerSecond, int burst) {
+		if (tag != null) {
+			mRateLimiter.setLimit(tag, permitsPerSecond, burst);
 		}
 	}
 	
-	/**
-	 * The activity executor.
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityService#getThrottleDelay(com.activities.api.Tag, java.util.concurrent.TimeUnit)
 	 */
-	private class ActivityExecutor implements Callable<Boolean> {
-		// Attributes
-	
-		/**
-		 * The activity being executed.
-		 */
-		final private ActivityInfo mActivityInfo;
-	
-		// Constructors
-	
-		/**
-		 * Constructs the activity executor.
-		 *
-		 * @param activityInfo The activity info.
-		 */
-		private ActivityExecutor(ActivityInfo activityInfo) {
-			mActivityInfo = activityInfo;
-		}
-	
-		// Operations
-	
-		/*
-		 * (non-Javadoc)
-		 * @see java.util.concurrent.Callable#call()
-		 */
-		@Override
-		public Boolean call() throws InterruptedException, Exception {
-	        CountDownLatch activityLatch = mActivityInfo.getLatch();
-	        try {
-	            for (CountDownLatch dependsOnLatch : mActivityInfo.getDependsOnLatchList()) {
-	                dependsOnLatch.await();
-	            }
-	
-	            ExecutionResultType executionResult = executeActivity(mActivityInfo);
-	
-	            return (executionResult == ExecutionResultType.SUCCESS
-	                    || executionResult == ExecutionResultType.DISABLE
-	                    || executionResult == ExecutionResultType.DISABLE_ONCE);
-	        } finally {
-	            activityLatch.countDown();
-	        }
-		}
+	@Override
+	public long getThrottleDelay(Tag tag, TimeUnit unit) {
+		return (tag != null) ? unit.convert(mRateLimiter.getDelay(tag), TimeUnit.NANOSECONDS) : 0;
 	}
 }
@@ -0,0 +1,229 @@
+package com.activities.impl;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.activities.api.Activity;
+
+/**
+ * Keeps an estimate of how long the actions of activities take to execute, based on the
+ * durations recorded in previous execution cycles. Estimates are kept per action class and
+ * action name, so they survive activities being re-created for every cycle.
+ * <p/>
+ * Execution plans resolve the estimates of their activities once, when they are compiled, so
+ * recording a duration does not look the estimate up. The version of the statistics only changes
+ * once an estimate has moved far enough from the value it had when the version last changed, so
+ * priorities are not recomputed for every recorded duration.
+ * <p/>
+ * The most recent durations of an action are only kept once a percentile of them has been
+ * asked for, so that actions nobody asks about cost no more than their average.
+ */
+/*pkg*/ class DurationStatistics {
+	// Constants
+	
+	/**
+	 * The estimated duration, in microseconds, of actions that have never been recorded.
+	 */
+	private static final long DEFAULT_ESTIMATE = TimeUnit.MILLISECONDS.toMicros(
+		Long.getLong("com.quest.glue.defaultActivityDuration.ms", 1));
+	
+	/**
+	 * The weight of the most recent duration in the exponentially weighted moving average.
+	 */
+	private static final double SMOOTHING_FACTOR = 0.3;
+	
+	/**
+	 * The number of most recent durations kept per action for percentiles.
+	 */
+	private static final int SAMPLE_COUNT = 128;
+	
+	/**
+	 * The number of durations that must have been kept before a percentile is estimated.
+	 */
+	private static final int MIN_SAMPLE_COUNT = 20;
+	
+	/**
+	 * The fraction by which an estimate must move before the version of the statistics changes.
+	 */
+	private static final double VERSION_THRESHOLD = 0.25;
+	
+	// Associations
+	
+	/**
+	 * Incremented whenever an estimate moves past the threshold.
+	 */
+	private final AtomicLong mVersion = new AtomicLong();
+	
+	/**
+	 * Map of estimates indexed by action key.
+	 */
+	private final ConcurrentMap<String, Estimate> mEstimateByKeyMap =
+		new ConcurrentHashMap<String, Estimate>();
+	
+	// Operations
+	
+	/**
+	 * @param activity The activity.
+	 * @return The key the duration estimate of the activity's action is kept under.
+	 */
+	public static String getKey(Activity activity) {
+		return activity.getActionClassName() + '#' + activity.getActionName();
+	}
+	
+	/**
+	 * Records how long the action of the activity took to execute.
+	 *
+	 * @param activity The executed activity.
+	 * @param durationNanos The duration in nanoseconds.
+	 */
+	public void record(Activity activity, long durationNanos) {
+		getEstimate(activity).record(durationNanos);
+	}
+	
+	/**
+	 * Gets a percentile of the most recent durations of the activity's action. The durations are
+	 * kept from the first time a percentile is asked for on.
+	 *
+	 * @param activity The activity.
+	 * @param percentile The percentile, between 0 and 100.
+	 * @return The percentile in nanoseconds, or -1 if too few durations have been kept yet.
+	 */
+	public long getPercentile(Activity activity, double percentile) {
+		return getEstimate(activity).getPercentile(percentile);
+	}
+	
+	/**
+	 * Gets the estimate of the activity's action, which execution plans keep so that they do not
+	 * look it up again.
+	 *
+	 * @param activity The activity.
+	 * @return The estimate of the action, created if there is none yet.
+	 */
+	public Estimate getEstimate(Activity activity) {
+		String key = getKey(activity);
+		Estimate estimate = mEstimateByKeyMap.get(key);
+	
+		if (estimate == null) {
+			Estimate newEstimate = new Estimate();
+	
+			estimate = mEstimateByKeyMap.putIfAbsent(key, newEstimate);
+	
+			if (estimate == null) {
+				estimate = newEstimate;
+			}
+		}
+	
+		return estimate;
+	}
+	
+	/**
+	 * @return A number that changes whenever an estimate has moved past the threshold.
+	 */
+	public long getVersion() {
+		return mVersion.get();
+	}
+	
+	// Inner classes
+	
+	/**
+	 * The duration estimate of a single action. Entries start keeping durations the first time a
+	 * percentile is asked for, while the estimate stays the default until one is recorded.
+	 */
+	/*pkg*/ class Estimate {
+		/**
+		 * The moving average of the recorded durations in microseconds, or -1 if none was
+		 * recorded yet.
+		 */
+		private double mAverage = -1;
+	
+		/**
+		 * The most recent durations in microseconds, once a percentile was asked for.
+		 */
+		private long[] mSamples;
+	
+		/**
+		 * The number of durations recorded into the samples.
+		 */
+		private int mSampleCount;
+	
+		/**
+		 * The average in microseconds when the version of the statistics last changed because of
+		 * this estimate.
+		 */
+		private double mVersionAverage = DEFAULT_ESTIMATE;
+	
+		/**
+		 * Records how long the action took to execute.
+		 *
+		 * @param durationNanos The duration in nanoseconds.
+		 */
+		public void record(long durationNanos) {
+			long durationMicros = TimeUnit.NANOSECONDS.toMicros(durationNanos);
+			boolean moved;
+	
+			synchronized (this) {
+				if (mAverage < 0) {
+					mAverage = durationMicros;
+				}
+				else {
+					mAverage += SMOOTHING_FACTOR * (durationMicros - mAverage);
+				}
+	
+				if (mSamples != null) {
+					mSamples[mSampleCount++ % SAMPLE_COUNT] = durationMicros;
+				}
+	
+				moved = Math.abs(mAverage - mVersionAverage) > VERSION_THRESHOLD * mVersionAverage;
+	
+				if (moved) {
+					mVersionAverage = mAverage;
+				}
+			}
+	
+			if (moved) {
+				mVersion.incrementAndGet();
+			}
+		}
+	
+		/**
+		 * @return The estimated duration of the action in microseconds.
+		 */
+		public synchronized long getAverage() {
+			return (mAverage < 0) ? DEFAULT_ESTIMATE : Math.max(1, Math.round(mAverage));
+		}
+	
+		/**
+		 * @param percentile The percentile, between 0 and 100.
+		 * @return The percentile of the most recent durations in nanoseconds, or -1 if too few
+		 * durations have been kept yet.
+		 */
+		public long getPercentile(double percentile) {
+			long percentileMicros = getPercentileMicros(percentile);
+	
+			return (percentileMicros >= 0) ? TimeUnit.MICROSECONDS.toNanos(percentileMicros) : -1;
+		}
+	
+		private synchronized long getPercentileMicros(double percentile) {
+			if (mSamples == null) {
+				mSamples = new long[SAMPLE_COUNT];
+			}
+	
+			int count = Math.min(mSampleCount, SAMPLE_COUNT);
+	
+			if (count < MIN_SAMPLE_COUNT) {
+				return -1;
+			}
+	
+			long[] samples = Arrays.copyOf(mSamples, count);
+	
+			Arrays.sort(samples);
+	
+			int rank = (int)Math.ceil(percentile / 100 * count) - 1;
+	
+			return samples[Math.max(0, Math.min(rank, count - 1))];
+		}
+	}
+}
@@ -0,0 +1,2481 @@
+package com.activities.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiConsumer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.activities.api.Activity;
+import com.activities.api.ActivityAction;
+import com.activities.api.ActivityAction.ExecutionResultType;
+import com.activities.api.ActivityCycle;
+import com.activities.api.ActivityEvent;
+import com.activities.api.ActivityException;
+import com.activities.api.AsyncAction;
+import com.activities.api.BatchableAction;
+import com.activities.api.FingerprintedAction;
+import com.activities.api.HedgeableAction;
+import com.activities.api.PostponableAction;
+import com.activities.api.Resource;
+import com.activities.api.ResourceAction;
+import com.activities.api.Tag;
+import com.activities.utils.HashedWheelTimer;
+import com.activities.utils.PriorityExecutor;
+
+/**
+ * A single execution of the activities of an {@link ExecutionPlan}. All the state of an
+ * execution is kept here so that executions do not interfere with each other.
+ * <p/>
+ * In parallel, every activity is submitted as soon as all the activities it depends on have
+ * completed. The execution completes once every activity has completed or is aborted as soon
+ * as one of them fails unexpectedly.
+ * <p/>
+ * An activity whose action is a {@link PostponableAction} that is not ready, or that failed and
+ * is to be retried, is parked on a timer and offered for execution again once its delay has
+ * elapsed, rather than holding a worker while it waits.
+ * <p/>
+ * Ready activities whose actions are {@link BatchableAction}s with equal batch keys are collected
+ * into batches, each performed by a single call on one worker. The dependents of every activity
+ * of a batch are released according to its own result.
+ * <p/>
+ * Activities whose actions are {@link FingerprintedAction}s are not executed while neither their
+ * fingerprints nor the activities they depend on have changed since their last successful
+ * execution. Their dependents are released right away.
+ * <p/>
+ * An execution may have a deadline. Every attempt is then limited to the time left until the
+ * deadline, in addition to its own timeout, and activities that have not started once the
+ * deadline has passed are skipped.
+ * <p/>
+ * An execution can be cancelled at any time. No further activities are started and the ones
+ * still queued are removed from the executor, while the activities that are executing are left
+ * to complete, or to respond to being interrupted, in the background.
+ * <p/>
+ * As activities start, finish, are retried, disabled or skipped, {@link ActivityEvent}s are
+ * published to the listeners of the service.
+ * <p/>
+ * An activity whose action is a {@link ResourceAction} is only started once a token of each of
+ * its resources is free. Until then, it waits without holding a thread while other ready
+ * activities are executed.
+ * <p/>
+ * Activities whose actions carry tags limited by the {@link RateLimiter} of the service are
+ * started no faster than the limits allow. An activity over a limit is parked on the timer until
+ * its permit is due, like a postponed activity.
+ * <p/>
+ * An attempt of an activity whose action is a {@link HedgeableAction} that takes longer than
+ * most of its recent attempts is raced by a second attempt on another worker of the executor.
+ * <p/>
+ * Activities hand data to their dependents through {@link OutputSlotImpl}s. The outputs are kept
+ * by the execution, indexed like the activities, and each is released once the last dependent
+ * of its activity has completed or been skipped.
+ * <p/>
+ * The activities of an {@link ActivityGroupImpl} are executed by an execution of their own,
+ * typically from a worker of the executor. Instead of blocking that worker while its activities
+ * are queued behind others, the execution can have the waiting thread help by running its own
+ * submitted activities, so nested groups cannot exhaust the workers of the executor.
+ */
+/*pkg*/ class ExecutionCycle implements ActivityCycle {
+	// Constants
+	
+	/**
+	 * The Logger instance.
+	 */
+	private static final Log CAT = LogFactory.getLog(ExecutionCycle.class);
+	
+	/**
+	 * The delay before an activity whose action is not ready is offered for execution again. The
+	 * delay doubles every time the same activity is postponed again within a cycle.
+	 */
+	private static final long POSTPONE_DELAY_MS =
+		Long.getLong("com.quest.glue.activityPostponeDelay.ms", 50);
+	
+	/**
+	 * The maximum delay before a postponed activity is offered for execution again.
+	 */
+	private static final long MAX_POSTPONE_DELAY_MS =
+		Long.getLong("com.quest.glue.maxActivityPostponeDelay.ms", 2000);
+	
+	/**
+	 * How long a parallel execution waits past its deadline for activities that do not respond to
+	 * being interrupted before it gives up on them.
+	 */
+	private static final long DEADLINE_GRACE_MS =
+		Long.getLong("com.quest.glue.activityCycleDeadlineGrace.ms", 1000);
+	
+	/**
+	 * The percentile of the recent durations of a {@link HedgeableAction} after which an attempt
+	 * is hedged by a second one, such as 99.9.
+	 */
+	private static final double HEDGE_PERCENTILE =
+		Double.parseDouble(System.getProperty("com.quest.glue.activityHedgePercentile", "95"));
+	
+	/**
+	 * The activity each thread is performing on behalf of an execution, if any.
+	 */
+	private static final ThreadLocal<Performing> PERFORMING = new ThreadLocal<Performing>() {
+		@Override
+		protected Performing initialValue() {
+			return new Performing();
+		}
+	};
+	
+	// Attributes
+	
+	/**
+	 * The priorities the activities are submitted with, indexed by activity index.
+	 */
+	private final int[] mPriorities;
+	
+	/**
+	 * The number of activities each activity depends on that have not completed yet.
+	 */
+	private final AtomicIntegerArray mPendingCounts;
+	
+	/**
+	 * The number of activities that have not completed yet.
+	 */
+	private int mRemainingCount;
+	
+	/**
+	 * The number of times each activity was postponed.
+	 */
+	private final int[] mPostponeCounts;
+	
+	/**
+	 * The number of times each activity was retried.
+	 */
+	private final int[] mRetryCounts;
+	
+	/**
+	 * The fingerprints of the activities with a {@link FingerprintedAction}, taken when they
+	 * were about to be executed.
+	 */
+	private final Object[] mFingerprints;
+	
+	/**
+	 * The number of dependents of each activity that have neither completed nor been skipped
+	 * yet.
+	 */
+	private final AtomicIntegerArray mReaderCounts;
+	
+	/**
+	 * The activities skipped because an activity they depend on did not execute successfully,
+	 * one bit per activity index.
+	 */
+	private final AtomicLongArray mSkipped;
+	
+	/**
+	 * Indicates whether an activity failed and was not retried any further.
+	 */
+	private volatile boolean mFailed;
+	
+	/**
+	 * The first unexpected failure encountered while executing an activity.
+	 */
+	private Throwable mFailure;
+	
+	/**
+	 * Indicates whether no further activities may be submitted.
+	 */
+	private volatile boolean mAborted;
+	
+	/**
+	 * Indicates whether the execution was cancelled.
+	 */
+	private volatile boolean mCancelled;
+	
+	/**
+	 * Indicates whether the execution has a deadline.
+	 */
+	private final boolean mHasDeadline;
+	
+	/**
+	 * The deadline of the execution, in {@link System#nanoTime()} terms.
+	 */
+	private final long mDeadline;
+	
+	// Associations
+	
+	/**
+	 * The plan being executed.
+	 */
+	private final ExecutionPlan mPlan;
+	
+	/**
+	 * The executor activities are submitted to.
+	 */
+	private final PriorityExecutor mExecutor;
+	
+	/**
+	 * The publisher of the events of the activities.
+	 */
+	private final ActivityEventPublisher mEventPublisher;
+	
+	/**
+	 * The cache of successful executions, used to skip activities whose inputs are unchanged.
+	 */
+	private final ResultCache mResultCache;
+	
+	/**
+	 * The scheduler handing out the tokens of the resources the activities need.
+	 */
+	private final ResourceScheduler mResourceScheduler;
+	
+	/**
+	 * The resources whose tokens each activity is holding, if any.
+	 */
+	private final Resource[][] mHeldResources;
+	
+	/**
+	 * The rate limits of the tags of the actions.
+	 */
+	private final RateLimiter mRateLimiter;
+	
+	/**
+	 * Indicates whether the next attempt of each activity has its permits reserved already,
+	 * because it was deferred by the rate limits or its resources were taken when it was offered.
+	 */
+	private final boolean[] mAdmitted;
+	
+	/**
+	 * The outputs set by the activities, indexed by activity index.
+	 */
+	private final Object[] mOutputs;
+	
+	/**
+	 * List of futures of the submitted activities.
+	 */
+	private final List<Future<Boolean>> mFutureList = new ArrayList<Future<Boolean>>();
+	
+	/**
+	 * The batches of ready activities that still accept activities, indexed by batch key.
+	 */
+	private final HashMap<Object, Batch> mBatchByKey = new HashMap<Object, Batch>();
+	
+	/**
+	 * The thread executing the activities sequentially, if any.
+	 */
+	private Thread mSequentialThread;
+	
+	/**
+	 * Indicates whether a thread waiting for the execution helps running the submitted activities.
+	 */
+	private boolean mHelping;
+	
+	/**
+	 * The index of the next future in the list of futures the waiting thread may help with.
+	 */
+	private int mHelpIndex;
+	
+	// Constructors
+	
+	/**
+	 * Constructs the execution.
+	 *
+	 * @param plan The plan to execute.
+	 * @param executor The executor to submit activities to.
+	 * @param eventPublisher The publisher of the events of the activities.
+	 * @param resultCache The cache to skip activities whose inputs are unchanged with and to
+	 * record successful executions in.
+	 * @param resourceScheduler The scheduler handing out the tokens of the resources the
+	 * activities need.
+	 * @param rateLimiter The rate limits of the tags of the actions.
+	 * @param timeout How long the execution may take, in nanoseconds. Zero or less for no limit.
+	 */
+	/*pkg*/ ExecutionCycle(ExecutionPlan plan, PriorityExecutor executor,
+		ActivityEventPublisher eventPublisher, ResultCache resultCache, ResourceScheduler resourceScheduler, RateLimiter rateLimiter,
+		long timeout) {
+		mPlan = plan;
+		mExecutor = executor;
+		mEventPublisher = eventPublisher;
+		mResultCache = resultCache;
+		mResourceScheduler = resourceScheduler;
+		mRateLimiter = rateLimiter;
+		mPriorities = plan.getPriorities();
+		mPendingCounts = new AtomicIntegerArray(plan.getInDegrees());
+		mRemainingCount = plan.size();
+		mPostponeCounts = new int[plan.size()];
+		mRetryCounts = new int[plan.size()];
+		mFingerprints = new Object[plan.size()];
+		mOutputs = new Object[plan.size()];
+		mHeldResources = new Resource[plan.size()][];
+		mAdmitted = new boolean[plan.size()];
+		int[] readerCounts = new int[plan.size()];
+	
+		for (int i = 0; i < readerCounts.length; i++) {
+			readerCounts[i] = plan.getSuccessors(i).length;
+		}
+	
+		mReaderCounts = new AtomicIntegerArray(readerCounts);
+		mSkipped = new AtomicLongArray((plan.size() + 63) >>> 6);
+		mHasDeadline = timeout > 0;
+		mDeadline = System.nanoTime() + timeout;
+	}
+	
+	// Operations
+	
+	/**
+	 * Executes the activities and waits until they have completed.
+	 *
+	 * @param parallelExecution If true, activities are executed in parallel while maintaining
+	 * their dependencies. If false, activities are executed sequentially on the calling thread.
+	 * @throws InterruptedException Thrown if execution was interrupted
+	 * @throws ActivityException Thrown if an activity failed unexpectedly
+	 * @throws CancellationException Thrown if the execution was cancelled
+	 */
+	/*pkg*/ void execute(boolean parallelExecution) throws InterruptedException, ActivityException {
+		if (parallelExecution) {
+			executeParallel();
+		}
+		else {
+			executeSequential();
+		}
+	}
+	
+	/**
+	 * Starts executing the activities without waiting for them. In parallel, the activities that
+	 * depend on nothing are submitted to the executor. Sequentially, the activities are executed
+	 * on a thread of the shared cycle runner.
+	 *
+	 * @param parallelExecution If true, activities are executed in parallel while maintaining
+	 * their dependencies. If false, activities are executed sequentially.
+	 */
+	/*pkg*/ void start(boolean parallelExecution) {
+		if (parallelExecution) {
+			submitReadyActivities();
+	
+			return;
+		}
+	
+		try {
+			ActivityServiceImpl.CYCLE_RUNNER.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						executeSequential();
+					}
+					catch (CancellationException e) {
+						// cancelled through the handle
+					}
+					catch (Exception e) {
+						abort(e);
+					}
+					catch (Error e) {
+						abort(e);
+	
+						throw e;
+					}
+					finally {
+						// clear an interrupt that arrived after the last activity completed
+						Thread.interrupted();
+					}
+				}
+			});
+		}
+		catch (RuntimeException e) {
+			abort(e);
+		}
+	}
+	
+	/**
+	 * Executes the activities in parallel while maintaining their dependencies.
+	 *
+	 * @throws InterruptedException Thrown if execution was interrupted
+	 * @throws ActivityException Thrown if an activity failed unexpectedly
+	 * @throws CancellationException Thrown if the execution was cancelled
+	 */
+	public void executeParallel() throws InterruptedException, ActivityException {
+		try {
+			submitReadyActivities();
+			await();
+		}
+		finally {
+			cancelSubmitted(true);
+		}
+	}
+	
+	/**
+	 * Executes the activities in parallel while maintaining their dependencies. Rather than only
+	 * waiting, the calling thread runs the submitted activities that no worker has started yet,
+	 * so the execution completes even if every worker of the executor is itself waiting in this
+	 * way, for example for nested groups.
+	 *
+	 * @throws InterruptedException Thrown if execution was interrupted
+	 * @throws ActivityException Thrown if an activity failed unexpectedly
+	 * @throws CancellationException Thrown if the execution was cancelled
+	 */
+	/*pkg*/ void executeHelping() throws InterruptedException, ActivityException {
+		synchronized (this) {
+			mHelping = true;
+		}
+	
+		try {
+			submitReadyActivities();
+	
+			while (!await(false, 0, true)) {
+				helpSubmitted();
+			}
+		}
+		finally {
+			cancelSubmitted(true);
+		}
+	}
+	
+	/**
+	 * Runs the next submitted activity on the calling thread, unless a worker has already started
+	 * it. The executor later skips the activities that were run this way. Activities submitted to
+	 * a fork/join pool are joined instead, which lets the pool run them on the calling thread if
+	 * it is a worker of the pool. A thread outside the pool can only run an activity it manages
+	 * to take back before a worker has started it, and otherwise blocks until the activity has
+	 * completed, so it does not help the workers of a fork/join pool.
+	 */
+	@SuppressWarnings("unchecked")
+	private void helpSubmitted() {
+		Future<Boolean> future;
+	
+		synchronized (this) {
+			if (mHelpIndex >= mFutureList.size()) {
+				return;
+			}
+	
+			future = mFutureList.get(mHelpIndex++);
+		}
+	
+		if (future instanceof ForkJoinTask) {
+			ForkJoinTask<Boolean> task = (ForkJoinTask<Boolean>)future;
+	
+			if (!ForkJoinTask.inForkJoinPool() && task.tryUnfork()) {
+				// taken back before a worker started it, so it cannot run twice
+				task.invoke();
+			}
+			else {
+				// joining from a worker of the pool runs the task, or others, while it waits
+				task.quietlyJoin();
+			}
+		}
+		else if (future instanceof RunnableFuture) {
+			// does nothing if the task has already been started
+			((RunnableFuture<Boolean>)future).run();
+		}
+	}
+	
+	/**
+	 * Submits the activities that depend on nothing, highest priority first. Everything else is
+	 * submitted by the worker that completes its last pending predecessor.
+	 */
+	private void submitReadyActivities() {
+		int size = mPlan.size();
+		long[] readyActivities = new long[size];
+		int readyCount = 0;
+	
+		for (int i = 0; i < size; i++) {
+			if (mPendingCounts.get(i) == 0) {
+				// sort by priority first and index second
+				readyActivities[readyCount++] = ((long)mPriorities[i] << 32) | i;
+			}
+		}
+	
+		Arrays.sort(readyActivities, 0, readyCount);
+	
+		for (int i = 0; i < readyCount; i++) {
+			submitActivity((int)readyActivities[i]);
+		}
+	}
+	
+	/**
+	 * Executes the activities one after the other, in topological order, on the calling thread.
+	 * An activity whose action is not ready, or that is to be retried, is set aside until its
+	 * delay has elapsed, and the activities that do not depend on it are executed in the meantime.
+	 *
+	 * @throws InterruptedException Thrown if execution was interrupted
+	 * @throws ActivityException Thrown if an activity failed unexpectedly
+	 */
+	public void executeSequential() throws InterruptedException, ActivityException {
+		int size = mPlan.size();
+		final long[] dueTimes = new long[size];
+	
+		// Activities whose predecessors have all completed, in topological order
+		PriorityQueue<Integer> readyQueue = new PriorityQueue<Integer>();
+	
+		// Postponed activities, in the order they are due again
+		PriorityQueue<Integer> postponedQueue = new PriorityQueue<Integer>(11,
+			new Comparator<Integer>() {
+				@Override
+				public int compare(Integer index1, Integer index2) {
+					return Long.signum(dueTimes[index1] - dueTimes[index2]);
+				}
+			}
+		);
+	
+		if (CAT.isDebugEnabled()) {
+			StringBuffer orderBuffer = new StringBuffer();
+	
+			for (int i = 0; i < size; i++) {
+				orderBuffer.append(mPlan.getActivity(i).getActionName() + "\n");
+			}
+	
+			CAT.debug("Executing activities in the following order:\n" + orderBuffer.toString() + ".");
+		}
+	
+		for (int i = 0; i < size; i++) {
+			if (mPendingCounts.get(i) == 0) {
+				readyQueue.add(i);
+			}
+		}
+	
+		synchronized (this) {
+			if (mCancelled) {
+				throw newCancellationException();
+			}
+	
+			mSequentialThread = Thread.currentThread();
+		}
+	
+		try {
+			executeSequential(readyQueue, postponedQueue, dueTimes);
+		}
+		catch (InterruptedException e) {
+			if (mCancelled) {
+				throw newCancellationException();
+			}
+	
+			throw e;
+		}
+		finally {
+			synchronized (this) {
+				mSequentialThread = null;
+			}
+		}
+	}
+	
+	/**
+	 * Executes the ready activities, and those that become ready, one after the other until none
+	 * is left or the execution is cancelled.
+	 *
+	 * @param readyQueue The activities whose predecessors have all completed.
+	 * @param postponedQueue The activities that were set aside, in the order they are due again.
+	 * @param dueTimes The times the activities that were set aside are due again, in
+	 * {@link System#nanoTime()} terms.
+	 * @throws InterruptedException Thrown if execution was interrupted
+	 * @throws ActivityException Thrown if an activity failed unexpectedly
+	 * @throws CancellationException Thrown if the execution was cancelled
+	 */
+	private void executeSequential(PriorityQueue<Integer> readyQueue,
+		PriorityQueue<Integer> postponedQueue, long[] dueTimes)
+		throws InterruptedException, ActivityException {
+		while (!readyQueue.isEmpty() || !postponedQueue.isEmpty()) {
+			if (mCancelled) {
+				throw newCancellationException();
+			}
+	
+			long now = System.nanoTime();
+	
+			while (!postponedQueue.isEmpty() && dueTimes[postponedQueue.peek()] - now <= 0) {
+				readyQueue.add(postponedQueue.poll());
+			}
+	
+			if (readyQueue.isEmpty()) {
+				waitUnlessCancelled(dueTimes[postponedQueue.peek()] - now);
+	
+				continue;
+			}
+	
+			int index = readyQueue.poll();
+			long delay;
+	
+			if (isExpired()) {
+				logSkippingActivity(index);
+				publish(ActivityEvent.Type.SKIPPED, index, null, 0);
+			}
+			else if (isUnchanged(index)) {
+				reuseResult(index);
+			}
+			else if (isPostponed(index)) {
+				dueTimes[index] = now + limitDelay(TimeUnit.MILLISECONDS.toNanos(getPostponeDelay(index)));
+				postponedQueue.add(index);
+	
+				continue;
+			}
+			else if ((delay = admit(index)) > 0) {
+				dueTimes[index] = now + limitDelay(delay);
+				postponedQueue.add(index);
+	
+				continue;
+			}
+			else if (!acquireResources(index, false)) {
+				// the tokens are held by other executions
+				dueTimes[index] = now + limitDelay(TimeUnit.MILLISECONDS.toNanos(getPostponeDelay(index)));
+				postponedQueue.add(index);
+	
+				continue;
+			}
+			else if (isBatchable(mPlan.getActivity(index))) {
+				executeBatch(pollBatch(index, readyQueue), readyQueue, postponedQueue, dueTimes);
+	
+				continue;
+			}
+			else {
+				ExecutionResultType executionResult;
+	
+				// the attempt starts with the permits it reserved
+				mAdmitted[index] = false;
+	
+				try {
+					executionResult = executeActivity(index, newHedge(index));
+				}
+				finally {
+					releaseResources(index);
+				}
+	
+				if (executionResult == null) {
+					dueTimes[index] = System.nanoTime() + limitDelay(getRetryDelay(index));
+					postponedQueue.add(index);
+	
+					continue;
+				}
+			}
+	
+			completeActivity(index, readyQueue);
+		}
+	}
+	
+	/**
+	 * Marks the activity as completed and adds any of its dependents that no longer wait on
+	 * another activity to the ready activities.
+	 *
+	 * @param index The index of the completed activity.
+	 * @param readyQueue The activities whose predecessors have all completed.
+	 */
+	private void completeActivity(int index, PriorityQueue<Integer> readyQueue) {
+		releaseInputs(index);
+	
+		for (int successor : mPlan.getSuccessors(index)) {
+			if (mPendingCounts.decrementAndGet(successor) == 0 && !isSkipped(successor)) {
+				readyQueue.add(successor);
+			}
+		}
+	
+		activitiesCompleted(1);
+	}
+	
+	/**
+	 * Takes the ready activities that can be batched with the activity out of the ready
+	 * activities, up to the maximum size of the batch.
+	 *
+	 * @param index The index of the activity opening the batch.
+	 * @param readyQueue The activities whose predecessors have all completed.
+	 * @return The indices of the activities of the batch, starting with the activity.
+	 */
+	private int[] pollBatch(int index, PriorityQueue<Integer> readyQueue) {
+		BatchableAction action = (BatchableAction)mPlan.getActivity(index).getAction();
+		Object key = action.getBatchKey();
+		int[] indices = new int[Math.min(action.getMaxBatchSize(), readyQueue.size() + 1)];
+		int count = 0;
+	
+		indices[count++] = index;
+	
+		for (Iterator<Integer> it = readyQueue.iterator(); it.hasNext() && count < indices.length;) {
+			int readyIndex = it.next();
+			Activity activity = mPlan.getActivity(readyIndex);
+	
+			if (isBatchable(activity) && isEqual(key, ((BatchableAction)activity.getAction()).getBatchKey())
+				&& !isPostponed(readyIndex)) {
+				it.remove();
+				indices[count++] = readyIndex;
+			}
+		}
+	
+		return Arrays.copyOf(indices, count);
+	}
+	
+	/**
+	 * @param key A batch key, or null.
+	 * @param otherKey Another batch key, or null.
+	 * @return True, if the batch keys are equal.
+	 */
+	private static boolean isEqual(Object key, Object otherKey) {
+		return key == null ? otherKey == null : key.equals(otherKey);
+	}
+	
+	/**
+	 * Executes a batch of activities on the calling thread and either completes them or sets
+	 * them aside until they are to be retried or offered for execution again.
+	 *
+	 * @param indices The indices of the activities of the batch.
+	 * @param readyQueue The activities whose predecessors have all completed.
+	 * @param postponedQueue The activities that were set aside, in the order they are due again.
+	 * @param dueTimes The times the activities that were set aside are due again.
+	 * @throws InterruptedException Thrown if execution was interrupted
+	 */
+	private void executeBatch(int[] indices, PriorityQueue<Integer> readyQueue,
+		PriorityQueue<Integer> postponedQueue, long[] dueTimes) throws InterruptedException {
+		long[] delays = new long[indices.length];
+	
+		executeBatch(indices, delays);
+	
+		for (int i = 0; i < indices.length; i++) {
+			if (delays[i] < 0) {
+				completeActivity(indices[i], readyQueue);
+			}
+			else {
+				dueTimes[indices[i]] = System.nanoTime() + limitDelay(delays[i]);
+				postponedQueue.add(indices[i]);
+			}
+		}
+	}
+	
+	/**
+	 * Submits the activity to the executor. If the executor fails to accept the activity, the
+	 * execution is aborted.
+	 *
+	 * @param index The index of the activity whose predecessors have all completed.
+	 */
+	private void submitActivity(int index) {
+		if (!mAborted && !isSkipped(index)) {
+			if (isBatchable(mPlan.getActivity(index))) {
+				addToBatch(index);
+			}
+			else {
+				submitTask(new ActivityTask(index), mPriorities[index]);
+			}
+		}
+	}
+	
+	/**
+	 * Submits the task to the executor. If the executor has no room for the task, it is
+	 * submitted again after a delay, so that it is never executed by the submitting thread. If
+	 * the executor fails to accept the task otherwise, the execution is aborted.
+	 *
+	 * @param task The task executing one or more activities.
+	 * @param priority The priority of the task.
+	 */
+	private void submitTask(Callable<Boolean> task, int priority) {
+		try {
+			Future<Boolean> future = mExecutor.submit(task, priority);
+	
+			addFuture(future);
+		}
+		catch (RejectedExecutionException e) {
+			if (mCancelled || mExecutor.isShutdown()) {
+				// the task would otherwise be lost and the execution would never complete
+				abort(e);
+			}
+			else {
+				submitTaskLater(task, priority);
+			}
+		}
+		catch (RuntimeException e) {
+			// the task would otherwise be lost and the execution would never complete
+			abort(e);
+		}
+	}
+	
+	/**
+	 * Parks the task, which the executor had no room for, on the timer and submits it again once
+	 * the postpone delay has elapsed.
+	 *
+	 * @param task The task executing one or more activities.
+	 * @param priority The priority of the task.
+	 */
+	private void submitTaskLater(final Callable<Boolean> task, final int priority) {
+		if (CAT.isDebugEnabled()) {
+			CAT.debug("The activity executor is full. Submitting task " + task + " again in " +
+				Long.toString(POSTPONE_DELAY_MS) + " ms.");
+		}
+	
+		ActivityServiceImpl.ACTIVITY_TIMER.schedule(new Runnable() {
+			@Override
+			public void run() {
+				if (!mAborted) {
+					submitTask(task, priority);
+				}
+			}
+		}, limitDelay(TimeUnit.MILLISECONDS.toNanos(POSTPONE_DELAY_MS)), TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * @param activity The activity.
+	 * @return True, if the action of the activity may be performed in a batch with others.
+	 */
+	private static boolean isBatchable(Activity activity) {
+		ActivityAction action = activity.getAction();
+	
+		return activity instanceof ActivityImpl && action instanceof BatchableAction
+			&& !(action instanceof AsyncAction) && !(action instanceof ResourceAction)
+			&& ((BatchableAction)action).getMaxBatchSize() > 1;
+	}
+	
+	/**
+	 * Adds the ready activity to the batch of its batch key, opening a batch if there is none
+	 * that still accepts activities. A batch is submitted once its linger time has elapsed, or
+	 * right away if it has none, and no longer accepts activities once it is full or a worker
+	 * has started performing it.
+	 *
+	 * @param index The index of the activity, whose action must be a {@link BatchableAction}.
+	 */
+	private void addToBatch(int index) {
+		BatchableAction action = (BatchableAction)mPlan.getActivity(index).getAction();
+		Object key = action.getBatchKey();
+		Batch batch;
+		boolean opened = false;
+		boolean full;
+	
+		synchronized (mBatchByKey) {
+			batch = mBatchByKey.get(key);
+	
+			if (batch == null) {
+				batch = new Batch(key, action.getMaxBatchSize());
+				mBatchByKey.put(key, batch);
+				opened = true;
+			}
+	
+			batch.mIndexList.add(index);
+			full = batch.mIndexList.size() >= batch.mMaxSize;
+	
+			if (full) {
+				batch.close();
+			}
+		}
+	
+		if (full) {
+			batch.submit();
+		}
+		else if (opened) {
+			long linger = action.getBatchLinger(TimeUnit.NANOSECONDS);
+	
+			if (linger > 0) {
+				batch.submitLater(limitDelay(linger));
+			}
+			else {
+				batch.submit();
+			}
+		}
+	}
+	
+	/**
+	 * @param index The index of the activity.
+	 * @return True, if the activity is enabled but its action is a {@link PostponableAction} that
+	 * is not ready to be performed.
+	 */
+	private boolean isPostponed(int index) {
+		Activity activity = mPlan.getActivity(index);
+		ActivityAction action = activity.getAction();
+	
+		return action instanceof PostponableAction && activity.isEnabled()
+			&& !((PostponableAction)action).isReady();
+	}
+	
+	/**
+	 * Counts a postponement of the activity.
+	 *
+	 * @param index The index of the activity.
+	 * @return The delay in milliseconds before the activity is offered for execution again.
+	 */
+	private long getPostponeDelay(int index) {
+		int postponeCount = ++mPostponeCounts[index];
+		long delay = POSTPONE_DELAY_MS << Math.min(postponeCount - 1, 20);
+	
+		delay = Math.min(delay, MAX_POSTPONE_DELAY_MS);
+	
+	    if (CAT.isDebugEnabled()) {
+			Activity activity = mPlan.getActivity(index);
+	
+	        CAT.debug("Postponing activity \"" + activity.getActionName() + "\" [class: \"" +
+        		activity.getActionClassName() + "\"] for " + Long.toString(delay) + " ms.");
+	    }
+	
+		return delay;
+	}
+	
+	/**
+	 * Counts a retry of the activity.
+	 *
+	 * @param index The index of the activity, which must be an {@link ActivityImpl}.
+	 * @return The delay in nanoseconds before the activity is retried.
+	 */
+	private long getRetryDelay(int index) {
+		return ((ActivityImpl)mPlan.getActivity(index)).getRetryDelay(mRetryCounts[index]++);
+	}
+	
+	/**
+	 * Parks the activity on the timer until the delay has elapsed and then submits it to the
+	 * executor again. No worker is held while the activity waits.
+	 *
+	 * @param index The index of the activity.
+	 * @param delay The delay.
+	 * @param unit The unit of the delay.
+	 */
+	private void submitActivityLater(final int index, long delay, TimeUnit unit) {
+		ActivityServiceImpl.ACTIVITY_TIMER.schedule(new Runnable() {
+			@Override
+			public void run() {
+				submitActivity(index);
+			}
+		}, limitDelay(unit.toNanos(delay)), TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * @return True, if the deadline of the execution has passed.
+	 */
+	private boolean isExpired() {
+		return mHasDeadline && System.nanoTime() - mDeadline >= 0;
+	}
+	
+	/**
+	 * Limits the delay of an activity that is set aside to the time left until the deadline, so
+	 * that it is skipped as soon as the deadline has passed instead of being waited for.
+	 *
+	 * @param delay The delay in nanoseconds.
+	 * @return The limited delay in nanoseconds.
+	 */
+	private long limitDelay(long delay) {
+		if (mHasDeadline) {
+			return Math.max(Math.min(delay, mDeadline - System.nanoTime()), 0);
+		}
+	
+		return delay;
+	}
+	
+	/**
+	 * @param index The index of the activity.
+	 * @return How long an attempt of the activity may take, in nanoseconds: the timeout of the
+	 * activity, limited to the time left until the deadline. Zero for no limit.
+	 */
+	private long getTimeout(int index) {
+		Activity activity = mPlan.getActivity(index);
+		long timeout = (activity instanceof ActivityImpl) ? ((ActivityImpl)activity).getTimeout() : 0;
+	
+		if (mHasDeadline) {
+			long remaining = Math.max(mDeadline - System.nanoTime(), 1);
+	
+			timeout = (timeout > 0) ? Math.min(timeout, remaining) : remaining;
+		}
+	
+		return Math.max(timeout, 0);
+	}
+	
+	/**
+	 * Logs that the activity is skipped because the deadline of the execution has passed.
+	 *
+	 * @param index The index of the activity.
+	 */
+	private void logSkippingActivity(int index) {
+	    if (CAT.isDebugEnabled()) {
+			Activity activity = mPlan.getActivity(index);
+	
+	        CAT.debug("Skipping activity \"" + activity.getActionName() + "\" [class: \"" +
+        		activity.getActionClassName() + "\"] because the execution has passed its deadline.");
+	    }
+	}
+	
+	/**
+	 * Marks the activity as completed and submits any of its dependents that no longer wait on
+	 * another activity.
+	 *
+	 * @param index The index of the completed activity.
+	 */
+	private void completeActivity(int index) {
+		releaseInputs(index);
+	
+		for (int successor : mPlan.getSuccessors(index)) {
+			if (mPendingCounts.decrementAndGet(successor) == 0) {
+				submitActivity(successor);
+			}
+		}
+	
+		activitiesCompleted(1);
+	}
+	
+	/**
+	 * Logs that the activity is about to be executed.
+	 *
+	 * @param index The index of the activity.
+	 */
+	private void logExecutingActivity(int index) {
+	    if (CAT.isDebugEnabled()) {
+			Activity activity = mPlan.getActivity(index);
+	
+	        CAT.debug("Executing " + Integer.toString(index + 1) + "/" + mPlan.size() +
+        		": activity \"" + activity.getActionName() + "\" [class: \"" +
+        		activity.getActionClassName() + "\"].");
+	    }
+	}
+	
+	/**
+	 * Executes a batch of activities on the calling thread by a single call to
+	 * {@link BatchableAction#performBatch(List)}, skipping those whose turn has passed the
+	 * deadline and leaving out those that are not ready or are being executed elsewhere. Every
+	 * activity is attempted at most once; if it fails and may be retried, the retry is left to
+	 * the caller.
+	 *
+	 * @param indices The indices of the activities of the batch.
+	 * @param delays Set to the delay in nanoseconds before each activity is to be offered for
+	 * execution again, or to a negative value if the activity has completed.
+	 * @throws InterruptedException Thrown if execution was interrupted
+	 */
+	private void executeBatch(int[] indices, long[] delays) throws InterruptedException {
+		ActivityImpl[] activities = new ActivityImpl[indices.length];
+		int[] members = new int[indices.length];
+		int count = 0;
+		long timeout = 0;
+	
+		for (int i = 0; i < indices.length; i++) {
+			int index = indices[i];
+			long delay;
+	
+			delays[i] = -1;
+	
+			if (isExpired()) {
+				logSkippingActivity(index);
+				publish(ActivityEvent.Type.SKIPPED, index, null, 0);
+			}
+			else if (isUnchanged(index)) {
+				reuseResult(index);
+			}
+			else if (isPostponed(index)) {
+				delays[i] = TimeUnit.MILLISECONDS.toNanos(getPostponeDelay(index));
+			}
+			else if ((delay = admit(index)) > 0) {
+				delays[i] = delay;
+			}
+			else {
+				logExecutingActivity(index);
+				publish(ActivityEvent.Type.STARTED, index, null, 0);
+	
+				mAdmitted[index] = false;
+	
+				long activityTimeout = getTimeout(index);
+	
+				// the batch is limited by the shortest timeout of its activities
+				if (timeout == 0 || (activityTimeout > 0 && activityTimeout < timeout)) {
+					timeout = activityTimeout;
+				}
+	
+				activities[count] = (ActivityImpl)mPlan.getActivity(index);
+				members[count++] = i;
+			}
+		}
+	
+		if (count == 0) {
+			return;
+		}
+	
+		long startTime = System.nanoTime();
+		ExecutionResultType[] executionResults = ActivityImpl.attemptBatch(Arrays.copyOf(activities, count),
+			timeout);
+	
+		for (int j = 0; j < count; j++) {
+			int i = members[j];
+			int index = indices[i];
+			ExecutionResultType executionResult = executionResults[j];
+	
+			if (executionResult == null) {
+				// being executed elsewhere, offer it again later
+				delays[i] = TimeUnit.MILLISECONDS.toNanos(getPostponeDelay(index));
+	
+				continue;
+			}
+	
+			if (executionResult == ExecutionResultType.FAILURE) {
+				if (activities[j].canRetry(mRetryCounts[index])) {
+					publish(ActivityEvent.Type.RETRIED, index, executionResult, System.nanoTime() - startTime);
+					delays[i] = getRetryDelay(index);
+	
+					continue;
+				}
+	
+				activities[j].logFailure(mRetryCounts[index]);
+			}
+	
+			recordDuration(index, executionResult, startTime);
+			handleExecutionResult(index, executionResult);
+		}
+	}
+	
+	/**
+	 * Executes the activity. An {@link ActivityImpl} is attempted once; if it fails and may be
+	 * retried, the retry is left to the caller so that no thread is held while waiting for it.
+	 *
+	 * @param index The index of the activity.
+	 * @param hedge The hedge racing the attempt, or null.
+	 *
+	 * @return {@link ExecutionResultType}, or null if the activity failed and is to be retried
+	 * after {@link #getRetryDelay(int)}.
+	 *
+	 * @throws ActivityException
+	 */
+	private ExecutionResultType executeActivity(int index, Hedge hedge)
+		throws InterruptedException, ActivityException {
+		logExecutingActivity(index);
+		publish(ActivityEvent.Type.STARTED, index, null, 0);
+	
+		Activity activity = mPlan.getActivity(index);
+		long startTime = System.nanoTime();
+	    ExecutionResultType executionResult;
+	
+	    Performing performing = PERFORMING.get();
+	    ExecutionCycle performingCycle = performing.mCycle;
+	    int performingIndex = performing.mIndex;
+	
+	    // a group performs its activities on this thread while it is performed itself
+	    performing.mCycle = this;
+	    performing.mIndex = index;
+	
+	    try {
+		    if (activity instanceof ActivityImpl) {
+		    	ActivityImpl activityImpl = (ActivityImpl)activity;
+	
+		    	executionResult = activityImpl.attempt(getTimeout(index), hedge);
+	
+		    	if (executionResult == ExecutionResultType.FAILURE) {
+		    		if (activityImpl.canRetry(mRetryCounts[index])) {
+		    			publish(ActivityEvent.Type.RETRIED, index, executionResult, System.nanoTime() - startTime);
+	
+		    			return null;
+		    		}
+	
+		    		activityImpl.logFailure(mRetryCounts[index]);
+		    	}
+		    }
+		    else {
+		    	executionResult = activity.execute();
+		    }
+	    }
+	    finally {
+	    	performing.mCycle = performingCycle;
+	    	performing.mIndex = performingIndex;
+	    }
+	
+	    recordDuration(index, executionResult, startTime);
+	    handleExecutionResult(index, executionResult);
+	
+	    return executionResult;
+	}
+	
+	/**
+	 * Admits the next attempt of the activity under the rate limits of the tags of its action,
+	 * reserving a permit of each limited tag. The permits are kept for the attempt until it
+	 * starts, so an attempt deferred until its permits are due, or offered again once its
+	 * resources are free, is admitted right away without reserving more.
+	 *
+	 * @param index The index of the activity.
+	 * @return The delay in nanoseconds before the activity may start, or zero if it may start
+	 * now.
+	 */
+	private long admit(int index) {
+		if (mAdmitted[index]) {
+			return 0;
+		}
+	
+		if (mRateLimiter.isEmpty()) {
+			return 0;
+		}
+	
+		Activity activity = mPlan.getActivity(index);
+		Tag[] tags = activity.getActionTags();
+	
+		if (tags == null || tags.length == 0 || !activity.isEnabled()) {
+			return 0;
+		}
+	
+		long delay = mRateLimiter.reserve(tags);
+	
+		mAdmitted[index] = true;
+	
+		if (delay > 0 && CAT.isDebugEnabled()) {
+			CAT.debug("Throttling activity \"" + activity.getActionName() + "\" [class: \"" +
+				activity.getActionClassName() + "\"] for " +
+				Long.toString(TimeUnit.NANOSECONDS.toMillis(delay)) + " ms.");
+		}
+	
+		return delay;
+	}
+	
+	/**
+	 * Acquires a token of each of the resources the activity needs, or none of them.
+	 *
+	 * @param index The index of the activity.
+	 * @param wait If true and the tokens are not free, the activity is offered for execution
+	 * again once tokens of its resources are released.
+	 * @return True, if the activity needs no resources or the tokens were acquired.
+	 */
+	private boolean acquireResources(final int index, boolean wait) {
+		Activity activity = mPlan.getActivity(index);
+		ActivityAction action = activity.getAction();
+	
+		if (!(action instanceof ResourceAction)) {
+			return true;
+		}
+	
+		Resource[] resources = ((ResourceAction)action).getResources();
+	
+		if (resources == null || resources.length == 0) {
+			return true;
+		}
+	
+		Runnable waiter = null;
+	
+		if (wait) {
+			waiter = new Runnable() {
+				@Override
+				public void run() {
+					submitActivity(index);
+				}
+			};
+		}
+	
+		if (!mResourceScheduler.tryAcquire(resources, this, waiter)) {
+			if (wait && mAborted) {
+				// the waiter may have been left after the execution removed its waiters
+				mResourceScheduler.removeWaiters(this);
+			}
+	
+			if (CAT.isDebugEnabled()) {
+				CAT.debug("Activity \"" + activity.getActionName() + "\" [class: \"" +
+					activity.getActionClassName() + "\"] is waiting for its resources.");
+			}
+	
+			return false;
+		}
+	
+		mHeldResources[index] = resources;
+	
+		return true;
+	}
+	
+	/**
+	 * Releases the tokens of the resources the activity is holding, if any.
+	 *
+	 * @param index The index of the activity.
+	 */
+	private void releaseResources(int index) {
+		Resource[] resources = mHeldResources[index];
+	
+		if (resources != null) {
+			mHeldResources[index] = null;
+			mResourceScheduler.release(resources);
+		}
+	}
+	
+	/**
+	 * @param index The index of the activity.
+	 * @return The hedge to race the next attempt of the activity with, or null if its action is
+	 * not a {@link HedgeableAction} or too few of its durations have been recorded yet.
+	 */
+	private Hedge newHedge(int index) {
+		Activity activity = mPlan.getActivity(index);
+	
+		ActivityAction action = activity.getAction();
+	
+		// a hedge would take more tokens of the resources than the action may hold
+		if (!(activity instanceof ActivityImpl) || !(action instanceof HedgeableAction)
+			|| action instanceof ResourceAction || isAsync(activity)) {
+			return null;
+		}
+	
+		long delay = mPlan.getEstimate(index).getPercentile(HEDGE_PERCENTILE);
+	
+		return (delay >= 0) ? new Hedge(index, limitDelay(delay)) : null;
+	}
+	
+	/**
+	 * Executes an activity whose action is an {@link AsyncAction} without waiting for the action to
+	 * complete. The dependents of the activity are released once it has completed. If it fails and
+	 * may be retried, it is submitted again once the retry delay has elapsed.
+	 *
+	 * @param index The index of the activity.
+	 */
+	private void executeActivityAsync(final int index) {
+		logExecutingActivity(index);
+		publish(ActivityEvent.Type.STARTED, index, null, 0);
+	
+		final ActivityImpl activity = (ActivityImpl)mPlan.getActivity(index);
+		final long startTime = System.nanoTime();
+	
+		activity.attemptAsync(getTimeout(index)).whenComplete(new BiConsumer<ExecutionResultType, Throwable>() {
+			@Override
+			public void accept(ExecutionResultType executionResult, Throwable failure) {
+				releaseResources(index);
+				attemptCompleted(index, executionResult, failure, startTime);
+			}
+		});
+	}
+	
+	/**
+	 * Executes an activity whose action is a {@link HedgeableAction}, making the first attempt on
+	 * the calling thread while the hedge may race it on another worker. The dependents of the
+	 * activity are released as soon as one of the attempts has decided it, even while the other
+	 * one is still performing the action. If it fails and may be retried, it is submitted again
+	 * once the retry delay has elapsed.
+	 *
+	 * @param index The index of the activity.
+	 * @param hedge The hedge racing the first attempt.
+	 * @throws InterruptedException Thrown if interrupted while waiting for an attempt of another
+	 * execution.
+	 */
+	private void executeActivityHedged(final int index, Hedge hedge) throws InterruptedException {
+		logExecutingActivity(index);
+		publish(ActivityEvent.Type.STARTED, index, null, 0);
+	
+		ActivityImpl activity = (ActivityImpl)mPlan.getActivity(index);
+		final long startTime = System.nanoTime();
+		CompletableFuture<ExecutionResultType> result = new CompletableFuture<ExecutionResultType>();
+	
+		// completes on the thread of the hedge if it succeeds first
+		result.whenComplete(new BiConsumer<ExecutionResultType, Throwable>() {
+			@Override
+			public void accept(ExecutionResultType executionResult, Throwable failure) {
+				attemptCompleted(index, executionResult, failure, startTime);
+			}
+		});
+	
+	    Performing performing = PERFORMING.get();
+	    ExecutionCycle performingCycle = performing.mCycle;
+	    int performingIndex = performing.mIndex;
+	
+	    performing.mCycle = this;
+	    performing.mIndex = index;
+	
+	    try {
+	    	activity.attemptHedged(getTimeout(index), hedge, result);
+	    }
+	    finally {
+	    	performing.mCycle = performingCycle;
+	    	performing.mIndex = performingIndex;
+	    }
+	}
+	
+	/**
+	 * Completes an activity once an attempt that did not wait for the action has completed, or
+	 * submits it again if it failed and may be retried.
+	 *
+	 * @param index The index of the activity.
+	 * @param executionResult The result of the attempt.
+	 * @param failure The failure the attempt completed exceptionally with, or null.
+	 * @param startTime The value of {@link System#nanoTime()} when the execution started.
+	 */
+	private void attemptCompleted(int index, ExecutionResultType executionResult, Throwable failure,
+		long startTime) {
+		if (failure != null) {
+			abort(failure);
+	
+			return;
+		}
+	
+		ActivityImpl activity = (ActivityImpl)mPlan.getActivity(index);
+	
+		try {
+			if (executionResult == ExecutionResultType.FAILURE) {
+				if (activity.canRetry(mRetryCounts[index])) {
+					publish(ActivityEvent.Type.RETRIED, index, executionResult, System.nanoTime() - startTime);
+					submitActivityLater(index, getRetryDelay(index), TimeUnit.NANOSECONDS);
+	
+					return;
+				}
+	
+				activity.logFailure(mRetryCounts[index]);
+			}
+	
+			recordDuration(index, executionResult, startTime);
+			handleExecutionResult(index, executionResult);
+			completeActivity(index);
+		}
+		catch (RuntimeException e) {
+			abort(e);
+		}
+	}
+	
+	/**
+	 * @param activity The activity.
+	 * @return True, if the action of the activity is performed asynchronously.
+	 */
+	private static boolean isAsync(Activity activity) {
+		return activity instanceof ActivityImpl && activity.getAction() instanceof AsyncAction;
+	}
+	
+	/**
+	 * Records how long a successfully executed activity took so that the priorities of later
+	 * executions can take it into account, and publishes that the activity has finished.
+	 *
+	 * @param index The index of the activity.
+	 * @param executionResult The result of executing the activity.
+	 * @param startTime The value of {@link System#nanoTime()} when the execution started.
+	 */
+	private void recordDuration(int index, ExecutionResultType executionResult, long startTime) {
+		long duration = System.nanoTime() - startTime;
+	
+		if (executionResult == ExecutionResultType.SUCCESS) {
+			mPlan.getEstimate(index).record(duration);
+		}
+	
+		publish(ActivityEvent.Type.FINISHED, index, executionResult, duration);
+	}
+	
+	/**
+	 * Publishes an event of the activity to the listeners of the service.
+	 *
+	 * @param type What happened to the activity.
+	 * @param index The index of the activity.
+	 * @param executionResult The result of the activity, or null if it has none.
+	 * @param duration How long the activity took to execute, in nanoseconds.
+	 */
+	private void publish(ActivityEvent.Type type, int index, ExecutionResultType executionResult,
+		long duration) {
+		mEventPublisher.publish(type, mPlan.getActivity(index), executionResult, duration);
+	}
+	
+	/**
+	 * Skips the dependents of the activity for the rest of the execution if it did not execute
+	 * successfully. Only {@link ExecutionResultType#DISABLE} disables the activity itself; an
+	 * activity that failed or returned {@link ExecutionResultType#DISABLE_ONCE} is left enabled,
+	 * and it and its dependents are executed again by the next execution.
+	 *
+	 * @param index The index of the activity.
+	 * @param executionResult The result of executing the activity.
+	 */
+	private void handleExecutionResult(int index, ExecutionResultType executionResult) {
+		Activity activity = mPlan.getActivity(index);
+	
+		if (activity.getAction() instanceof FingerprintedAction) {
+			recordResult(index, executionResult);
+		}
+	
+	    if (executionResult == ExecutionResultType.FAILURE
+			|| executionResult == ExecutionResultType.DISABLE
+	        || executionResult == ExecutionResultType.DISABLE_ONCE ) {
+	    	if (executionResult == ExecutionResultType.FAILURE) {
+	    		mFailed = true;
+	
+		    	CAT.warn("Failed to execute activity \"" + activity.getActionName() + "\" [class: \"" +
+	    			activity.getActionClassName() + "\"] successfully. Skipping all dependent activities.");
+	    	}
+	    	else if (executionResult == ExecutionResultType.DISABLE && activity.isEnabled()) {
+	    		CAT.warn("Activity \"" + activity.getActionName() + "\" [class: \"" +
+    				activity.getActionClassName() + "\"] could not disabled. Trying to disable the activity.");
+	
+	    		activity.disable();
+	    	}
+	
+	    	// no dependent is left to get the output
+	    	mOutputs[index] = null;
+	    	skipDependentActivities(index);
+	    }
+	}
+	
+	/**
+	 * @param index The index of the activity.
+	 * @return True, if the activity is enabled, has a {@link FingerprintedAction}, and neither
+	 * its fingerprint nor the activities it depends on have changed since its last successful
+	 * execution.
+	 */
+	private boolean isUnchanged(int index) {
+		Activity activity = mPlan.getActivity(index);
+		ActivityAction action = activity.getAction();
+	
+		if (!(action instanceof FingerprintedAction) || !activity.isEnabled()) {
+			return false;
+		}
+	
+		Object fingerprint = ((FingerprintedAction)action).getFingerprint();
+	
+		mFingerprints[index] = fingerprint;
+	
+		return fingerprint != null
+			&& mResultCache.isUnchanged(activity, fingerprint, mPlan.getPredecessors(index));
+	}
+	
+	/**
+	 * Treats the activity as successfully executed without executing it, because its inputs are
+	 * unchanged.
+	 *
+	 * @param index The index of the activity.
+	 */
+	private void reuseResult(int index) {
+		if (CAT.isDebugEnabled()) {
+			Activity activity = mPlan.getActivity(index);
+	
+			CAT.debug("Reusing the last result of activity \"" + activity.getActionName() + "\" [class: \"" +
+				activity.getActionClassName() + "\"]. Its inputs are unchanged.");
+		}
+	
+		publish(ActivityEvent.Type.REUSED, index, ExecutionResultType.SUCCESS, 0);
+	}
+	
+	/**
+	 * Records the fingerprint of a successful execution of the activity, so that later executions
+	 * can skip it while its inputs are unchanged. Any other result forgets the last successful
+	 * execution, since the activity did execute and its dependents can no longer rely on it.
+	 *
+	 * @param index The index of the activity, whose action must be a {@link FingerprintedAction}.
+	 * @param executionResult The result of executing the activity.
+	 */
+	private void recordResult(int index, ExecutionResultType executionResult) {
+		Activity activity = mPlan.getActivity(index);
+		Object fingerprint = mFingerprints[index];
+	
+		if (executionResult == ExecutionResultType.SUCCESS && fingerprint != null) {
+			mResultCache.record(activity, fingerprint, mPlan.getPredecessors(index));
+		}
+		else {
+			mResultCache.invalidate(activity);
+		}
+	}
+	
+	/**
+	 * Skips every activity that depends, directly or indirectly, on the activity for the rest of
+	 * the execution. The dependents are marked in the skip set in a single iterative pass over the
+	 * plan, and the activities themselves are left untouched. None of them can have been
+	 * submitted yet since each still waits on the activity, so they are completed right away and
+	 * only their pending counts are left to drop to zero unnoticed.
+	 *
+	 * @param index The index of the activity that did not execute successfully.
+	 */
+	private void skipDependentActivities(int index) {
+		int[] stack = null;
+		int stackSize = 0;
+		int skippedCount = 0;
+		int successorIndex = index;
+	
+		while (true) {
+			for (int dependentIndex : mPlan.getSuccessors(successorIndex)) {
+				if (markSkipped(dependentIndex)) {
+					if (stack == null) {
+						// every activity is pushed at most once
+						stack = new int[mPlan.size()];
+					}
+	
+					stack[stackSize++] = dependentIndex;
+				}
+			}
+	
+			if (stackSize == 0) {
+				break;
+			}
+	
+			successorIndex = stack[--stackSize];
+			skippedCount++;
+			releaseInputs(successorIndex);
+			publish(ActivityEvent.Type.DISABLED, successorIndex, null, 0);
+		}
+	
+		if (skippedCount > 0) {
+			if (CAT.isDebugEnabled()) {
+				Activity activity = mPlan.getActivity(index);
+	
+				CAT.debug("Skipping " + Integer.toString(skippedCount) + " activities that depend on activity \"" +
+					activity.getActionName() + "\" [class: \"" + activity.getActionClassName() + "\"].");
+			}
+	
+			activitiesCompleted(skippedCount);
+		}
+	}
+	
+	/**
+	 * Sets the output of the activity the calling thread is performing.
+	 *
+	 * @param activity The activity producing the output.
+	 * @param value The output, or null to clear it.
+	 * @throws IllegalStateException Thrown if the calling thread is not performing the activity on
+	 * behalf of an execution.
+	 */
+	/*pkg*/ static void setOutput(Activity activity, Object value) {
+		Performing performing = PERFORMING.get();
+		ExecutionCycle cycle = performing.mCycle;
+		int index = performing.mIndex;
+	
+		if (cycle == null || cycle.mPlan.getActivity(index) != activity) {
+			throw new IllegalStateException("The output of activity \"" + activity.getActionName() +
+				"\" can only be set by its action while it is executed by an execution cycle.");
+		}
+	
+		if (cycle.mReaderCounts.get(index) > 0) {
+			cycle.mOutputs[index] = value;
+	
+			// the last dependent may have been skipped meanwhile, after another activity it
+			// depends on failed
+			if (cycle.mReaderCounts.get(index) == 0) {
+				cycle.mOutputs[index] = null;
+			}
+		}
+	}
+	
+	/**
+	 * Gets the output of an activity that the activity the calling thread is performing depends
+	 * on.
+	 *
+	 * @param activity The activity producing the output.
+	 * @return The output, or null if the activity set none in the execution.
+	 * @throws IllegalStateException Thrown if the calling thread is not performing an activity
+	 * that depends on the activity on behalf of an execution.
+	 */
+	/*pkg*/ static Object getOutput(Activity activity) {
+		Performing performing = PERFORMING.get();
+		ExecutionCycle cycle = performing.mCycle;
+	
+		if (cycle != null) {
+			int index = performing.mIndex;
+	
+			for (int predecessor : cycle.mPlan.getPredecessorIndices(index)) {
+				if (cycle.mPlan.getActivity(predecessor) == activity) {
+					return cycle.mOutputs[predecessor];
+				}
+			}
+	
+			for (Activity predecessor : cycle.mPlan.getPredecessors(index)) {
+				if (predecessor == activity) {
+					// not part of the execution
+					return null;
+				}
+			}
+		}
+	
+		throw new IllegalStateException("The output of activity \"" + activity.getActionName() +
+			"\" can only be got by the actions of its dependents while they are executed by an execution cycle.");
+	}
+	
+	/**
+	 * Counts the activity out as a dependent of the activities it depends on, whether or not
+	 * they have set an output yet, and releases their outputs once every dependent of theirs has
+	 * completed or been skipped.
+	 *
+	 * @param index The index of the activity that has completed or been skipped.
+	 */
+	private void releaseInputs(int index) {
+		for (int predecessor : mPlan.getPredecessorIndices(index)) {
+			if (mReaderCounts.decrementAndGet(predecessor) == 0) {
+				mOutputs[predecessor] = null;
+			}
+		}
+	}
+	
+	/**
+	 * Marks the activity as skipped.
+	 *
+	 * @param index The index of the activity.
+	 * @return True, if the activity was not marked as skipped before.
+	 */
+	private boolean markSkipped(int index) {
+		int word = index >>> 6;
+		long bit = 1L << index;
+	
+		while (true) {
+			long bits = mSkipped.get(word);
+	
+			if ((bits & bit) != 0) {
+				return false;
+			}
+	
+			if (mSkipped.compareAndSet(word, bits, bits | bit)) {
+				return true;
+			}
+		}
+	}
+	
+	/**
+	 * @param index The index of the activity.
+	 * @return True, if the activity is skipped because an activity it depends on did not execute
+	 * successfully.
+	 */
+	private boolean isSkipped(int index) {
+		return (mSkipped.get(index >>> 6) & (1L << index)) != 0;
+	}
+	
+	/**
+	 * Keeps track of the future of a submitted activity so that it can be cancelled.
+	 *
+	 * @param future The future of the submitted activity.
+	 */
+	private synchronized void addFuture(Future<Boolean> future) {
+		if (mAborted) {
+			future.cancel(true);
+		}
+		else {
+			mFutureList.add(future);
+	
+			if (mHelping) {
+				notifyAll();
+			}
+		}
+	}
+	
+	/**
+	 * Records the completion of activities.
+	 *
+	 * @param count The number of activities that have completed.
+	 */
+	private synchronized void activitiesCompleted(int count) {
+		mRemainingCount -= count;
+	
+		if (mRemainingCount == 0) {
+			notifyAll();
+		}
+	}
+	
+	/**
+	 * Aborts the execution because an activity failed unexpectedly. Only the first failure is
+	 * kept, and none once the execution was cancelled.
+	 *
+	 * @param failure The cause of the failure.
+	 */
+	private void abort(Throwable failure) {
+		synchronized (this) {
+			if (mFailure == null && !mCancelled) {
+				mFailure = failure;
+			}
+	
+			mAborted = true;
+			notifyAll();
+		}
+	
+		// waiting activities are not offered for execution again
+		mResourceScheduler.removeWaiters(this);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityCycle#cancel(boolean)
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		synchronized (this) {
+			if (isDone()) {
+				return false;
+			}
+	
+			mCancelled = true;
+	
+			if (mayInterruptIfRunning && mSequentialThread != null) {
+				mSequentialThread.interrupt();
+			}
+	
+			notifyAll();
+		}
+	
+		cancelSubmitted(mayInterruptIfRunning);
+	
+		if (CAT.isDebugEnabled()) {
+			CAT.debug("Cancelled the execution of " + Integer.toString(mPlan.size()) + " activities.");
+		}
+	
+		return true;
+	}
+	
+	/**
+	 * Stops submitting activities and cancels every submitted activity that has not completed
+	 * yet. Cancelled activities that are still queued are removed from the executor, and those
+	 * waiting for resources are no longer waited for.
+	 *
+	 * @param mayInterruptIfRunning If true, the threads executing activities are interrupted.
+	 */
+	private void cancelSubmitted(boolean mayInterruptIfRunning) {
+		List<Future<Boolean>> futureList;
+	
+		synchronized (this) {
+			mAborted = true;
+			futureList = new ArrayList<Future<Boolean>>(mFutureList);
+			mFutureList.clear();
+		}
+	
+		// waiting activities are not offered for execution again
+		mResourceScheduler.removeWaiters(this);
+	
+		boolean cancelled = false;
+	
+		for (Future<Boolean> future : futureList) {
+			cancelled |= future.cancel(mayInterruptIfRunning);
+		}
+	
+		if (cancelled) {
+			mExecutor.purge();
+		}
+	}
+	
+	/**
+	 * @return True, if an activity failed and was not retried any further.
+	 */
+	/*pkg*/ boolean hasFailed() {
+		return mFailed;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityCycle#isCancelled()
+	 */
+	@Override
+	public boolean isCancelled() {
+		return mCancelled;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityCycle#isDone()
+	 */
+	@Override
+	public synchronized boolean isDone() {
+		return mRemainingCount == 0 || mFailure != null || mCancelled;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityCycle#await()
+	 */
+	@Override
+	public void await() throws InterruptedException, ActivityException {
+		await(false, 0, false);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.ActivityCycle#await(long, java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public boolean await(long timeout, TimeUnit unit) throws InterruptedException, ActivityException {
+		return await(true, unit.toNanos(timeout), false);
+	}
+	
+	/**
+	 * Waits until every activity has completed, the execution was aborted or cancelled, or the
+	 * time elapsed. An execution with a deadline is given up on once activities are still
+	 * executing a grace period after it.
+	 *
+	 * @param timed If true, waits at most the timeout.
+	 * @param timeout The maximum time to wait, in nanoseconds.
+	 * @param helping If true, also stops waiting once there is a submitted activity to help with.
+	 * @return True, if every activity has completed. False, if the time elapsed first or there is
+	 * an activity to help with.
+	 * @throws InterruptedException Thrown if the waiting thread or an activity was interrupted.
+	 * @throws ActivityException Thrown if an activity failed unexpectedly, or the execution did
+	 * not complete in time.
+	 * @throws CancellationException Thrown if the execution was cancelled.
+	 */
+	private synchronized boolean await(boolean timed, long timeout, boolean helping)
+		throws InterruptedException, ActivityException {
+		long now = System.nanoTime();
+		long waitDeadline = now + timeout;
+		long giveUpTime = mDeadline + TimeUnit.MILLISECONDS.toNanos(DEADLINE_GRACE_MS);
+	
+		while (mRemainingCount > 0 && mFailure == null && !mCancelled
+			&& !(helping && mHelpIndex < mFutureList.size())) {
+			long waitTime = Long.MAX_VALUE;
+	
+			if (timed) {
+				waitTime = waitDeadline - now;
+	
+				if (waitTime <= 0) {
+					return false;
+				}
+			}
+	
+			if (mHasDeadline) {
+				if (giveUpTime - now <= 0) {
+					ActivityException failure = new ActivityException("Execution did not complete within its deadline; " +
+						Integer.toString(mRemainingCount) + " activities are still executing.");
+	
+					abort(failure);
+	
+					throw failure;
+				}
+	
+				waitTime = Math.min(waitTime, giveUpTime - now);
+			}
+	
+			if (waitTime == Long.MAX_VALUE) {
+				wait();
+			}
+			else {
+				TimeUnit.NANOSECONDS.timedWait(this, waitTime);
+			}
+	
+			now = System.nanoTime();
+		}
+	
+		if (mCancelled) {
+			throw newCancellationException();
+		}
+	
+		if (mFailure != null) {
+			CAT.debug("Activity execution failed; rethrowing cause", mFailure);
+	
+			if (mFailure instanceof InterruptedException) {
+				throw (InterruptedException)mFailure;
+			}
+	
+			throw new ActivityException("Execution failed while executing activity ", mFailure);
+		}
+	
+		return mRemainingCount == 0;
+	}
+	
+	/**
+	 * Waits until the time elapsed or the execution was cancelled.
+	 *
+	 * @param timeout The maximum time to wait, in nanoseconds.
+	 * @throws InterruptedException Thrown if the waiting thread was interrupted.
+	 */
+	private synchronized void waitUnlessCancelled(long timeout) throws InterruptedException {
+		if (!mCancelled) {
+			TimeUnit.NANOSECONDS.timedWait(this, timeout);
+		}
+	}
+	
+	/**
+	 * @return The exception thrown to those waiting for a cancelled execution.
+	 */
+	private static CancellationException newCancellationException() {
+		return new CancellationException("The execution of the activities was cancelled.");
+	}
+	
+	// Inner classes
+	
+	/**
+	 * A second attempt of an activity whose action is a {@link HedgeableAction}, started on a
+	 * worker of the executor once the first attempt has taken longer than the hedge delay.
+	 * Whichever attempt succeeds first decides the attempt of the activity, and the thread of the
+	 * other one is interrupted. A hedge that succeeds first completes the attempt right away,
+	 * without waiting for the first attempt to return.
+	 */
+	/*pkg*/ class Hedge implements Runnable, Callable<Boolean> {
+		// Constants
+	
+		private static final int RUNNING = 0;
+		private static final int FINISHED = 1;
+		private static final int INTERRUPTING = 2;
+		private static final int WON = 3;
+	
+		// Attributes
+	
+		/**
+		 * The index of the activity.
+		 */
+		private final int mIndex;
+	
+		/**
+		 * How long the first attempt may take before the hedge is started, in nanoseconds.
+		 */
+		private final long mDelay;
+	
+		/**
+		 * The state of the race.
+		 */
+		private final AtomicInteger mState = new AtomicInteger(RUNNING);
+	
+		// Associations
+	
+		/**
+		 * The activity being attempted.
+		 */
+		private ActivityImpl mActivity;
+	
+		/**
+		 * The future completed with the result of the attempt of the activity.
+		 */
+		private CompletableFuture<ExecutionResultType> mResult;
+	
+		/**
+		 * The thread making the first attempt.
+		 */
+		private Thread mThread;
+	
+		/**
+		 * The timeout starting the hedge.
+		 */
+		private HashedWheelTimer.Timeout mTimeout;
+	
+		/**
+		 * The future of the hedge, once it was submitted.
+		 */
+		private volatile Future<Boolean> mFuture;
+	
+		// Constructors
+	
+		/**
+		 * Constructs the hedge.
+		 *
+		 * @param index The index of the activity.
+		 * @param delay How long the first attempt may take before the hedge is started, in
+		 * nanoseconds.
+		 */
+		private Hedge(int index, long delay) {
+			mIndex = index;
+			mDelay = delay;
+		}
+	
+		// Operations
+	
+		/**
+		 * Makes the first attempt on the calling thread, starting the hedge if it takes longer
+		 * than the hedge delay.
+		 *
+		 * @param activity The activity to attempt.
+		 * @param result The future the hedge completes, through
+		 * {@link ActivityImpl#completeAttempt(CompletableFuture, ExecutionResultType)}, if it
+		 * succeeds first.
+		 * @return The result of the first attempt, or null if the hedge succeeded first and has
+		 * completed the result.
+		 * @throws InterruptedException Thrown if the first attempt was interrupted other than by
+		 * the hedge
+		 * @throws Exception Thrown by the first attempt, unless the hedge succeeded before
+		 */
+		/*pkg*/ ExecutionResultType perform(ActivityImpl activity, CompletableFuture<ExecutionResultType> result)
+			throws InterruptedException, Exception {
+			mActivity = activity;
+			mResult = result;
+			mThread = Thread.currentThread();
+			mTimeout = ActivityServiceImpl.ACTIVITY_TIMER.schedule(this, mDelay, TimeUnit.NANOSECONDS);
+	
+			ExecutionResultType executionResult = null;
+			Exception failure = null;
+	
+			try {
+				executionResult = activity.getAction().perform();
+			}
+			catch (Exception e) {
+				// including being interrupted by a hedge that won
+				failure = e;
+			}
+	
+			if (finish()) {
+				if (CAT.isDebugEnabled()) {
+					CAT.debug("The hedge of activity \"" + activity.getActionName() + "\" [class: \"" +
+						activity.getActionClassName() + "\"] succeeded first; discarding the result of the first attempt.");
+				}
+	
+				return null;
+			}
+	
+			if (failure != null) {
+				throw failure;
+			}
+	
+			return executionResult;
+		}
+	
+		/**
+		 * Ends the first attempt. If the hedge has not won yet, it is stopped from starting or
+		 * interrupted. Otherwise, the interrupt it sent to the calling thread is cleared.
+		 *
+		 * @return True, if the hedge won.
+		 */
+		private boolean finish() {
+			if (mState.compareAndSet(RUNNING, FINISHED)) {
+				mTimeout.cancel();
+	
+				Future<Boolean> future = mFuture;
+	
+				if (future != null) {
+					future.cancel(true);
+				}
+	
+				return false;
+			}
+	
+			while (mState.get() == INTERRUPTING) {
+				Thread.yield();
+			}
+	
+			Thread.interrupted();
+	
+			return true;
+		}
+	
+		/**
+		 * Submits the hedge to the executor once the hedge delay has elapsed.
+		 *
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			if (mState.get() != RUNNING || mAborted) {
+				return;
+			}
+	
+			try {
+				mFuture = mExecutor.submit((Callable<Boolean>)this, mPriorities[mIndex]);
+			}
+			catch (RuntimeException e) {
+				// typically a RejectedExecutionException; the first attempt is left to finish
+				CAT.debug("Failed to submit the hedge of activity \"" + mPlan.getActivity(mIndex).getActionName() +
+					"\".", e);
+	
+				return;
+			}
+	
+			if (mState.get() != RUNNING) {
+				// the first attempt finished while the hedge was being submitted
+				mFuture.cancel(true);
+			}
+		}
+	
+		/**
+		 * Performs the action on a worker of the executor and, if it succeeds before the first
+		 * attempt has finished, interrupts the first attempt and completes the attempt of the
+		 * activity without waiting for the first attempt to return.
+		 *
+		 * @see java.util.concurrent.Callable#call()
+		 */
+		@Override
+		public Boolean call() {
+			if (mState.get() != RUNNING) {
+				return false;
+			}
+	
+			Performing performing = PERFORMING.get();
+			ExecutionCycle performingCycle = performing.mCycle;
+			int performingIndex = performing.mIndex;
+			ExecutionResultType executionResult;
+	
+			performing.mCycle = ExecutionCycle.this;
+			performing.mIndex = mIndex;
+	
+			try {
+				executionResult = mActivity.getAction().perform();
+			}
+			catch (InterruptedException e) {
+				// the first attempt finished first
+				return false;
+			}
+			catch (Exception e) {
+				CAT.warn("Hedged execution of activity \"" + mPlan.getActivity(mIndex).getActionName() +
+					"\" failed because it threw an exception.", e);
+	
+				return false;
+			}
+			finally {
+				performing.mCycle = performingCycle;
+				performing.mIndex = performingIndex;
+			}
+	
+			if (executionResult != ExecutionResultType.SUCCESS) {
+				return false;
+			}
+	
+			if (mState.compareAndSet(RUNNING, INTERRUPTING)) {
+				mThread.interrupt();
+				mState.set(WON);
+	
+				// releases the dependents of the activity on this thread
+				mActivity.completeAttempt(mResult, executionResult);
+	
+				return true;
+			}
+	
+			return false;
+		}
+	}
+	
+	/**
+	 * The activity a thread is performing on behalf of an execution. Kept per thread and reused,
+	 * so that performing an activity allocates nothing.
+	 */
+	private static class Performing {
+		/**
+		 * The execution, or null if the thread is not performing an activity.
+		 */
+		private ExecutionCycle mCycle;
+	
+		/**
+		 * The index of the activity.
+		 */
+		private int mIndex;
+	}
+	
+	/**
+	 * Executes a single activity of the execution.
+	 */
+	private class ActivityTask implements Callable<Boolean> {
+		// Attributes
+	
+		/**
+		 * The index of the activity to execute.
+		 */
+		final private int mIndex;
+	
+		// Constructors
+	
+		/**
+		 * Constructs the task.
+		 *
+		 * @param index The index of the activity to execute.
+		 */
+		private ActivityTask(int index) {
+			mIndex = index;
+		}
+	
+		// Operations
+	
+		/*
+		 * (non-Javadoc)
+		 * @see java.util.concurrent.Callable#call()
+		 */
+		@Override
+		public Boolean call() throws InterruptedException, Exception {
+			if (mAborted) {
+				return false;
+			}
+	
+			ExecutionResultType executionResult;
+	
+			try {
+				if (isExpired()) {
+					logSkippingActivity(mIndex);
+					publish(ActivityEvent.Type.SKIPPED, mIndex, null, 0);
+					completeActivity(mIndex);
+	
+					return false;
+				}
+	
+				if (isUnchanged(mIndex)) {
+					reuseResult(mIndex);
+					completeActivity(mIndex);
+	
+					return true;
+				}
+	
+				if (isPostponed(mIndex)) {
+					submitActivityLater(mIndex, getPostponeDelay(mIndex), TimeUnit.MILLISECONDS);
+	
+					return false;
+				}
+	
+				long delay = admit(mIndex);
+	
+				if (delay > 0) {
+					submitActivityLater(mIndex, delay, TimeUnit.NANOSECONDS);
+	
+					return false;
+				}
+	
+				if (!acquireResources(mIndex, true)) {
+					// offered for execution again once tokens of its resources are released,
+					// keeping the permits it reserved
+					return false;
+				}
+	
+				mAdmitted[mIndex] = false;
+	
+				if (isAsync(mPlan.getActivity(mIndex))) {
+					executeActivityAsync(mIndex);
+	
+					return true;
+				}
+	
+				Hedge hedge = newHedge(mIndex);
+	
+				if (hedge != null) {
+					executeActivityHedged(mIndex, hedge);
+	
+					return true;
+				}
+	
+				try {
+					executionResult = executeActivity(mIndex, null);
+				}
+				finally {
+					releaseResources(mIndex);
+				}
+	
+				if (executionResult == null) {
+					submitActivityLater(mIndex, getRetryDelay(mIndex), TimeUnit.NANOSECONDS);
+	
+					return false;
+				}
+			}
+			catch (Exception e) {
+				abort(e);
+	
+				throw e;
+			}
+			catch (Error e) {
+				abort(e);
+	
+				throw e;
+			}
+	
+			completeActivity(mIndex);
+	
+			return (executionResult == ExecutionResultType.SUCCESS
+				|| executionResult == ExecutionResultType.DISABLE
+				|| executionResult == ExecutionResultType.DISABLE_ONCE);
+		}
+	}
+	
+	/**
+	 * A batch of ready activities with equal batch keys, performed by a single task.
+	 */
+	private class Batch implements Callable<Boolean>, Runnable {
+		// Attributes
+	
+		/**
+		 * The maximum number of activities of the batch.
+		 */
+		private final int mMaxSize;
+	
+		/**
+		 * Indicates whether the batch no longer accepts activities. Guarded by the map of batches.
+		 */
+		private boolean mClosed;
+	
+		/**
+		 * Indicates whether the batch was submitted to the executor. Guarded by the map of batches.
+		 */
+		private boolean mSubmitted;
+	
+		// Associations
+	
+		/**
+		 * The batch key of the activities.
+		 */
+		private final Object mKey;
+	
+		/**
+		 * The indices of the activities of the batch. Guarded by the map of batches.
+		 */
+		private final List<Integer> mIndexList = new ArrayList<Integer>();
+	
+		/**
+		 * The timeout submitting the batch once its linger time has elapsed, if any.
+		 */
+		private volatile HashedWheelTimer.Timeout mLingerTimeout;
+	
+		// Constructors
+	
+		/**
+		 * Constructs an empty batch.
+		 *
+		 * @param key The batch key of the activities.
+		 * @param maxSize The maximum number of activities of the batch.
+		 */
+		private Batch(Object key, int maxSize) {
+			mKey = key;
+			mMaxSize = maxSize;
+		}
+	
+		// Operations
+	
+		/**
+		 * Stops the batch from accepting activities. The caller must hold the lock of the map of
+		 * batches.
+		 */
+		private void close() {
+			if (!mClosed) {
+				mClosed = true;
+	
+				if (mBatchByKey.get(mKey) == this) {
+					mBatchByKey.remove(mKey);
+				}
+			}
+		}
+	
+		/**
+		 * Submits the batch to the executor unless it has been submitted already.
+		 */
+		private void submit() {
+			int priority;
+	
+			synchronized (mBatchByKey) {
+				if (mSubmitted) {
+					return;
+				}
+	
+				mSubmitted = true;
+				priority = mPriorities[mIndexList.get(0)];
+			}
+	
+			HashedWheelTimer.Timeout lingerTimeout = mLingerTimeout;
+	
+			if (lingerTimeout != null) {
+				lingerTimeout.cancel();
+			}
+	
+			if (!mAborted) {
+				submitTask(this, priority);
+			}
+		}
+	
+		/**
+		 * Parks the batch on the timer until the delay has elapsed and then submits it to the
+		 * executor, unless it was submitted before because it became full.
+		 *
+		 * @param delay The delay in nanoseconds.
+		 */
+		private void submitLater(long delay) {
+			mLingerTimeout = ActivityServiceImpl.ACTIVITY_TIMER.schedule(this, delay, TimeUnit.NANOSECONDS);
+		}
+	
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			submit();
+		}
+	
+		/*
+		 * (non-Javadoc)
+		 * @see java.util.concurrent.Callable#call()
+		 */
+		@Override
+		public Boolean call() throws InterruptedException, Exception {
+			int[] indices;
+	
+			synchronized (mBatchByKey) {
+				close();
+	
+				indices = new int[mIndexList.size()];
+	
+				for (int i = 0; i < indices.length; i++) {
+					indices[i] = mIndexList.get(i);
+				}
+			}
+	
+			if (mAborted) {
+				return false;
+			}
+	
+			long[] delays = new long[indices.length];
+	
+			try {
+				executeBatch(indices, delays);
+			}
+			catch (Exception e) {
+				abort(e);
+	
+				throw e;
+			}
+			catch (Error e) {
+				abort(e);
+	
+				throw e;
+			}
+	
+			for (int i = 0; i < indices.length; i++) {
+				if (delays[i] < 0) {
+					completeActivity(indices[i]);
+				}
+				else {
+					submitActivityLater(indices[i], delays[i], TimeUnit.NANOSECONDS);
+				}
+			}
+	
+			return true;
+		}
+	}
+}
@@ -0,0 +1,389 @@
+package com.activities.impl;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import com.activities.api.Activity;
+import com.activities.utils.DAGVertex;
+
+/**
+ * An immutable, compiled form of the activities to execute and their dependencies. Activities
+ * are identified by a dense index which is their position in topological order, and their
+ * dependencies are kept as arrays of indices, so an execution needs no maps or sorting.
+ * <p/>
+ * Plans are compiled while holding the service's lock and cached by the service until the
+ * activities or their dependencies are modified. Executions work on the plan only, so the
+ * service can be modified, and other executions started, while an execution is in progress.
+ * <p/>
+ * The duration estimates of the activities are resolved when the plan is compiled, and the
+ * priorities derived from them are only recomputed once an estimate has moved far enough to
+ * change the version of the duration statistics.
+ */
+/*pkg*/ class ExecutionPlan {
+	// Attributes
+	
+	/**
+	 * The modification count of the service when the plan was compiled.
+	 */
+	private final long mModificationCount;
+	
+	/**
+	 * The number of times each activity is depended on by activities in the plan.
+	 */
+	private final int[] mInDegrees;
+	
+	/**
+	 * The indices of the dependents of each activity.
+	 */
+	private final int[][] mSuccessors;
+	
+	/**
+	 * The indices of the activities each activity depends on.
+	 */
+	private final int[][] mPredecessorIndices;
+	
+	/**
+	 * The activities each activity depends on, including those left out of a sub-plan.
+	 */
+	private final Activity[][] mPredecessors;
+	
+	/**
+	 * The duration estimates of the activities.
+	 */
+	private final DurationStatistics.Estimate[] mEstimates;
+	
+	/**
+	 * The priorities of the activities and the version of the duration statistics they were
+	 * computed from.
+	 */
+	private volatile Priorities mPriorities;
+	
+	// Associations
+	
+	/**
+	 * The duration statistics the estimates of the activities are kept by.
+	 */
+	private final DurationStatistics mDurationStatistics;
+	
+	/**
+	 * The activities in topological order.
+	 */
+	private final Activity[] mActivities;
+	
+	/**
+	 * Map of index indexed by activity.
+	 */
+	private final HashMap<Activity, Integer> mIndexByActivityMap;
+	
+	// Constructors
+	
+	/**
+	 * Constructs the plan.
+	 *
+	 * @param activities The activities in topological order.
+	 * @param successors The indices of the dependents of each activity.
+	 * @param predecessors The activities each activity depends on.
+	 * @param estimates The duration estimates of the activities.
+	 * @param durationStatistics The duration statistics the estimates are kept by.
+	 * @param modificationCount The modification count of the service.
+	 */
+	private ExecutionPlan(Activity[] activities, int[][] successors, Activity[][] predecessors,
+		DurationStatistics.Estimate[] estimates, DurationStatistics durationStatistics, long modificationCount) {
+		int size = activities.length;
+	
+		mActivities = activities;
+		mSuccessors = successors;
+		mPredecessors = predecessors;
+		mEstimates = estimates;
+		mDurationStatistics = durationStatistics;
+		mModificationCount = modificationCount;
+		mInDegrees = new int[size];
+		mIndexByActivityMap = new HashMap<Activity, Integer>(size * 2);
+		mPredecessorIndices = new int[size][];
+	
+		for (int i = 0; i < size; i++) {
+			mIndexByActivityMap.put(activities[i], i);
+	
+			for (int successor : successors[i]) {
+				mInDegrees[successor]++;
+			}
+		}
+	
+		for (int i = 0; i < size; i++) {
+			mPredecessorIndices[i] = new int[mInDegrees[i]];
+		}
+	
+		int[] counts = new int[size];
+	
+		for (int i = 0; i < size; i++) {
+			for (int successor : successors[i]) {
+				mPredecessorIndices[successor][counts[successor]++] = i;
+			}
+		}
+	}
+	
+	// Operations
+	
+	/**
+	 * Compiles a plan from topologically sorted vertices.
+	 *
+	 * @param sortedVertexList The topologically sorted list of vertices.
+	 * @param durationStatistics The duration statistics to resolve the estimates of the
+	 * activities from.
+	 * @param modificationCount The modification count of the service.
+	 * @return The compiled plan.
+	 */
+	public static ExecutionPlan compile(List<DAGVertex<Activity>> sortedVertexList,
+		DurationStatistics durationStatistics, long modificationCount) {
+		int size = sortedVertexList.size();
+		Activity[] activities = new Activity[size];
+		DurationStatistics.Estimate[] estimates = new DurationStatistics.Estimate[size];
+		HashMap<Activity, Integer> indexByActivityMap = new HashMap<Activity, Integer>(size * 2);
+	
+		for (int i = 0; i < size; i++) {
+			activities[i] = sortedVertexList.get(i).getValue();
+			estimates[i] = durationStatistics.getEstimate(activities[i]);
+			indexByActivityMap.put(activities[i], i);
+		}
+	
+		HashMap<Activity, HashSet<Activity>> dependentSetByActivityMap =
+			DAGVertex.getMapOfDependents(sortedVertexList);
+		int[][] successors = new int[size][];
+	
+		int[] inDegrees = new int[size];
+	
+		for (int i = 0; i < size; i++) {
+			successors[i] = toIndices(dependentSetByActivityMap.get(activities[i]), indexByActivityMap);
+	
+			for (int successor : successors[i]) {
+				inDegrees[successor]++;
+			}
+		}
+	
+		Activity[][] predecessors = new Activity[size][];
+	
+		for (int i = 0; i < size; i++) {
+			predecessors[i] = new Activity[inDegrees[i]];
+			inDegrees[i] = 0;
+		}
+	
+		for (int i = 0; i < size; i++) {
+			for (int successor : successors[i]) {
+				predecessors[successor][inDegrees[successor]++] = activities[i];
+			}
+		}
+	
+		return new ExecutionPlan(activities, successors, predecessors, estimates, durationStatistics,
+			modificationCount);
+	}
+	
+	/**
+	 * @param activitySet The set of activities.
+	 * @param indexByActivityMap Map of index indexed by activity.
+	 * @return The sorted indices of the activities in the set that have an index.
+	 */
+	private static int[] toIndices(HashSet<Activity> activitySet,
+		HashMap<Activity, Integer> indexByActivityMap) {
+		if (activitySet == null || activitySet.isEmpty()) {
+			return new int[0];
+		}
+	
+		int[] indices = new int[activitySet.size()];
+		int count = 0;
+	
+		for (Activity activity : activitySet) {
+			Integer index = indexByActivityMap.get(activity);
+	
+			if (index != null) {
+				indices[count++] = index;
+			}
+		}
+	
+		indices = Arrays.copyOf(indices, count);
+		Arrays.sort(indices);
+	
+		return indices;
+	}
+	
+	/**
+	 * Derives the plan of a subset of the activities of this plan. Only dependencies between
+	 * activities of the subset are kept. Activities that are not part of this plan are ignored.
+	 *
+	 * @param activityList The activities of the subset.
+	 * @return The plan of the subset.
+	 */
+	public ExecutionPlan subPlan(List<Activity> activityList) {
+		boolean[] included = new boolean[mActivities.length];
+		int size = 0;
+	
+		for (Activity activity : activityList) {
+			Integer index = mIndexByActivityMap.get(activity);
+	
+			if (index != null && !included[index]) {
+				included[index] = true;
+				size++;
+			}
+		}
+	
+		// keep the topological order by walking the indices in ascending order
+		int[] subIndexByIndex = new int[mActivities.length];
+		Activity[] activities = new Activity[size];
+		DurationStatistics.Estimate[] estimates = new DurationStatistics.Estimate[size];
+		int subIndex = 0;
+	
+		for (int i = 0; i < mActivities.length; i++) {
+			if (included[i]) {
+				subIndexByIndex[i] = subIndex;
+				estimates[subIndex] = mEstimates[i];
+				activities[subIndex++] = mActivities[i];
+			}
+		}
+	
+		int[][] successors = new int[size][];
+		Activity[][] predecessors = new Activity[size][];
+	
+		for (int i = 0, j = 0; i < mActivities.length; i++) {
+			if (included[i]) {
+				predecessors[j] = mPredecessors[i];
+	
+				int[] allSuccessors = mSuccessors[i];
+				int[] subSuccessors = new int[allSuccessors.length];
+				int count = 0;
+	
+				for (int successor : allSuccessors) {
+					if (included[successor]) {
+						subSuccessors[count++] = subIndexByIndex[successor];
+					}
+				}
+	
+				successors[j++] = Arrays.copyOf(subSuccessors, count);
+			}
+		}
+	
+		return new ExecutionPlan(activities, successors, predecessors, estimates, mDurationStatistics,
+			mModificationCount);
+	}
+	
+	/**
+	 * @return The modification count of the service when the plan was compiled.
+	 */
+	public long getModificationCount() {
+		return mModificationCount;
+	}
+	
+	/**
+	 * @return The number of activities to execute.
+	 */
+	public int size() {
+		return mActivities.length;
+	}
+	
+	/**
+	 * @param index The index of the activity.
+	 * @return The activity.
+	 */
+	public Activity getActivity(int index) {
+		return mActivities[index];
+	}
+	
+	/**
+	 * @param index The index of the activity.
+	 * @return The duration estimate of the activity.
+	 */
+	public DurationStatistics.Estimate getEstimate(int index) {
+		return mEstimates[index];
+	}
+	
+	/**
+	 * @param index The index of the activity.
+	 * @return The indices of the dependents of the activity. Must not be modified.
+	 */
+	public int[] getSuccessors(int index) {
+		return mSuccessors[index];
+	}
+	
+	/**
+	 * @param index The index of the activity.
+	 * @return The indices of the activities the activity depends on. Must not be modified.
+	 */
+	public int[] getPredecessorIndices(int index) {
+		return mPredecessorIndices[index];
+	}
+	
+	/**
+	 * @param index The index of the activity.
+	 * @return The activities the activity depends on, including those that are not part of this
+	 * plan if it is a sub-plan. Must not be modified.
+	 */
+	public Activity[] getPredecessors(int index) {
+		return mPredecessors[index];
+	}
+	
+	/**
+	 * @return The number of times each activity is depended on. Must not be modified.
+	 */
+	public int[] getInDegrees() {
+		return mInDegrees;
+	}
+	
+	/**
+	 * Gets the priority of every activity. The priority of an activity is the negated length of the
+	 * longest path from the activity to any activity nothing depends on, weighted by the estimated
+	 * duration of every activity on the path, so activities on the critical path of the execution
+	 * sort first. Priorities are only recomputed if an estimate has moved past the threshold of
+	 * the duration statistics since they were last computed.
+	 *
+	 * @return The priorities indexed by activity index. Must not be modified.
+	 */
+	public int[] getPriorities() {
+		long version = mDurationStatistics.getVersion();
+		Priorities priorities = mPriorities;
+	
+		if (priorities == null || priorities.mVersion != version) {
+			priorities = new Priorities(computePriorities(), version);
+			mPriorities = priorities;
+		}
+	
+		return priorities.mValues;
+	}
+	
+	/**
+	 * @return The priorities indexed by activity index.
+	 */
+	private int[] computePriorities() {
+		int size = mActivities.length;
+		long[] pathLengths = new long[size];
+		int[] priorities = new int[size];
+	
+		// Dependents come after the activity in topological order, so walk it backwards
+		for (int i = size - 1; i >= 0; i--) {
+			long longestDependentPath = 0;
+	
+			for (int successor : mSuccessors[i]) {
+				longestDependentPath = Math.max(longestDependentPath, pathLengths[successor]);
+			}
+	
+			pathLengths[i] = longestDependentPath + mEstimates[i].getAverage();
+			priorities[i] = (int)-Math.min(pathLengths[i], Integer.MAX_VALUE);
+		}
+	
+		return priorities;
+	}
+	
+	// Inner classes
+	
+	/**
+	 * Priorities along with the version of the duration statistics they were computed from.
+	 */
+	private static final class Priorities {
+		private final int[] mValues;
+		private final long mVersion;
+	
+		private Priorities(int[] values, long version) {
+			mValues = values;
+			mVersion = version;
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package com.activities.impl;
+
+import com.activities.api.Activity;
+import com.activities.api.OutputSlot;
+
+/**
+ * The output slot of an activity. The outputs themselves are kept by the execution cycles, so
+ * any number of slots of the same activity share its output.
+ *
+ * @param <T> The type of the output.
+ */
+/*pkg*/ class OutputSlotImpl<T> implements OutputSlot<T> {
+	// Associations
+	
+	/**
+	 * The activity producing the output.
+	 */
+	private final Activity mActivity;
+	
+	/**
+	 * The type of the output.
+	 */
+	private final Class<T> mType;
+	
+	// Constructors
+	
+	/**
+	 * Constructs the slot.
+	 *
+	 * @param activity The activity producing the output.
+	 * @param type The type of the output.
+	 */
+	/*pkg*/ OutputSlotImpl(Activity activity, Class<T> type) {
+		mActivity = activity;
+		mType = type;
+	}
+	
+	// Operations
+	
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.OutputSlot#getActivity()
+	 */
+	@Override
+	public Activity getActivity() {
+		return mActivity;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.OutputSlot#getType()
+	 */
+	@Override
+	public Class<T> getType() {
+		return mType;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.OutputSlot#set(java.lang.Object)
+	 */
+	@Override
+	public void set(T value) {
+		ExecutionCycle.setOutput(mActivity, mType.cast(value));
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see com.activities.api.OutputSlot#get()
+	 */
+	@Override
+	public T get() {
+		return mType.cast(ExecutionCycle.getOutput(mActivity));
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "OutputSlot [activity=" + mActivity.getActionName() + ", type=" + mType.getName() + "]";
+	}
+}
@@ -0,0 +1,148 @@
+package com.activities.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import com.activities.api.Tag;
+
+/**
+ * Limits how fast the activities whose actions carry a tag are started, with a token bucket per
+ * tag. The bucket holds up to a burst of permits and is refilled at the configured rate.
+ * <p/>
+ * Permits are reserved rather than waited for: a reservation always succeeds and returns how
+ * long the activity has to be deferred until its permit is due, so the caller can park it
+ * without holding a thread. Activities deferred by the same bucket start in the order they
+ * reserved their permits.
+ */
+/*pkg*/ class RateLimiter {
+	// Associations
+	
+	/**
+	 * Map of token buckets indexed by tag.
+	 */
+	private final ConcurrentMap<Tag, TokenBucket> mBucketByTagMap = new ConcurrentHashMap<Tag, TokenBucket>();
+	
+	// Operations
+	
+	/**
+	 * Limits how fast the activities whose actions carry the tag are started, replacing any
+	 * limit the tag had.
+	 *
+	 * @param tag The tag.
+	 * @param permitsPerSecond The number of activities that may start per second. Zero or less to
+	 * remove the limit.
+	 * @param burst The number of activities that may start at once after a quiet period.
+	 */
+	public void setLimit(Tag tag, double permitsPerSecond, int burst) {
+		if (permitsPerSecond > 0) {
+			mBucketByTagMap.put(tag, new TokenBucket(permitsPerSecond, Math.max(1, burst)));
+		}
+		else {
+			mBucketByTagMap.remove(tag);
+		}
+	}
+	
+	/**
+	 * @return True, if no tag is limited.
+	 */
+	public boolean isEmpty() {
+		return mBucketByTagMap.isEmpty();
+	}
+	
+	/**
+	 * Reserves a permit of each limited tag.
+	 *
+	 * @param tags The tags of the action of the activity to start.
+	 * @return How long the activity has to be deferred until all of its permits are due, in
+	 * nanoseconds. Zero if it may start right away.
+	 */
+	public long reserve(Tag[] tags) {
+		long delay = 0;
+	
+		for (Tag tag : tags) {
+			TokenBucket bucket = (tag != null) ? mBucketByTagMap.get(tag) : null;
+	
+			if (bucket != null) {
+				delay = Math.max(delay, bucket.reserve(System.nanoTime()));
+			}
+		}
+	
+		return delay;
+	}
+	
+	/**
+	 * @param tag The tag.
+	 * @return How long an activity whose action carries the tag would be deferred if it were to
+	 * start now, in nanoseconds. Zero if the tag is not limited or not throttled at the moment.
+	 */
+	public long getDelay(Tag tag) {
+		TokenBucket bucket = mBucketByTagMap.get(tag);
+	
+		return (bucket != null) ? bucket.getDelay(System.nanoTime()) : 0;
+	}
+	
+	// Inner classes
+	
+	/**
+	 * The permits of a tag. The number of permits goes negative as permits are reserved ahead of
+	 * time.
+	 */
+	private static class TokenBucket {
+		/**
+		 * How long it takes to refill a permit, in nanoseconds.
+		 */
+		private final double mInterval;
+	
+		/**
+		 * The maximum number of permits.
+		 */
+		private final int mBurst;
+	
+		/**
+		 * The number of permits, negative if permits are reserved ahead of time.
+		 */
+		private double mPermits;
+	
+		/**
+		 * When the permits were last refilled, in {@link System#nanoTime()} terms.
+		 */
+		private long mRefillTime;
+	
+		private TokenBucket(double permitsPerSecond, int burst) {
+			mInterval = TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+			mBurst = burst;
+			mPermits = burst;
+			mRefillTime = System.nanoTime();
+		}
+	
+		/**
+		 * Reserves a permit.
+		 *
+		 * @param now The current time, in {@link System#nanoTime()} terms.
+		 * @return How long until the permit is due, in nanoseconds.
+		 */
+		private synchronized long reserve(long now) {
+			refill(now);
+	
+			mPermits--;
+	
+			return (mPermits >= 0) ? 0 : (long)Math.ceil(-mPermits * mInterval);
+		}
+	
+		/**
+		 * @param now The current time, in {@link System#nanoTime()} terms.
+		 * @return How long until a permit is due, in nanoseconds.
+		 */
+		private synchronized long getDelay(long now) {
+			refill(now);
+	
+			return (mPermits >= 1) ? 0 : (long)Math.ceil((1 - mPermits) * mInterval);
+		}
+	
+		private void refill(long now) {
+			mPermits = Math.min(mBurst, mPermits + (now - mRefillTime) / mInterval);
+			mRefillTime = now;
+		}
+	}
+}
@@ -0,0 +1,303 @@
+package com.activities.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.activities.api.Resource;
+
+/**
+ * Hands out the tokens of the resources of a service to the attempts of its activities. Tokens
+ * are acquired for all resources of an attempt at once or not at all, so no attempt ever holds
+ * some of its tokens while waiting for the others.
+ * <p/>
+ * An attempt that cannot get its tokens leaves a waiter behind instead of blocking. Once tokens
+ * are released, the waiters whose resources all have a free token again are run in the order
+ * they were left, typically offering their activities for execution again. Tokens are not
+ * reserved for them, so a woken activity that loses the race for the tokens waits again.
+ */
+/*pkg*/ class ResourceScheduler {
+	// Constants
+	
+	/**
+	 * The Logger instance.
+	 */
+	private static final Log CAT = LogFactory.getLog(ResourceScheduler.class);
+	
+	// Associations
+	
+	/**
+	 * Map of resources indexed by name.
+	 */
+	private final HashMap<String, ResourceImpl> mResourceByNameMap = new HashMap<String, ResourceImpl>();
+	
+	/**
+	 * The attempts waiting for tokens, in the order they started waiting.
+	 */
+	private final LinkedList<Waiter> mWaiterList = new LinkedList<Waiter>();
+	
+	// Operations
+	
+	/**
+	 * Creates a resource, unless one with the same name exists already.
+	 *
+	 * @param name The name of the resource.
+	 * @param capacity The number of tokens of the resource.
+	 * @return The resource with the name. An existing resource keeps its capacity.
+	 */
+	public synchronized Resource createResource(String name, int capacity) {
+		ResourceImpl resource = mResourceByNameMap.get(name);
+	
+		if (resource == null) {
+			resource = new ResourceImpl(this, name, capacity);
+			mResourceByNameMap.put(name, resource);
+		}
+	
+		return resource;
+	}
+	
+	/**
+	 * Acquires a token of each of the resources, or none of them.
+	 *
+	 * @param resources The resources, listed once per token needed.
+	 * @param owner The owner of the waiter, by which it is removed again by
+	 * {@link #removeWaiters(Object)}.
+	 * @param waiter Run once tokens of the resources may be free again if they are not free
+	 * now, or null to not wait.
+	 * @return True, if the tokens were acquired.
+	 * @throws IllegalArgumentException Thrown if a resource was not created by this scheduler, or
+	 * if more of its tokens are needed than it has, which would never be free.
+	 */
+	public synchronized boolean tryAcquire(Resource[] resources, Object owner, Runnable waiter) {
+		for (int i = 0; i < resources.length; i++) {
+			ResourceImpl resource = toResourceImpl(resources[i]);
+	
+			if (resource.mAvailable == 0) {
+				// give back the tokens taken so far
+				for (int j = 0; j < i; j++) {
+					((ResourceImpl)resources[j]).mAvailable++;
+				}
+	
+				checkCapacity(resources, resource);
+	
+				if (waiter != null) {
+					mWaiterList.add(new Waiter(resources, owner, waiter));
+				}
+	
+				return false;
+			}
+	
+			resource.mAvailable--;
+		}
+	
+		return true;
+	}
+	
+	/**
+	 * Releases a token of each of the resources and runs the waiters that may now get theirs.
+	 *
+	 * @param resources The resources, listed once per token acquired.
+	 */
+	public void release(Resource[] resources) {
+		List<Runnable> runnableList = null;
+	
+		synchronized (this) {
+			for (Resource resource : resources) {
+				((ResourceImpl)resource).mAvailable++;
+			}
+	
+			for (Iterator<Waiter> it = mWaiterList.iterator(); it.hasNext();) {
+				Waiter waiter = it.next();
+	
+				if (waiter.isReady()) {
+					it.remove();
+	
+					if (runnableList == null) {
+						runnableList = new ArrayList<Runnable>();
+					}
+	
+					runnableList.add(waiter.mRunnable);
+				}
+			}
+		}
+	
+		if (runnableList != null) {
+			for (Runnable runnable : runnableList) {
+				try {
+					runnable.run();
+				}
+				catch (RuntimeException e) {
+					CAT.error("Failed to wake an activity waiting for resources.", e);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Removes the waiters left by an owner, for example by an execution that was cancelled or
+	 * ended, so that they are not kept until tokens of their resources are released.
+	 *
+	 * @param owner The owner of the waiters.
+	 */
+	public synchronized void removeWaiters(Object owner) {
+		for (Iterator<Waiter> it = mWaiterList.iterator(); it.hasNext();) {
+			if (it.next().mOwner == owner) {
+				it.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Checks that the tokens needed of a resource do not exceed its capacity. Only called once
+	 * the resource has no free token, so that attempts that get their tokens are not slowed down.
+	 *
+	 * @param resources The resources, listed once per token needed.
+	 * @param resource The resource to check.
+	 * @throws IllegalArgumentException Thrown if more tokens of the resource are needed than it
+	 * has.
+	 */
+	private static void checkCapacity(Resource[] resources, ResourceImpl resource) {
+		int count = 0;
+	
+		for (Resource needed : resources) {
+			if (needed == resource) {
+				count++;
+			}
+		}
+	
+		if (count > resource.getCapacity()) {
+			throw new IllegalArgumentException(Integer.toString(count) + " tokens of " + resource +
+				" are needed, but it only has " + Integer.toString(resource.getCapacity()) + ".");
+		}
+	}
+	
+	/**
+	 * @param resource The resource.
+	 * @return The resource as created by this scheduler.
+	 * @throws IllegalArgumentException Thrown if the resource was not created by this scheduler.
+	 */
+	private ResourceImpl toResourceImpl(Resource resource) {
+		if (!(resource instanceof ResourceImpl) || ((ResourceImpl)resource).mScheduler != this) {
+			throw new IllegalArgumentException("Resource " + resource + " was not created by this service.");
+		}
+	
+		return (ResourceImpl)resource;
+	}
+	
+	// Inner classes
+	
+	/**
+	 * A resource and the number of its tokens that are free, guarded by the scheduler.
+	 */
+	private static class ResourceImpl implements Resource {
+		/**
+		 * The scheduler the resource was created by.
+		 */
+		private final ResourceScheduler mScheduler;
+	
+		/**
+		 * The name of the resource.
+		 */
+		private final String mName;
+	
+		/**
+		 * The number of tokens of the resource.
+		 */
+		private final int mCapacity;
+	
+		/**
+		 * The number of tokens that are free.
+		 */
+		private int mAvailable;
+	
+		private ResourceImpl(ResourceScheduler scheduler, String name, int capacity) {
+			mScheduler = scheduler;
+			mName = name;
+			mCapacity = capacity;
+			mAvailable = capacity;
+		}
+	
+		/*
+		 * (non-Javadoc)
+		 * @see com.activities.api.Resource#getName()
+		 */
+		@Override
+		public String getName() {
+			return mName;
+		}
+	
+		/*
+		 * (non-Javadoc)
+		 * @see com.activities.api.Resource#getCapacity()
+		 */
+		@Override
+		public int getCapacity() {
+			return mCapacity;
+		}
+	
+		/*
+		 * (non-Javadoc)
+		 * @see com.activities.api.Resource#getAvailable()
+		 */
+		@Override
+		public int getAvailable() {
+			synchronized (mScheduler) {
+				return mAvailable;
+			}
+		}
+	
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return "Resource [name=" + mName + ", capacity=" + mCapacity + "]";
+		}
+	}
+	
+	/**
+	 * An attempt waiting for the tokens of its resources.
+	 */
+	private static class Waiter {
+		/**
+		 * The resources the attempt waits for.
+		 */
+		private final Resource[] mResources;
+	
+		/**
+		 * The owner of the waiter.
+		 */
+		private final Object mOwner;
+	
+		/**
+		 * Run once tokens of the resources may be free.
+		 */
+		private final Runnable mRunnable;
+	
+		private Waiter(Resource[] resources, Object owner, Runnable runnable) {
+			mResources = resources;
+			mOwner = owner;
+			mRunnable = runnable;
+		}
+	
+		/**
+		 * @return True, if every resource has a free token. The caller must hold the lock of the
+		 * scheduler.
+		 */
+		private boolean isReady() {
+			for (Resource resource : mResources) {
+				if (((ResourceImpl)resource).mAvailable == 0) {
+					return false;
+				}
+			}
+	
+			return true;
+		}
+	}
+}
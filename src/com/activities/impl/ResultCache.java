@@ -0,0 +1,153 @@
+package com.activities.impl;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.activities.api.Activity;
+import com.activities.api.FingerprintedAction;
+
+/**
+ * Keeps the fingerprints of the last successful executions of activities whose actions are
+ * {@link FingerprintedAction}s, so that execution cycles can skip the activities whose inputs
+ * are unchanged.
+ * <p/>
+ * Every recorded execution is given a new version. An execution records, besides its own
+ * fingerprint, the versions of the executions of the activities it depends on, so that it is
+ * only reused while none of them has executed again since. The number of executions kept is
+ * bounded, and the least recently used executions are evicted first.
+ */
+/*pkg*/ class ResultCache {
+	// Constants
+	
+	/**
+	 * The maximum number of executions kept. Zero or less to keep none.
+	 */
+	private static final int CAPACITY =
+		Long.getLong("com.quest.glue.activityResultCache.count", 1000).intValue();
+	
+	// Attributes
+	
+	/**
+	 * The version of the most recently recorded execution.
+	 */
+	private long mVersion;
+	
+	// Associations
+	
+	/**
+	 * Map of executions indexed by activity, in the order they were last used.
+	 */
+	private final LinkedHashMap<Activity, Execution> mExecutionByActivityMap =
+		new LinkedHashMap<Activity, Execution>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+	
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Activity, Execution> eldest) {
+				return size() > CAPACITY;
+			}
+		};
+	
+	// Operations
+	
+	/**
+	 * @param activity The activity.
+	 * @param fingerprint The fingerprint of the action of the activity.
+	 * @param inputs The activities the activity depends on.
+	 * @return True, if the last successful execution of the activity had the same fingerprint and
+	 * none of the activities it depends on has executed since.
+	 */
+	public synchronized boolean isUnchanged(Activity activity, Object fingerprint, Activity[] inputs) {
+		Execution execution = mExecutionByActivityMap.get(activity);
+	
+		if (execution == null || !execution.mFingerprint.equals(fingerprint)) {
+			return false;
+		}
+	
+		long[] inputVersions = getVersions(inputs);
+	
+		return inputVersions != null && Arrays.equals(execution.mInputVersions, inputVersions);
+	}
+	
+	/**
+	 * Records a successful execution of the activity, replacing the previous one.
+	 *
+	 * @param activity The activity.
+	 * @param fingerprint The fingerprint of the action of the activity.
+	 * @param inputs The activities the activity depends on.
+	 */
+	public synchronized void record(Activity activity, Object fingerprint, Activity[] inputs) {
+		long[] inputVersions = getVersions(inputs);
+	
+		if (inputVersions == null || CAPACITY <= 0) {
+			// the execution could never be reused
+			mExecutionByActivityMap.remove(activity);
+	
+			return;
+		}
+	
+		mExecutionByActivityMap.put(activity, new Execution(fingerprint, inputVersions, ++mVersion));
+	}
+	
+	/**
+	 * Forgets the last successful execution of the activity, so that neither it nor its
+	 * dependents are skipped by the next execution cycle.
+	 *
+	 * @param activity The activity.
+	 */
+	public synchronized void invalidate(Activity activity) {
+		mExecutionByActivityMap.remove(activity);
+	}
+	
+	/**
+	 * @param inputs The activities.
+	 * @return The sorted versions of the last successful executions of the activities, or null if
+	 * any of them has none.
+	 */
+	private long[] getVersions(Activity[] inputs) {
+		long[] versions = new long[inputs.length];
+	
+		for (int i = 0; i < inputs.length; i++) {
+			Execution execution = mExecutionByActivityMap.get(inputs[i]);
+	
+			if (execution == null) {
+				return null;
+			}
+	
+			versions[i] = execution.mVersion;
+		}
+	
+		// versions are unique, so their order does not depend on the order of the inputs
+		Arrays.sort(versions);
+	
+		return versions;
+	}
+	
+	// Inner classes
+	
+	/**
+	 * A successful execution of an activity.
+	 */
+	private static class Execution {
+		/**
+		 * The fingerprint of the action.
+		 */
+		private final Object mFingerprint;
+	
+		/**
+		 * The sorted versions of the executions of the activities the activity depends on.
+		 */
+		private final long[] mInputVersions;
+	
+		/**
+		 * The version of the execution.
+		 */
+		private final long mVersion;
+	
+		private Execution(Object fingerprint, long[] inputVersions, long version) {
+			mFingerprint = fingerprint;
+			mInputVersions = inputVersions;
+			mVersion = version;
+		}
+	}
+}
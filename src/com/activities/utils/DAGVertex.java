@@ -48,6 +48,36 @@ public E getValue() {
     return mValue;
 }
 
+/**
+ * @return The number of edges to succeeding vertices.
+ */
+/*pkg*/ int getSucceedingCount() {
+	return mSucceedingList.size();
+}
+
+/**
+ * @param index The index of the edge to the succeeding vertex.
+ * @return The succeeding vertex.
+ */
+/*pkg*/ DAGVertex<E> getSucceeding(int index) {
+	return mSucceedingList.get(index).getDestination();
+}
+
+/**
+ * @return The number of edges to preceding vertices.
+ */
+/*pkg*/ int getPrecedingCount() {
+	return mPrecedingList.size();
+}
+
+/**
+ * @param index The index of the edge to the preceding vertex.
+ * @return The preceding vertex.
+ */
+/*pkg*/ DAGVertex<E> getPreceding(int index) {
+	return mPrecedingList.get(index).getSource();
+}
+
 /**
  * Add the succeeding vertex after this vertex. Also, add this vertex to precede the succeeding
  * vertex.
@@ -0,0 +1,298 @@
+package com.activities.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A timer for large numbers of short, approximate delays. Timeouts are hashed into the buckets
+ * of a wheel by their deadline, and a single thread advances the wheel one bucket per tick and
+ * runs the timeouts that have expired. Scheduling and cancelling a timeout take constant time.
+ * <p/>
+ * Timeouts run late by up to one tick. Unless the timer has a dispatcher, they are run on the
+ * timer thread and must therefore be short, typically handing the actual work to an executor.
+ * With a dispatcher, the timeouts expiring in a tick are handed to it together and run in order
+ * on one of its threads, so that a slow timeout delays neither the wheel nor later ticks.
+ * <p/>
+ * The timer thread is started when the first timeout is scheduled and is a daemon thread.
+ */
+public class HashedWheelTimer {
+
+private static final Log CAT = LogFactory.getLog(HashedWheelTimer.class);
+
+private final long mTickDuration;
+private final List<Timeout>[] mWheel;
+private final int mMask;
+private final ConcurrentLinkedQueue<Timeout> mNewTimeoutQueue = new ConcurrentLinkedQueue<Timeout>();
+private final AtomicBoolean mStarted = new AtomicBoolean();
+private final Thread mWorkerThread;
+private final long mStartTime;
+private final Executor mDispatcher;
+private volatile boolean mStopped;
+
+/**
+ * Creates the timer.
+ *
+ * @param timerName the name of the timer thread
+ * @param tickDuration the duration of a tick
+ * @param unit the unit of the tick duration
+ * @param ticksPerWheel the number of buckets of the wheel, rounded up to a power of two
+ * @throws IllegalArgumentException if the tick duration or the number of buckets is not positive
+ */
+public HashedWheelTimer(String timerName, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+	this(timerName, tickDuration, unit, ticksPerWheel, null);
+}
+
+/**
+ * Creates the timer with a dispatcher the expired timeouts are run on.
+ *
+ * @param timerName the name of the timer thread
+ * @param tickDuration the duration of a tick
+ * @param unit the unit of the tick duration
+ * @param ticksPerWheel the number of buckets of the wheel, rounded up to a power of two
+ * @param dispatcher the executor to run expired timeouts on, or null to run them on the timer
+ * thread
+ * @throws IllegalArgumentException if the tick duration or the number of buckets is not positive
+ */
+@SuppressWarnings({"unchecked", "rawtypes"})
+public HashedWheelTimer(String timerName, long tickDuration, TimeUnit unit, int ticksPerWheel,
+	Executor dispatcher) {
+	if (tickDuration <= 0 || ticksPerWheel <= 0 || ticksPerWheel > (1 << 30)) {
+		throw new IllegalArgumentException("Invalid tick duration or number of ticks per wheel: " +
+			tickDuration + ", " + ticksPerWheel);
+	}
+
+	int wheelSize = Integer.highestOneBit(ticksPerWheel - 1) << 1;
+
+	if (ticksPerWheel == 1) {
+		wheelSize = 1;
+	}
+
+	mTickDuration = unit.toNanos(tickDuration);
+	mWheel = new List[wheelSize];
+	mMask = wheelSize - 1;
+
+	for (int i = 0; i < wheelSize; i++) {
+		mWheel[i] = new ArrayList<Timeout>();
+	}
+
+	mStartTime = System.nanoTime();
+	mDispatcher = dispatcher;
+	mWorkerThread = new CorePoolThreadFactory(timerName).newThread(new Runnable() {
+		@Override
+		public void run() {
+			runWheel();
+		}
+	});
+}
+
+/**
+ * Schedules a task to run once the delay has elapsed.
+ *
+ * @param task the task to run
+ * @param delay the delay
+ * @param unit the unit of the delay
+ * @return the handle to cancel the task with
+ * @throws IllegalStateException if the timer was stopped
+ */
+public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+	if (task == null) throw new NullPointerException();
+
+	if (mStopped) {
+		throw new IllegalStateException("The timer has been stopped");
+	}
+
+	if (mStarted.compareAndSet(false, true)) {
+		mWorkerThread.start();
+	}
+
+	Timeout timeout = new Timeout(task, System.nanoTime() - mStartTime + Math.max(0, unit.toNanos(delay)));
+	mNewTimeoutQueue.offer(timeout);
+
+	return timeout;
+}
+
+/**
+ * Stops the timer. Timeouts that have not run yet are dropped.
+ */
+public void stop() {
+	mStopped = true;
+	mWorkerThread.interrupt();
+}
+
+/**
+ * Advances the wheel one bucket per tick until the timer is stopped.
+ */
+private void runWheel() {
+	long tick = 0;
+
+	while (!mStopped) {
+		long deadline = (tick + 1) * mTickDuration;
+		long sleepTime = deadline - (System.nanoTime() - mStartTime);
+
+		if (sleepTime > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(sleepTime);
+			}
+			catch (InterruptedException e) {
+				continue;
+			}
+		}
+
+		transferNewTimeouts(tick);
+		expireTimeouts(mWheel[(int)(tick & mMask)], deadline);
+		tick++;
+	}
+}
+
+/**
+ * Moves newly scheduled timeouts into the buckets of the wheel.
+ *
+ * @param tick the current tick
+ */
+private void transferNewTimeouts(long tick) {
+	Timeout timeout;
+
+	while ((timeout = mNewTimeoutQueue.poll()) != null) {
+		if (timeout.isCancelled()) {
+			continue;
+		}
+
+		// timeouts that are already due go into the current bucket
+		long expiryTick = Math.max(timeout.mDeadline / mTickDuration, tick);
+
+		mWheel[(int)(expiryTick & mMask)].add(timeout);
+	}
+}
+
+/**
+ * Runs the timeouts of the bucket whose deadline has passed, or hands them to the dispatcher,
+ * and drops cancelled ones. The others are left for a later turn of the wheel.
+ *
+ * @param bucket the bucket of the current tick
+ * @param deadline the end of the current tick relative to the start of the timer
+ */
+private void expireTimeouts(List<Timeout> bucket, long deadline) {
+	List<Timeout> expiredList = null;
+	int kept = 0;
+
+	for (int i = 0; i < bucket.size(); i++) {
+		Timeout timeout = bucket.get(i);
+
+		if (timeout.isCancelled()) {
+			continue;
+		}
+
+		if (timeout.mDeadline > deadline) {
+			bucket.set(kept++, timeout);
+		}
+		else if (timeout.expire()) {
+			if (mDispatcher == null) {
+				timeout.run();
+			}
+			else {
+				if (expiredList == null) {
+					expiredList = new ArrayList<Timeout>();
+				}
+
+				expiredList.add(timeout);
+			}
+		}
+	}
+
+	bucket.subList(kept, bucket.size()).clear();
+
+	if (expiredList != null) {
+		dispatch(expiredList);
+	}
+}
+
+/**
+ * Hands the expired timeouts of a tick to the dispatcher. Should it reject them, they are run
+ * on the timer thread rather than dropped.
+ *
+ * @param expiredList the expired timeouts, in the order they are to be run
+ */
+private void dispatch(final List<Timeout> expiredList) {
+	Runnable task = new Runnable() {
+		@Override
+		public void run() {
+			for (Timeout timeout : expiredList) {
+				timeout.run();
+			}
+		}
+	};
+
+	try {
+		mDispatcher.execute(task);
+	}
+	catch (RejectedExecutionException e) {
+		CAT.warn("The timer dispatcher rejected " + expiredList.size() + " timeout(s); running them on the timer thread", e);
+		task.run();
+	}
+}
+
+/**
+ * The handle of a scheduled task.
+ */
+public static class Timeout {
+
+	private static final int PENDING = 0;
+	private static final int CANCELLED = 1;
+	private static final int EXPIRED = 2;
+
+	private final Runnable mTask;
+	private final long mDeadline;
+	private final AtomicInteger mState = new AtomicInteger(PENDING);
+
+	private Timeout(Runnable task, long deadline) {
+		mTask = task;
+		mDeadline = deadline;
+	}
+
+	/**
+	 * Cancels the task unless it has already run.
+	 *
+	 * @return true if the task was cancelled by this call
+	 */
+	public boolean cancel() {
+		return mState.compareAndSet(PENDING, CANCELLED);
+	}
+
+	/**
+	 * @return true if the task was cancelled
+	 */
+	public boolean isCancelled() {
+		return mState.get() == CANCELLED;
+	}
+
+	/**
+	 * @return true if the task has run or is running
+	 */
+	public boolean isExpired() {
+		return mState.get() == EXPIRED;
+	}
+
+	private boolean expire() {
+		return mState.compareAndSet(PENDING, EXPIRED);
+	}
+
+	private void run() {
+		try {
+			mTask.run();
+		}
+		catch (RuntimeException e) {
+			CAT.error("Timer task " + mTask + " failed", e);
+		}
+	}
+}
+
+}
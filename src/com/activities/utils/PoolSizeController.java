@@ -0,0 +1,218 @@
+package com.activities.utils;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Adapts the maximum size of a {@link PriorityThreadPool} to its load, within configured bounds.
+ * The right size depends on what the tasks do: tasks bound by the CPU gain nothing from more
+ * threads than there are cores, while tasks blocking on I/O may need many times more.
+ * <p/>
+ * The pool is sampled once per interval. While tasks wait in the queue, the controller climbs
+ * the throughput of the pool: it keeps resizing the pool in the same direction as long as the
+ * number of tasks finished per second improves, turns around once it drops, and sheds threads
+ * that no longer add throughput. While tasks do not wait, the pool has all the threads it needs
+ * and is left alone.
+ * <p/>
+ * The controller runs on a timer and must be stopped once the pool is shut down.
+ */
+public class PoolSizeController implements Runnable {
+
+private static final Log CAT = LogFactory.getLog(PoolSizeController.class);
+
+/**
+ * The average queue wait time, in nanoseconds, above which tasks are considered waiting for a
+ * thread.
+ */
+private static final long WAIT_THRESHOLD = TimeUnit.MILLISECONDS.toNanos(1);
+
+/**
+ * The relative change of throughput below which a resize is considered to make no difference.
+ */
+private static final double TOLERANCE = 0.1;
+
+/**
+ * The number of samples the pool is held at a bound before the controller probes the other way,
+ * in case the load has changed.
+ */
+private static final int PROBE_SAMPLES = 10;
+
+private final PriorityThreadPool mPool;
+private final int mMinPoolSize;
+private final int mMaxPoolSize;
+private final long mInterval;
+private final HashedWheelTimer mTimer;
+
+private long mLastSampleTime;
+private long mLastQueueWaitTime;
+private long mLastStartedTaskCount;
+private long mLastFinishedTaskCount;
+
+/**
+ * The throughput measured at the last resize, in tasks per second, or zero if there is no
+ * resize to judge.
+ */
+private double mLastThroughput;
+
+/**
+ * The direction of the last resize: 1 to grow, -1 to shrink.
+ */
+private int mDirection = 1;
+
+/**
+ * The number of samples the pool has been held at a bound.
+ */
+private int mBoundCount;
+
+private HashedWheelTimer.Timeout mTimeout;
+private volatile boolean mStopped;
+
+/**
+ * Creates the controller. The pool is resized into the bounds once the controller is started.
+ *
+ * @param pool the pool to resize
+ * @param minPoolSize the minimum size of the pool
+ * @param maxPoolSize the maximum size of the pool
+ * @param interval the time between two samples
+ * @param unit the unit of the interval
+ * @param timer the timer to sample the pool on
+ * @throws IllegalArgumentException if the minimum size is not positive, is greater than the
+ * maximum size, or the interval is not positive
+ */
+public PoolSizeController(PriorityThreadPool pool, int minPoolSize, int maxPoolSize, long interval,
+	TimeUnit unit, HashedWheelTimer timer) {
+	if (pool == null || timer == null) throw new NullPointerException();
+
+	if (minPoolSize < 1 || minPoolSize > maxPoolSize || interval <= 0) {
+		throw new IllegalArgumentException("Invalid pool size bounds or sampling interval: " +
+			minPoolSize + ", " + maxPoolSize + ", " + interval);
+	}
+
+	mPool = pool;
+	mMinPoolSize = minPoolSize;
+	mMaxPoolSize = maxPoolSize;
+	mInterval = unit.toNanos(interval);
+	mTimer = timer;
+}
+
+/**
+ * Clamps the pool into the bounds and starts sampling it.
+ */
+public synchronized void start() {
+	int size = mPool.getMaximumPoolSize();
+
+	resize(Math.max(mMinPoolSize, Math.min(mMaxPoolSize, size)), size);
+
+	mLastSampleTime = System.nanoTime();
+	mLastQueueWaitTime = mPool.getQueueWaitTime(TimeUnit.NANOSECONDS);
+	mLastStartedTaskCount = mPool.getStartedTaskCount();
+	mLastFinishedTaskCount = mPool.getFinishedTaskCount();
+	mStopped = false;
+	mTimeout = mTimer.schedule(this, mInterval, TimeUnit.NANOSECONDS);
+}
+
+/**
+ * Stops sampling the pool. The pool keeps its current size.
+ */
+public synchronized void stop() {
+	mStopped = true;
+
+	if (mTimeout != null) {
+		mTimeout.cancel();
+		mTimeout = null;
+	}
+}
+
+/**
+ * Samples the pool, resizes it if needed and schedules the next sample.
+ */
+@Override
+public synchronized void run() {
+	if (mStopped || mPool.isShutdown()) {
+		return;
+	}
+
+	try {
+		sample();
+	}
+	catch (RuntimeException e) {
+		CAT.error("Failed to resize the thread pool.", e);
+	}
+
+	mTimeout = mTimer.schedule(this, mInterval, TimeUnit.NANOSECONDS);
+}
+
+private void sample() {
+	long now = System.nanoTime();
+	long queueWaitTime = mPool.getQueueWaitTime(TimeUnit.NANOSECONDS);
+	long startedTaskCount = mPool.getStartedTaskCount();
+	long finishedTaskCount = mPool.getFinishedTaskCount();
+
+	long started = startedTaskCount - mLastStartedTaskCount;
+	long waitTime = (started > 0) ? (queueWaitTime - mLastQueueWaitTime) / started : 0;
+	double throughput = (finishedTaskCount - mLastFinishedTaskCount) * 1e9 / Math.max(1, now - mLastSampleTime);
+
+	mLastSampleTime = now;
+	mLastQueueWaitTime = queueWaitTime;
+	mLastStartedTaskCount = startedTaskCount;
+	mLastFinishedTaskCount = finishedTaskCount;
+
+	// tasks still queued have not contributed to the wait time yet
+	if (waitTime < WAIT_THRESHOLD && mPool.getQueue().isEmpty()) {
+		// the pool keeps up, there is nothing to climb
+		mLastThroughput = 0;
+		mDirection = 1;
+		mBoundCount = 0;
+
+		return;
+	}
+
+	if (mLastThroughput > 0) {
+		if (throughput < mLastThroughput * (1 - TOLERANCE)) {
+			mDirection = -mDirection;
+		}
+		else if (throughput <= mLastThroughput * (1 + TOLERANCE)) {
+			// the last resize made no difference, shed the threads that do not help
+			mDirection = -1;
+		}
+	}
+
+	int size = mPool.getMaximumPoolSize();
+	int step = Math.max(1, size / 4);
+	int newSize = Math.max(mMinPoolSize, Math.min(mMaxPoolSize, size + mDirection * step));
+
+	if (CAT.isDebugEnabled()) {
+		CAT.debug("Throughput " + Math.round(throughput) + "/s, queue wait " +
+			TimeUnit.NANOSECONDS.toMicros(waitTime) + " us at " + size + " thread(s).");
+	}
+
+	if (newSize == size) {
+		// held at a bound, there is no resize to judge
+		mLastThroughput = 0;
+
+		if (++mBoundCount >= PROBE_SAMPLES) {
+			mBoundCount = 0;
+			mDirection = -mDirection;
+		}
+
+		return;
+	}
+
+	mBoundCount = 0;
+	mLastThroughput = throughput;
+
+	resize(newSize, size);
+}
+
+private void resize(int newSize, int size) {
+	if (newSize != size) {
+		if (CAT.isDebugEnabled()) {
+			CAT.debug("Resizing the thread pool from " + size + " to " + newSize + " thread(s).");
+		}
+
+		mPool.setMaximumPoolSize(newSize);
+	}
+}
+}
@@ -0,0 +1,38 @@
+package com.activities.utils;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * An executor that accepts tasks along with the priority they should be executed with. How
+ * strictly the priority is honored is up to the implementation.
+ */
+public interface PriorityExecutor {
+	/**
+	 * Submits a task with the declared priority.
+	 *
+	 * @param task the task to submit
+	 * @param priority for executing this task. Queued tasks with a lower priority value are
+	 * executed first and tasks with the same priority in submission order.
+	 * @return a Future representing pending completion of the task
+	 * @throws java.util.concurrent.RejectedExecutionException if the task cannot be accepted
+	 */
+	public <T> Future<T> submit(Callable<T> task, int priority);
+	
+	/**
+	 * Removes tasks that were cancelled before they started from the queue, so that they
+	 * neither hold on to memory nor have to be skipped by the threads taking tasks.
+	 */
+	public void purge();
+	
+	/**
+	 * Initiates an orderly shutdown in which previously submitted tasks are executed, but no
+	 * new tasks will be accepted.
+	 */
+	public void shutdown();
+	
+	/**
+	 * @return true if the executor has been shut down and accepts no new tasks
+	 */
+	public boolean isShutdown();
+}
@@ -4,6 +4,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.RunnableFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
@@ -12,15 +13,41 @@ import java.util.concurrent.atomic.AtomicLong;
 /**
  * The PriorityThreadPool allows scheduling of tasks with a defined priority level.
  */
-public class PriorityThreadPool extends ResizableThreadPoolExecutor {
+public class PriorityThreadPool extends ResizableThreadPoolExecutor implements PriorityExecutor {
 
 private static final int DEFAULT_PRIORITY = 0;
 private final AtomicLong PRIORITY_SEQUENCE = new AtomicLong();
 
+/**
+ * The time the started tasks waited in the queue, in nanoseconds.
+ */
+private final AtomicLong mQueueWaitTime = new AtomicLong();
+private final AtomicLong mStartedTaskCount = new AtomicLong();
+private final AtomicLong mFinishedTaskCount = new AtomicLong();
+
 public PriorityThreadPool(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit, ThreadFactory threadFactory) {
 	super(corePoolSize, maximumPoolSize, keepAliveTime, unit, new PriorityBlockingQueue<Runnable>(), threadFactory);
 }
 
+/**
+ * Creates a pool whose queue holds at most queueCapacity tasks. Tasks submitted while all
+ * threads are busy and the queue is full are handed to the provided handler.
+ *
+ * @param corePoolSize the number of threads to keep in the pool, even if they are idle
+ * @param maximumPoolSize the maximum number of threads to allow in the pool
+ * @param keepAliveTime the maximum time excess idle threads wait for new tasks
+ * @param unit the time unit for the keepAliveTime argument
+ * @param queueCapacity the maximum number of queued tasks
+ * @param threadFactory the factory to use when the executor creates a new thread
+ * @param handler the handler to use when the queue is full
+ * @throws IllegalArgumentException if queueCapacity is less than one
+ */
+public PriorityThreadPool(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+	int queueCapacity, ThreadFactory threadFactory, RejectedExecutionHandler handler) {
+	super(corePoolSize, maximumPoolSize, keepAliveTime, unit, new BoundedPriorityBlockingQueue(queueCapacity),
+		threadFactory, handler);
+}
+
 /**
  * Submits a task with the default priority
  * @param task the task to submit
@@ -97,6 +124,7 @@ public <T> Future<T> submit(Callable<T> task) {
  * @param priority for executing this task
  * @return a Future representing pending completion of the task
  */
+@Override
 public <T> Future<T> submit(Callable<T> task, int priority) {
 	if (task == null) throw new NullPointerException();
 
@@ -106,6 +134,90 @@ public <T> Future<T> submit(Callable<T> task, int priority) {
 	return ftask;
 }
 
+/**
+ * Records how long the task waited for a thread.
+ */
+@Override
+protected void beforeExecute(Thread t, Runnable r) {
+	if (r instanceof PrioritizedFutureTask) {
+		mQueueWaitTime.addAndGet(System.nanoTime() - ((PrioritizedFutureTask<?>)r).mSubmitTime);
+	}
+
+	mStartedTaskCount.incrementAndGet();
+}
+
+/**
+ * Counts the task as finished.
+ */
+@Override
+protected void afterExecute(Runnable r, Throwable t) {
+	mFinishedTaskCount.incrementAndGet();
+}
+
+/**
+ * Returns the total time the tasks started so far waited in the queue before a thread picked
+ * them up. Tasks run by the submitting thread because the queue was full are not included.
+ *
+ * @param unit the unit of the returned time
+ * @return the total queue wait time
+ */
+public long getQueueWaitTime(TimeUnit unit) {
+	return unit.convert(mQueueWaitTime.get(), TimeUnit.NANOSECONDS);
+}
+
+/**
+ * Returns the number of tasks the threads of the pool have started so far. Unlike
+ * {@link #getCompletedTaskCount()}, this does not take the lock of the pool.
+ *
+ * @return the number of started tasks
+ */
+public long getStartedTaskCount() {
+	return mStartedTaskCount.get();
+}
+
+/**
+ * Returns the number of tasks the threads of the pool have finished so far, whether they
+ * completed normally or not. Unlike {@link #getCompletedTaskCount()}, this does not take the
+ * lock of the pool.
+ *
+ * @return the number of finished tasks
+ */
+public long getFinishedTaskCount() {
+	return mFinishedTaskCount.get();
+}
+
+/**
+ * A priority queue that refuses new elements once it holds a given number of them.
+ */
+private static class BoundedPriorityBlockingQueue extends PriorityBlockingQueue<Runnable> {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int mCapacity;
+
+	private BoundedPriorityBlockingQueue(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("The queue capacity must be at least 1: " + capacity);
+		}
+
+		mCapacity = capacity;
+	}
+
+	@Override
+	public synchronized boolean offer(Runnable e) {
+		if (size() >= mCapacity) {
+			return false;
+		}
+
+		return super.offer(e);
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return Math.max(0, mCapacity - size());
+	}
+}
+
 /**
  * A FutureTask that implements Comparable so that we can sort it within the Queue
  * @param <V>
@@ -114,6 +226,7 @@ private static class PrioritizedFutureTask<V> extends FutureTask<V> implements C
 
 	private final int mPriority;
 	private final long mSequence;
+	private final long mSubmitTime = System.nanoTime();
 
 	public PrioritizedFutureTask(Callable<V> vCallable, int priority, long sequence) {
 		super(vCallable);
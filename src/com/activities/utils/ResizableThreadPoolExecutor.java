@@ -173,6 +173,28 @@ public class ResizableThreadPoolExecutor extends ThreadPoolExecutor {
 	    }
 	}
 	
+	/**
+	 * Sets the maximum number of threads, lowering the core pool size along with it if needed.
+	 * Threads beyond the new maximum terminate once they are idle.
+	 *
+	 * @param maximumPoolSize the new maximum
+	 * @throws IllegalArgumentException if the new maximum is less than or equal to zero
+	 */
+	public void setMaximumPoolSize(int maximumPoolSize) {
+	    final ReentrantLock coreLock = CORE_LOCK;
+	    coreLock.lock();
+	    try {
+	        if ( maximumPoolSize > 0 && mActualCorePoolSize > maximumPoolSize ) {
+	            mActualCorePoolSize = maximumPoolSize;
+	            super.setCorePoolSize(maximumPoolSize);
+	        }
+	        super.setMaximumPoolSize(maximumPoolSize);
+	    }
+	    finally {
+	        coreLock.unlock();
+	    }
+	}
+	
 	/* (non-Javadoc)
 	 * @see java.util.concurrent.ThreadPoolExecutor#execute(java.lang.Runnable)
 	 */
@@ -203,14 +225,20 @@ public class ResizableThreadPoolExecutor extends ThreadPoolExecutor {
 	        final ReentrantLock coreLock = CORE_LOCK;
 	        coreLock.lock();
 	        try {
-	            super.setCorePoolSize(getPoolSize() + 1);
-	            super.execute(command);
-	            super.setCorePoolSize(mActualCorePoolSize);
+	            // Another thread may have grown the pool since the check above, and the
+	            // core pool size may not exceed the maximum pool size.
+	            int poolSize = getPoolSize();
+	            
+	            if ( poolSize < getMaximumPoolSize() ) {
+	                super.setCorePoolSize(poolSize + 1);
+	                super.execute(command);
+	                super.setCorePoolSize(mActualCorePoolSize);
+	                return;
+	            }
 	        }
 	        finally {
 	            coreLock.unlock();
 	        }
-	        return;
 	    }
 	    
 	    // Case 3: all threads busy, try and queue the task
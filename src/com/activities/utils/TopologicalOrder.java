@@ -0,0 +1,327 @@
+package com.activities.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * A topological order of the vertices of a directed acyclic graph (DAG) that is maintained
+ * incrementally as dependencies are added, following the dynamic topological sort algorithm of
+ * Pearce and Kelly. Every vertex holds a position and every edge points from a lower to a higher
+ * position.
+ * <p/>
+ * Adding an edge that already agrees with the order costs nothing. Otherwise, only the vertices
+ * whose positions lie between the two ends of the edge and that are reachable from them are
+ * searched and shuffled, and the search discovers a cycle before the edge is added. Reading the
+ * order is linear in the number of vertices and requires no sorting.
+ * <p/>
+ * Removing a vertex leaves a hole in the positions, since {@link DAGVertex#remove()} links its
+ * preceding vertices to its succeeding vertices which are already in order. The holes are
+ * compacted once they outnumber the vertices.
+ * <p/>
+ * The order is not thread-safe. The graph may only be modified through the order while the
+ * order is in use.
+ */
+public class TopologicalOrder<E> {
+
+// Constants
+
+/**
+ * The minimum number of holes before the positions are compacted.
+ */
+private static final int MIN_COMPACTION_HOLE_COUNT = 32;
+
+// Attributes
+
+/**
+ * The number of positions that no longer hold a vertex.
+ */
+private int mHoleCount;
+
+// Associations
+
+/**
+ * The vertices indexed by position. Removed vertices leave a null.
+ */
+private final ArrayList<DAGVertex<E>> mVertexByPositionList = new ArrayList<DAGVertex<E>>();
+
+/**
+ * Map of position indexed by vertex.
+ */
+private final HashMap<DAGVertex<E>, Integer> mPositionByVertexMap =
+	new HashMap<DAGVertex<E>, Integer>();
+
+/**
+ * Orders vertices by ascending position.
+ */
+private final Comparator<DAGVertex<E>> mPositionComparator = new Comparator<DAGVertex<E>>() {
+	@Override
+	public int compare(DAGVertex<E> vertex1, DAGVertex<E> vertex2) {
+		return Integer.compare(getPosition(vertex1), getPosition(vertex2));
+	}
+};
+
+// Operations
+
+/**
+ * Adds the vertex after all vertices in the order, unless it is already part of the order.
+ *
+ * @param vertex The vertex to add. It must not have any edges to vertices outside the order.
+ */
+public void add(DAGVertex<E> vertex) {
+	if (!mPositionByVertexMap.containsKey(vertex)) {
+		mPositionByVertexMap.put(vertex, mVertexByPositionList.size());
+		mVertexByPositionList.add(vertex);
+	}
+}
+
+/**
+ * Adds an edge from the preceding to the succeeding vertex and restores the order if the edge
+ * goes against it. Vertices that are not yet part of the order are added first.
+ *
+ * @param precedingVertex The preceding vertex.
+ * @param succeedingVertex The succeeding vertex.
+ * @throws CyclicDataException Thrown if the succeeding vertex already comes before the
+ *         preceding vertex, in which case the edge is not added.
+ */
+public void before(DAGVertex<E> precedingVertex, DAGVertex<E> succeedingVertex)
+		throws CyclicDataException {
+	add(precedingVertex);
+	add(succeedingVertex);
+
+	int lowerBound = getPosition(succeedingVertex);
+	int upperBound = getPosition(precedingVertex);
+
+	if (lowerBound < upperBound) {
+		List<DAGVertex<E>> forwardList = searchForward(precedingVertex, succeedingVertex, upperBound);
+		List<DAGVertex<E>> backwardList = searchBackward(precedingVertex, lowerBound);
+
+		reorder(backwardList, forwardList);
+	}
+
+	precedingVertex.before(succeedingVertex);
+}
+
+/**
+ * Removes the vertex from the graph and from the order. See {@link DAGVertex#remove()}.
+ *
+ * @param vertex The vertex to remove.
+ */
+public void remove(DAGVertex<E> vertex) {
+	vertex.remove();
+
+	Integer position = mPositionByVertexMap.remove(vertex);
+
+	if (position != null) {
+		mVertexByPositionList.set(position, null);
+		mHoleCount++;
+
+		if (mHoleCount >= MIN_COMPACTION_HOLE_COUNT && mHoleCount > mPositionByVertexMap.size()) {
+			compact();
+		}
+	}
+}
+
+/**
+ * Removes all vertices from the order. The vertices themselves are left untouched.
+ */
+public void clear() {
+	mVertexByPositionList.clear();
+	mPositionByVertexMap.clear();
+	mHoleCount = 0;
+}
+
+/**
+ * @return The number of vertices in the order.
+ */
+public int size() {
+	return mPositionByVertexMap.size();
+}
+
+/**
+ * @return The vertices in topological order. Independent vertices are placed before the
+ * vertices that depend on them.
+ */
+public List<DAGVertex<E>> getSortedList() {
+	List<DAGVertex<E>> sortedVertexList = new ArrayList<DAGVertex<E>>(mPositionByVertexMap.size());
+
+	for (DAGVertex<E> vertex : mVertexByPositionList) {
+		if (vertex != null) {
+			sortedVertexList.add(vertex);
+		}
+	}
+
+	return sortedVertexList;
+}
+
+/**
+ * @param vertex The vertex.
+ * @return The position of the vertex.
+ */
+private int getPosition(DAGVertex<E> vertex) {
+	return mPositionByVertexMap.get(vertex);
+}
+
+/**
+ * Collects the vertices reachable from the succeeding vertex that are positioned before the
+ * preceding vertex.
+ *
+ * @param precedingVertex The preceding vertex of the edge being added.
+ * @param succeedingVertex The succeeding vertex of the edge being added.
+ * @param upperBound The position of the preceding vertex.
+ * @return The vertices found, including the succeeding vertex.
+ * @throws CyclicDataException Thrown if the preceding vertex is reachable from the succeeding
+ *         vertex.
+ */
+private List<DAGVertex<E>> searchForward(DAGVertex<E> precedingVertex,
+		DAGVertex<E> succeedingVertex, int upperBound) throws CyclicDataException {
+	List<DAGVertex<E>> foundList = new ArrayList<DAGVertex<E>>();
+	ArrayList<DAGVertex<E>> stack = new ArrayList<DAGVertex<E>>();
+
+	// Also marks the vertices found so far
+	HashMap<DAGVertex<E>, DAGVertex<E>> parentByVertexMap =
+		new HashMap<DAGVertex<E>, DAGVertex<E>>();
+
+	parentByVertexMap.put(succeedingVertex, null);
+	stack.add(succeedingVertex);
+
+	while (!stack.isEmpty()) {
+		DAGVertex<E> vertex = stack.remove(stack.size() - 1);
+
+		foundList.add(vertex);
+
+		for (int i = 0; i < vertex.getSucceedingCount(); i++) {
+			DAGVertex<E> dependentVertex = vertex.getSucceeding(i);
+
+			if (dependentVertex == precedingVertex) {
+				throw new CyclicDataException(formatCycleForException(precedingVertex, vertex,
+					parentByVertexMap));
+			}
+
+			if (getPosition(dependentVertex) < upperBound
+				&& !parentByVertexMap.containsKey(dependentVertex)) {
+				parentByVertexMap.put(dependentVertex, vertex);
+				stack.add(dependentVertex);
+			}
+		}
+	}
+
+	return foundList;
+}
+
+/**
+ * Collects the vertices the preceding vertex is reachable from that are positioned after the
+ * succeeding vertex.
+ *
+ * @param precedingVertex The preceding vertex of the edge being added.
+ * @param lowerBound The position of the succeeding vertex.
+ * @return The vertices found, including the preceding vertex.
+ */
+private List<DAGVertex<E>> searchBackward(DAGVertex<E> precedingVertex, int lowerBound) {
+	List<DAGVertex<E>> foundList = new ArrayList<DAGVertex<E>>();
+	ArrayList<DAGVertex<E>> stack = new ArrayList<DAGVertex<E>>();
+	HashSet<DAGVertex<E>> foundSet = new HashSet<DAGVertex<E>>();
+
+	foundSet.add(precedingVertex);
+	stack.add(precedingVertex);
+
+	while (!stack.isEmpty()) {
+		DAGVertex<E> vertex = stack.remove(stack.size() - 1);
+
+		foundList.add(vertex);
+
+		for (int i = 0; i < vertex.getPrecedingCount(); i++) {
+			DAGVertex<E> dependsOnVertex = vertex.getPreceding(i);
+
+			if (getPosition(dependsOnVertex) > lowerBound && foundSet.add(dependsOnVertex)) {
+				stack.add(dependsOnVertex);
+			}
+		}
+	}
+
+	return foundList;
+}
+
+/**
+ * Moves the vertices found searching backward ahead of the vertices found searching forward,
+ * reusing the positions they occupy between them.
+ *
+ * @param backwardList The vertices found searching backward from the preceding vertex.
+ * @param forwardList The vertices found searching forward from the succeeding vertex.
+ */
+private void reorder(List<DAGVertex<E>> backwardList, List<DAGVertex<E>> forwardList) {
+	Collections.sort(backwardList, mPositionComparator);
+	Collections.sort(forwardList, mPositionComparator);
+
+	List<DAGVertex<E>> vertexList = new ArrayList<DAGVertex<E>>(backwardList.size() + forwardList.size());
+
+	vertexList.addAll(backwardList);
+	vertexList.addAll(forwardList);
+
+	int[] positions = new int[vertexList.size()];
+
+	for (int i = 0; i < positions.length; i++) {
+		positions[i] = getPosition(vertexList.get(i));
+	}
+
+	Arrays.sort(positions);
+
+	for (int i = 0; i < positions.length; i++) {
+		DAGVertex<E> vertex = vertexList.get(i);
+
+		mPositionByVertexMap.put(vertex, positions[i]);
+		mVertexByPositionList.set(positions[i], vertex);
+	}
+}
+
+/**
+ * Removes the holes left by removed vertices while keeping the order.
+ */
+private void compact() {
+	List<DAGVertex<E>> sortedVertexList = getSortedList();
+
+	mVertexByPositionList.clear();
+	mVertexByPositionList.addAll(sortedVertexList);
+	mHoleCount = 0;
+
+	for (int i = 0; i < sortedVertexList.size(); i++) {
+		mPositionByVertexMap.put(sortedVertexList.get(i), i);
+	}
+}
+
+/**
+ * @param precedingVertex The preceding vertex of the edge being added.
+ * @param lastVertex The vertex on the path that the preceding vertex succeeds.
+ * @param parentByVertexMap Map of the vertex each vertex was reached from, indexed by vertex.
+ * @return The description of the cycle the edge would create.
+ */
+private static <V> String formatCycleForException(DAGVertex<V> precedingVertex,
+		DAGVertex<V> lastVertex, HashMap<DAGVertex<V>, DAGVertex<V>> parentByVertexMap) {
+	List<DAGVertex<V>> pathList = new ArrayList<DAGVertex<V>>();
+
+	for (DAGVertex<V> vertex = lastVertex; vertex != null; vertex = parentByVertexMap.get(vertex)) {
+		pathList.add(vertex);
+	}
+
+	Collections.reverse(pathList);
+
+	final StringBuilder result = new StringBuilder();
+
+	result.append("A dependency of '").append(pathList.get(0).getValue()).append("' on '")
+		.append(precedingVertex.getValue()).append("' would create a cycle: ");
+	result.append("'").append(precedingVertex.getValue()).append("'");
+
+	for (DAGVertex<V> vertex : pathList) {
+		result.append(" -> '").append(vertex.getValue()).append("'");
+	}
+
+	result.append(" -> '").append(precedingVertex.getValue()).append("'");
+
+	return result.toString();
+}
+
+}
@@ -0,0 +1,301 @@
+package com.activities.utils;
+
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A {@link PriorityExecutor} that runs every task on a thread of its own, preferably a virtual
+ * thread, so that tasks which block on I/O do not tie up the threads of a fixed size pool.
+ * <p/>
+ * The number of tasks running at the same time is bounded by a semaphore instead of a pool size.
+ * Tasks that cannot be admitted right away wait in a priority queue and are admitted in the same
+ * order {@link PriorityThreadPool} would execute them: lower priority values first, ties in
+ * submission order.
+ * <p/>
+ * Virtual threads require Java 21. On older runtimes the executor falls back to creating
+ * platform threads through a {@link CorePoolThreadFactory}.
+ */
+public class VirtualThreadExecutor implements PriorityExecutor {
+
+private static final Log CAT = LogFactory.getLog(VirtualThreadExecutor.class);
+
+private final ThreadFactory mThreadFactory;
+private final Semaphore mPermits;
+private final int mMaxConcurrency;
+private final PriorityBlockingQueue<PrioritizedTask<?>> mQueue =
+	new PriorityBlockingQueue<PrioritizedTask<?>>();
+private final AtomicLong mSequence = new AtomicLong();
+private volatile boolean mShutdown;
+
+/**
+ * Creates the executor.
+ *
+ * @param maxConcurrency the maximum number of tasks allowed to run at the same time
+ * @param poolName the name used as prefix for the created threads
+ * @throws IllegalArgumentException if maxConcurrency is less than one
+ */
+public VirtualThreadExecutor(int maxConcurrency, String poolName) {
+	this(maxConcurrency, createThreadFactory(poolName));
+}
+
+/**
+ * Creates the executor with the factory of the threads to run the tasks on.
+ *
+ * @param maxConcurrency the maximum number of tasks allowed to run at the same time
+ * @param threadFactory the factory of the threads
+ * @throws IllegalArgumentException if maxConcurrency is less than one
+ */
+/*pkg*/ VirtualThreadExecutor(int maxConcurrency, ThreadFactory threadFactory) {
+	if (maxConcurrency < 1) {
+		throw new IllegalArgumentException("The maximum concurrency must be at least 1: " + maxConcurrency);
+	}
+
+	mMaxConcurrency = maxConcurrency;
+	mPermits = new Semaphore(maxConcurrency);
+	mThreadFactory = threadFactory;
+}
+
+/**
+ * Creates a factory for virtual threads if the runtime supports them, otherwise a factory for
+ * daemon platform threads.
+ */
+private static ThreadFactory createThreadFactory(String poolName) {
+	try {
+		// Thread.ofVirtual().name(poolName + "-", 0).factory()
+		final Method ofVirtual = Thread.class.getMethod("ofVirtual");
+		final Object builder = ofVirtual.invoke(null);
+		final Class<?> builderClass = ofVirtual.getReturnType();
+		final Object namedBuilder = builderClass.getMethod("name", String.class, long.class)
+			.invoke(builder, poolName + "-", 0L);
+
+		return (ThreadFactory)builderClass.getMethod("factory").invoke(namedBuilder);
+	}
+	catch (NoSuchMethodException e) {
+		CAT.warn("Virtual threads are not supported by this runtime; " + poolName +
+			" will use platform threads instead.");
+	}
+	catch (Exception e) {
+		CAT.warn("Failed to create the virtual thread factory; " + poolName +
+			" will use platform threads instead.", e);
+	}
+
+	return new CorePoolThreadFactory(poolName);
+}
+
+/**
+ * Submits a task with the declared priority. The task is started as soon as fewer than the
+ * maximum number of tasks are running and no task that sorts before it is waiting.
+ *
+ * @param task the task to submit
+ * @param priority for admitting this task
+ * @return a Future representing pending completion of the task
+ * @throws RejectedExecutionException if the executor has been shut down, or if no thread could
+ * be started for the task; the task is not kept in that case, so it may be submitted again
+ */
+@Override
+public <T> Future<T> submit(Callable<T> task, int priority) {
+	if (task == null) throw new NullPointerException();
+
+	if (mShutdown) {
+		throw new RejectedExecutionException("The executor has been shut down");
+	}
+
+	final PrioritizedTask<T> ftask = new PrioritizedTask<T>(task, priority, mSequence.incrementAndGet());
+	mQueue.offer(ftask);
+
+	try {
+		dispatch();
+	}
+	catch (RejectedExecutionException e) {
+		// a task that failed to start waits for the next dispatch, unless it is this one
+		if (mQueue.remove(ftask)) {
+			throw e;
+		}
+	}
+
+	return ftask;
+}
+
+/**
+ * Starts queued tasks for as long as there are free permits. A task no thread could be started
+ * for is queued again.
+ *
+ * @throws RejectedExecutionException if no thread could be started
+ */
+private void dispatch() {
+	while (!mQueue.isEmpty() && mPermits.tryAcquire()) {
+		final PrioritizedTask<?> ftask = mQueue.poll();
+
+		if (ftask == null) {
+			// somebody else took it, re-check the queue with the permit returned
+			mPermits.release();
+			continue;
+		}
+
+		try {
+			mThreadFactory.newThread(new Worker(ftask)).start();
+		}
+		catch (RuntimeException e) {
+			mPermits.release();
+			mQueue.offer(ftask);
+
+			throw new RejectedExecutionException("Failed to start a thread for task " + ftask, e);
+		}
+		catch (Error e) {
+			mPermits.release();
+			mQueue.offer(ftask);
+			throw e;
+		}
+	}
+}
+
+/**
+ * Takes the next queued task together with a permit for it.
+ *
+ * @return the task, or null if none is queued or no permit is free
+ */
+private PrioritizedTask<?> poll() {
+	if (!mPermits.tryAcquire()) {
+		return null;
+	}
+
+	PrioritizedTask<?> ftask = mQueue.poll();
+
+	if (ftask == null) {
+		mPermits.release();
+	}
+
+	return ftask;
+}
+
+/* (non-Javadoc)
+ * @see com.activities.utils.PriorityExecutor#purge()
+ */
+@Override
+public void purge() {
+	for (Iterator<PrioritizedTask<?>> it = mQueue.iterator(); it.hasNext();) {
+		if (it.next().isCancelled()) {
+			it.remove();
+		}
+	}
+}
+
+/**
+ * Stops accepting new tasks. As the contract of {@link PriorityExecutor#shutdown()} requires,
+ * tasks that are queued already are still started as permits become free.
+ */
+@Override
+public void shutdown() {
+	mShutdown = true;
+}
+
+/* (non-Javadoc)
+ * @see com.activities.utils.PriorityExecutor#isShutdown()
+ */
+@Override
+public boolean isShutdown() {
+	return mShutdown;
+}
+
+/**
+ * @return the maximum number of tasks allowed to run at the same time
+ */
+public int getMaxConcurrency() {
+	return mMaxConcurrency;
+}
+
+/**
+ * @return the number of tasks that are currently running
+ */
+public int getActiveCount() {
+	return mMaxConcurrency - mPermits.availablePermits();
+}
+
+/**
+ * @return the number of tasks waiting to be admitted
+ */
+public int getQueueSize() {
+	return mQueue.size();
+}
+
+/**
+ * Runs a task on a thread of its own. If no thread can be started for the next queued task once
+ * it is done, the thread runs that task itself, so that queued tasks are not stranded while no
+ * other task is running.
+ */
+private class Worker implements Runnable {
+
+	private PrioritizedTask<?> mTask;
+
+	private Worker(PrioritizedTask<?> task) {
+		mTask = task;
+	}
+
+	@Override
+	public void run() {
+		while (mTask != null) {
+			try {
+				mTask.run();
+			}
+			finally {
+				mTask = null;
+				mPermits.release();
+			}
+
+			try {
+				dispatch();
+			}
+			catch (RejectedExecutionException e) {
+				CAT.warn("Failed to start a thread; running the next task on the current one.", e);
+				mTask = poll();
+			}
+		}
+	}
+}
+
+/**
+ * A FutureTask that implements Comparable so that we can sort it within the Queue
+ * @param <V>
+ */
+private static class PrioritizedTask<V> extends FutureTask<V> implements Comparable<PrioritizedTask<?>> {
+
+	private final int mPriority;
+	private final long mSequence;
+
+	private PrioritizedTask(Callable<V> callable, int priority, long sequence) {
+		super(callable);
+		mPriority = priority;
+		mSequence = sequence;
+	}
+
+	@Override
+	public int compareTo(PrioritizedTask<?> compare) {
+		if (compare == this) {
+			return 0;
+		}
+
+		if (mPriority == compare.mPriority) {
+			return (mSequence > compare.mSequence) ? 1 : -1;
+		}
+
+		return (mPriority > compare.mPriority) ? 1 : -1;
+	}
+
+	@Override
+	public String toString() {
+		return "PrioritizedTask [mPriority=" + mPriority + ", mSequence=" + mSequence + "]";
+	}
+}
+
+}
@@ -0,0 +1,121 @@
+package com.activities.utils;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link PriorityExecutor} backed by a {@link ForkJoinPool} in asynchronous mode. Every worker
+ * owns a deque of tasks and idle workers steal from the others, so there is no single queue
+ * that all submissions and takes contend on.
+ * <p/>
+ * Tasks submitted from one of the pool's own workers are pushed onto that worker's deque, which
+ * keeps work that becomes ready on completion of a task local to the worker that completed it.
+ * Tasks submitted from any other thread go through the pool's shared submission queues.
+ * <p/>
+ * A worker waiting for a task of the pool runs that task, or others, while it waits. A thread
+ * outside the pool cannot: it blocks until a worker has run the task.
+ * <p/>
+ * Priorities are <strong>not</strong> honored. Deques are processed in first-in-first-out order.
+ * Cancelling a task does not interrupt it if it is already running.
+ */
+public class WorkStealingPool implements PriorityExecutor {
+
+private final ForkJoinPool mPool;
+
+/**
+ * Creates a work stealing pool.
+ *
+ * @param parallelism the number of worker threads
+ * @param poolName the name used as prefix for the worker threads
+ */
+public WorkStealingPool(int parallelism, String poolName) {
+	mPool = new ForkJoinPool(parallelism, new NamedWorkerThreadFactory(poolName), null, true);
+}
+
+/**
+ * Submits a task. The priority is ignored.
+ *
+ * @param task the task to submit
+ * @param priority ignored
+ * @return a Future representing pending completion of the task
+ */
+@Override
+public <T> Future<T> submit(Callable<T> task, int priority) {
+	if (task == null) throw new NullPointerException();
+
+	final Thread currentThread = Thread.currentThread();
+
+	if (currentThread instanceof ForkJoinWorkerThread
+		&& ((ForkJoinWorkerThread)currentThread).getPool() == mPool) {
+		// push onto the deque of the submitting worker
+		return ForkJoinTask.adapt(task).fork();
+	}
+
+	return mPool.submit(task);
+}
+
+/**
+ * Does nothing. Tasks cannot be removed from the deques of the workers; cancelled tasks are
+ * skipped when a worker reaches them.
+ */
+@Override
+public void purge() {
+}
+
+/* (non-Javadoc)
+ * @see com.activities.utils.PriorityExecutor#shutdown()
+ */
+@Override
+public void shutdown() {
+	mPool.shutdown();
+}
+
+/* (non-Javadoc)
+ * @see com.activities.utils.PriorityExecutor#isShutdown()
+ */
+@Override
+public boolean isShutdown() {
+	return mPool.isShutdown();
+}
+
+/**
+ * @return the number of worker threads
+ */
+public int getParallelism() {
+	return mPool.getParallelism();
+}
+
+/**
+ * @return an estimate of the number of tasks stolen from one worker's deque by another
+ */
+public long getStealCount() {
+	return mPool.getStealCount();
+}
+
+/**
+ * Creates daemon worker threads that share a common naming pattern.
+ */
+private static final class NamedWorkerThreadFactory implements ForkJoinWorkerThreadFactory {
+	private final String mPoolName;
+	private final AtomicLong mThreadNumber = new AtomicLong(0);
+
+	private NamedWorkerThreadFactory(String poolName) {
+		mPoolName = poolName;
+	}
+
+	@Override
+	public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+		final ForkJoinWorkerThread result = new ForkJoinWorkerThread(pool) {};
+		result.setName(mPoolName + "-" + mThreadNumber.getAndIncrement());
+		result.setDaemon(true);
+
+		return result;
+	}
+}
+
+}
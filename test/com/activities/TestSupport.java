@@ -0,0 +1,130 @@
+package com.activities;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import com.activities.api.ActivityAction;
+import com.activities.api.Tag;
+
+/**
+ * Runs the behavioural tests of the activities service without a test framework. Every static
+ * method of a test class whose name starts with "test" is a test. A test fails by throwing.
+ */
+public class TestSupport {
+	// Operations
+	
+	/**
+	 * Runs the tests of the class and exits with a non-zero status if any of them failed.
+	 *
+	 * @param testClass The test class.
+	 */
+	public static void runTests(Class<?> testClass) {
+		int failedCount = 0;
+		int count = 0;
+	
+		for (Method method : testClass.getDeclaredMethods()) {
+			if (!method.getName().startsWith("test") || !Modifier.isStatic(method.getModifiers())) {
+				continue;
+			}
+	
+			count++;
+	
+			try {
+				method.setAccessible(true);
+				method.invoke(null);
+				System.out.println("PASS " + testClass.getSimpleName() + "." + method.getName());
+			}
+			catch (InvocationTargetException e) {
+				failedCount++;
+				System.out.println("FAIL " + testClass.getSimpleName() + "." + method.getName());
+				e.getCause().printStackTrace(System.out);
+			}
+			catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	
+		System.out.println(testClass.getSimpleName() + ": " + (count - failedCount) + " of " + count +
+			" test(s) passed.");
+	
+		if (failedCount > 0) {
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * @param condition The condition that has to hold.
+	 * @param message The message of the failure if it does not.
+	 */
+	public static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+	
+	// Inner classes
+	
+	/**
+	 * An action that sleeps and then returns a fixed result, counting its attempts.
+	 */
+	public static class SleepingAction implements ActivityAction {
+		// Attributes
+	
+		private final String mName;
+		private final long mSleepMs;
+		private final ExecutionResultType mResult;
+		private volatile int mAttemptCount;
+		private volatile String mThreadName;
+	
+		// Constructors
+	
+		public SleepingAction(String name, long sleepMs, ExecutionResultType result) {
+			mName = name;
+			mSleepMs = sleepMs;
+			mResult = result;
+		}
+	
+		// Operations
+	
+		public int getAttemptCount() {
+			return mAttemptCount;
+		}
+	
+		public String getThreadName() {
+			return mThreadName;
+		}
+	
+		@Override
+		public ExecutionResultType perform() throws InterruptedException {
+			mAttemptCount++;
+			mThreadName = Thread.currentThread().getName();
+	
+			if (mSleepMs > 0) {
+				Thread.sleep(mSleepMs);
+			}
+	
+			return mResult;
+		}
+	
+		@Override
+		public boolean canRetry() {
+			return false;
+		}
+	
+		@Override
+		public String getName() {
+			return mName;
+		}
+	
+		@Override
+		public Tag[] getTags() {
+			return null;
+		}
+	
+		@Override
+		public boolean isEnabled() {
+			return true;
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package com.activities.impl;
+
+import static com.activities.TestSupport.check;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.activities.TestSupport;
+import com.activities.TestSupport.SleepingAction;
+import com.activities.api.ActivityAction.ExecutionResultType;
+import com.activities.api.ActivityCycleSchedule;
+
+/**
+ * Tests that the cycles of a schedule never overlap, and that triggers arriving while a cycle
+ * executes are coalesced into one cycle rather than queued up.
+ */
+public class ActivityCycleScheduleTest {
+	public static void main(String[] args) {
+		TestSupport.runTests(ActivityCycleScheduleTest.class);
+	}
+	
+	static void testTriggersDuringCycleAreCoalesced() throws Exception {
+		ActivityServiceImpl service = new ActivityServiceImpl("schedules", 4, 100, 60, TimeUnit.SECONDS);
+		CountingAction action = new CountingAction(300);
+	
+		try {
+			service.add(service.create(action));
+	
+			// only the explicit triggers start cycles
+			ActivityCycleSchedule schedule = service.scheduleWithFixedDelay(1, 1, 0, TimeUnit.HOURS, true);
+	
+			schedule.trigger();
+	
+			while (action.getAttemptCount() == 0) {
+				Thread.sleep(5);
+			}
+	
+			for (int i = 0; i < 5; i++) {
+				schedule.trigger();
+			}
+	
+			for (int i = 0; i < 200 && (schedule.getCycleCount() < 2 || schedule.isRunning()); i++) {
+				Thread.sleep(10);
+			}
+	
+			// a third cycle would have started by now
+			Thread.sleep(100);
+			schedule.cancel(false);
+	
+			check(schedule.getCycleCount() == 2, schedule.getCycleCount() + " cycles executed");
+			check(schedule.getCoalescedTriggerCount() == 5, schedule.getCoalescedTriggerCount() +
+				" triggers were coalesced");
+			check(action.getMaxConcurrency() == 1, action.getMaxConcurrency() + " cycles overlapped");
+		}
+		finally {
+			service.shutdown();
+		}
+	}
+	
+	static void testFixedRateSkipsOverrunPeriods() throws Exception {
+		ActivityServiceImpl service = new ActivityServiceImpl("schedules", 4, 100, 60, TimeUnit.SECONDS);
+		CountingAction action = new CountingAction(350);
+	
+		try {
+			service.add(service.create(action));
+	
+			ActivityCycleSchedule schedule = service.scheduleAtFixedRate(0, 100, 0, TimeUnit.MILLISECONDS, true);
+	
+			Thread.sleep(1000);
+			schedule.cancel(false);
+	
+			while (schedule.isRunning()) {
+				Thread.sleep(10);
+			}
+	
+			long cycleCount = schedule.getCycleCount();
+	
+			Thread.sleep(300);
+	
+			check(action.getMaxConcurrency() == 1, action.getMaxConcurrency() + " cycles overlapped");
+			check(cycleCount >= 2 && cycleCount <= 4, cycleCount + " cycles executed in a second");
+			check(schedule.getCycleCount() == cycleCount, "A cycle executed after the schedule was cancelled");
+			check(schedule.getOverrunCount() == cycleCount, schedule.getOverrunCount() + " of " + cycleCount +
+				" cycles overran their period");
+			check(schedule.getMaxOverrun(TimeUnit.MILLISECONDS) >= 200, "The longest overrun was " +
+				schedule.getMaxOverrun(TimeUnit.MILLISECONDS) + " ms");
+			check(schedule.getCoalescedTriggerCount() >= cycleCount, "Only " + schedule.getCoalescedTriggerCount() +
+				" periods were skipped");
+		}
+		finally {
+			service.shutdown();
+		}
+	}
+	
+	// Inner classes
+	
+	/**
+	 * An action that sleeps and records how many of its attempts overlapped at most.
+	 */
+	private static class CountingAction extends SleepingAction {
+		// Attributes
+	
+		private final AtomicInteger mConcurrency = new AtomicInteger();
+		private volatile int mMaxConcurrency;
+	
+		// Constructors
+	
+		private CountingAction(long sleepMs) {
+			super("counting", sleepMs, ExecutionResultType.SUCCESS);
+		}
+	
+		// Operations
+	
+		private int getMaxConcurrency() {
+			return mMaxConcurrency;
+		}
+	
+		@Override
+		public ExecutionResultType perform() throws InterruptedException {
+			int concurrency = mConcurrency.incrementAndGet();
+	
+			synchronized (this) {
+				mMaxConcurrency = Math.max(mMaxConcurrency, concurrency);
+			}
+	
+			try {
+				return super.perform();
+			}
+			finally {
+				mConcurrency.decrementAndGet();
+			}
+		}
+	}
+}
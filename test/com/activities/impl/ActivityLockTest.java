@@ -0,0 +1,143 @@
+package com.activities.impl;
+
+import static com.activities.TestSupport.check;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.activities.TestSupport;
+import com.activities.TestSupport.SleepingAction;
+import com.activities.api.Activity;
+import com.activities.api.ActivityAction.ExecutionResultType;
+
+/**
+ * Tests that the lock of an activity is not held while its action is performed, so that other
+ * executions and callers reading its state are not blocked by a long attempt.
+ */
+public class ActivityLockTest {
+	public static void main(String[] args) {
+		TestSupport.runTests(ActivityLockTest.class);
+	}
+	
+	static void testStateIsReadableWhilePerforming() throws Exception {
+		ActivityServiceImpl service = new ActivityServiceImpl("lock", 4, 100, 60, TimeUnit.SECONDS);
+		BlockingAction slow = new BlockingAction();
+		SleepingAction otherAction = new SleepingAction("other", 0, ExecutionResultType.SUCCESS);
+		Execution first = null;
+		Execution second = null;
+		
+		try {
+			final Activity slowActivity = service.create(slow);
+			Activity other = service.create(otherAction);
+			
+			service.add(slowActivity, other);
+			
+			first = new Execution(service, Arrays.asList(slowActivity), false);
+			first.start();
+			
+			check(slow.mStarted.await(5, TimeUnit.SECONDS), "The slow activity did not start");
+			
+			final boolean[] state = new boolean[2];
+			Thread reader = new Thread() {
+				@Override
+				public void run() {
+					state[0] = slowActivity.isEnabled();
+					state[1] = slowActivity.isExecuting();
+				}
+			};
+			
+			reader.start();
+			reader.join(1000);
+			
+			check(!reader.isAlive(), "Reading the state of the activity waited for its action");
+			check(state[0] && state[1], "The performing activity was not reported as enabled and executing");
+			
+			// the second execution also sees the slow activity, which it must not wait for to run the other one
+			second = new Execution(service, Arrays.asList(other, slowActivity), true);
+			second.start();
+			
+			long start = System.nanoTime();
+			
+			while (otherAction.getAttemptCount() == 0 && System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1)) {
+				Thread.sleep(10);
+			}
+			
+			check(otherAction.getAttemptCount() == 1, "The other activity waited for the slow one of another execution");
+			
+			slow.mRelease.countDown();
+			
+			first.join(5000);
+			second.join(5000);
+			
+			check(!first.isAlive() && first.mFailure == null, "The first execution did not complete");
+			check(!second.isAlive() && second.mFailure == null, "The second execution did not complete");
+			check(!slowActivity.isEnabled(), "The activity was not disabled as its action asked");
+		}
+		finally {
+			slow.mRelease.countDown();
+			service.shutdown();
+		}
+	}
+	
+	// Inner classes
+	
+	/**
+	 * An action that blocks until released and then asks for its activity to be disabled.
+	 */
+	private static class BlockingAction extends SleepingAction {
+		// Attributes
+		
+		private final CountDownLatch mStarted = new CountDownLatch(1);
+		private final CountDownLatch mRelease = new CountDownLatch(1);
+		
+		// Constructors
+		
+		private BlockingAction() {
+			super("slow", 0, ExecutionResultType.DISABLE);
+		}
+		
+		// Operations
+		
+		@Override
+		public ExecutionResultType perform() throws InterruptedException {
+			mStarted.countDown();
+			mRelease.await();
+			
+			return super.perform();
+		}
+	}
+	
+	/**
+	 * A thread executing some of the activities of the service, keeping the failure if any.
+	 */
+	private static class Execution extends Thread {
+		// Attributes
+		
+		private final ActivityServiceImpl mService;
+		private final List<Activity> mActivityList;
+		private final boolean mParallel;
+		private volatile Throwable mFailure;
+		
+		// Constructors
+		
+		private Execution(ActivityServiceImpl service, List<Activity> activityList, boolean parallel) {
+			mService = service;
+			mActivityList = activityList;
+			mParallel = parallel;
+		}
+		
+		// Operations
+		
+		@Override
+		public void run() {
+			try {
+				mService.executeFiltered(mActivityList, mParallel);
+			}
+			catch (Throwable e) {
+				mFailure = e;
+			}
+		}
+	}
+}
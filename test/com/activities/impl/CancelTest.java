@@ -0,0 +1,139 @@
+package com.activities.impl;
+
+import static com.activities.TestSupport.check;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.activities.TestSupport;
+import com.activities.TestSupport.SleepingAction;
+import com.activities.api.Activity;
+import com.activities.api.ActivityAction.ExecutionResultType;
+import com.activities.api.ActivityCycle;
+
+/**
+ * Tests that cancelling a long cycle stops submitting its activities, interrupts the running
+ * ones only if asked to, and lets those waiting for the cycle return right away.
+ */
+public class CancelTest {
+	public static void main(String[] args) {
+		TestSupport.runTests(CancelTest.class);
+	}
+	
+	static void testCancelInterruptsRunningActivities() throws Exception {
+		runCancel(true, true);
+	}
+	
+	static void testCancelInterruptsRunningActivitiesSequentially() throws Exception {
+		runCancel(false, true);
+	}
+	
+	static void testCancelLetsRunningActivitiesFinish() throws Exception {
+		runCancel(true, false);
+	}
+	
+	static void testCancelLetsRunningActivitiesFinishSequentially() throws Exception {
+		runCancel(false, false);
+	}
+	
+	private static void runCancel(boolean parallel, boolean mayInterruptIfRunning) throws Exception {
+		ActivityServiceImpl service = new ActivityServiceImpl("cancel", 4, 100, 60, TimeUnit.SECONDS);
+		BlockingAction blocking = new BlockingAction();
+		SleepingAction[] followers = new SleepingAction[20];
+		
+		try {
+			Activity blockingActivity = service.create(blocking);
+			
+			service.add(blockingActivity);
+			
+			for (int i = 0; i < followers.length; i++) {
+				followers[i] = new SleepingAction("follower" + i, 0, ExecutionResultType.SUCCESS);
+				
+				Activity follower = service.create(followers[i]);
+				
+				service.add(follower);
+				service.before(blockingActivity, follower);
+			}
+			
+			ActivityCycle cycle = service.submitAll(parallel);
+			
+			check(blocking.mStarted.await(5, TimeUnit.SECONDS), "The blocking activity did not start");
+			
+			long start = System.nanoTime();
+			
+			check(cycle.cancel(mayInterruptIfRunning), "The cycle could not be cancelled");
+			
+			boolean cancelled = false;
+			
+			try {
+				cycle.await(5, TimeUnit.SECONDS);
+			}
+			catch (CancellationException e) {
+				cancelled = true;
+			}
+			
+			long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			
+			check(cancelled && cycle.isCancelled(), "Waiting for the cancelled cycle did not report its cancellation");
+			check(elapsedMs < 1000, "Cancelling took " + elapsedMs + " ms");
+			
+			if (mayInterruptIfRunning) {
+				check(blocking.mInterrupted.await(1, TimeUnit.SECONDS), "The running activity was not interrupted");
+			}
+			else {
+				check(blocking.mInterrupted.getCount() == 1, "The running activity was interrupted");
+				
+				blocking.mRelease.countDown();
+			}
+			
+			// the dependents would have been submitted by now if the cycle went on
+			Thread.sleep(300);
+			
+			for (SleepingAction follower : followers) {
+				check(follower.getAttemptCount() == 0, follower.getName() + " was executed after the cycle was cancelled");
+			}
+		}
+		finally {
+			blocking.mRelease.countDown();
+			service.shutdown();
+		}
+	}
+	
+	// Inner classes
+	
+	/**
+	 * An action that blocks interruptibly until released.
+	 */
+	private static class BlockingAction extends SleepingAction {
+		// Attributes
+		
+		private final CountDownLatch mStarted = new CountDownLatch(1);
+		private final CountDownLatch mRelease = new CountDownLatch(1);
+		private final CountDownLatch mInterrupted = new CountDownLatch(1);
+		
+		// Constructors
+		
+		private BlockingAction() {
+			super("blocking", 0, ExecutionResultType.SUCCESS);
+		}
+		
+		// Operations
+		
+		@Override
+		public ExecutionResultType perform() throws InterruptedException {
+			mStarted.countDown();
+			
+			try {
+				mRelease.await();
+			}
+			catch (InterruptedException e) {
+				mInterrupted.countDown();
+				
+				throw e;
+			}
+			
+			return super.perform();
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package com.activities.impl;
+
+import static com.activities.TestSupport.check;
+
+import java.util.concurrent.TimeUnit;
+
+import com.activities.TestSupport;
+import com.activities.TestSupport.SleepingAction;
+import com.activities.api.Activity;
+import com.activities.api.ActivityAction.ExecutionResultType;
+import com.activities.api.ActivityException;
+import com.activities.api.TimeLimitedAction;
+
+/**
+ * Tests that an attempt that hangs past its timeout is interrupted and treated as a failure
+ * while the rest of the cycle completes, and that a cycle gives up on an activity that ignores
+ * being interrupted once the grace period after its deadline has passed.
+ */
+public class DeadlineTest {
+	public static void main(String[] args) {
+		TestSupport.runTests(DeadlineTest.class);
+	}
+	
+	static void testHungActionIsInterruptedAndFails() throws Exception {
+		runHungAction(true);
+	}
+	
+	static void testHungActionIsInterruptedAndFailsSequentially() throws Exception {
+		runHungAction(false);
+	}
+	
+	static void testCycleGivesUpOnActivityIgnoringInterrupts() throws Exception {
+		ActivityServiceImpl service = new ActivityServiceImpl("deadline", 4, 100, 60, TimeUnit.SECONDS);
+		StubbornAction stubborn = new StubbornAction();
+		SleepingAction other = new SleepingAction("other", 0, ExecutionResultType.SUCCESS);
+		long deadlineMs = 200;
+		long graceMs = Long.getLong("com.quest.glue.activityCycleDeadlineGrace.ms", 1000);
+		boolean failed = false;
+		
+		try {
+			service.add(service.create(stubborn), service.create(other));
+			
+			long start = System.nanoTime();
+			
+			try {
+				service.executeAll(true, deadlineMs, TimeUnit.MILLISECONDS);
+			}
+			catch (ActivityException e) {
+				failed = true;
+			}
+			
+			long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			
+			check(failed, "The cycle did not fail although an activity was still executing past its deadline");
+			check(elapsedMs < deadlineMs + graceMs + 1000, "The cycle gave up after " +
+				elapsedMs + " ms instead of after the grace period");
+			check(other.getAttemptCount() == 1, "The other activity was not executed");
+		}
+		finally {
+			stubborn.mStop = true;
+			service.shutdown();
+		}
+	}
+	
+	private static void runHungAction(boolean parallel) throws Exception {
+		ActivityServiceImpl service = new ActivityServiceImpl("deadline", 4, 100, 60, TimeUnit.SECONDS);
+		HungAction hung = new HungAction();
+		SleepingAction dependent = new SleepingAction("dependent", 0, ExecutionResultType.SUCCESS);
+		SleepingAction sibling = new SleepingAction("sibling", 0, ExecutionResultType.SUCCESS);
+		SleepingAction siblingDependent = new SleepingAction("siblingDependent", 0, ExecutionResultType.SUCCESS);
+		
+		try {
+			Activity hungActivity = service.create(hung);
+			Activity dependentActivity = service.create(dependent);
+			Activity siblingActivity = service.create(sibling);
+			Activity siblingDependentActivity = service.create(siblingDependent);
+			
+			service.add(hungActivity, dependentActivity, siblingActivity, siblingDependentActivity);
+			service.before(hungActivity, dependentActivity);
+			service.before(siblingActivity, siblingDependentActivity);
+			
+			long start = System.nanoTime();
+			
+			service.executeAll(parallel);
+			
+			long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			
+			check(elapsedMs < HungAction.TIMEOUT_MS + 2000, "The cycle took " + elapsedMs + " ms");
+			check(hung.mInterrupted, "The hung attempt was not interrupted");
+			check(hungActivity.isEnabled(), "The timed out attempt was not treated as a failure");
+			check(dependent.getAttemptCount() == 0, "The dependent of the hung activity was executed");
+			check(sibling.getAttemptCount() == 1 && siblingDependent.getAttemptCount() == 1,
+				"The rest of the cycle did not complete");
+		}
+		finally {
+			service.shutdown();
+		}
+	}
+	
+	// Inner classes
+	
+	/**
+	 * An action that blocks interruptibly far longer than its timeout.
+	 */
+	private static class HungAction extends SleepingAction implements TimeLimitedAction {
+		// Constants
+		
+		private static final long TIMEOUT_MS = 100;
+		
+		// Attributes
+		
+		private volatile boolean mInterrupted;
+		
+		// Constructors
+		
+		private HungAction() {
+			super("hung", TimeUnit.MINUTES.toMillis(1), ExecutionResultType.SUCCESS);
+		}
+		
+		// Operations
+		
+		@Override
+		public ExecutionResultType perform() throws InterruptedException {
+			try {
+				return super.perform();
+			}
+			catch (InterruptedException e) {
+				mInterrupted = true;
+				
+				throw e;
+			}
+		}
+		
+		@Override
+		public long getTimeout(TimeUnit unit) {
+			return unit.convert(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	/**
+	 * An action that keeps executing when interrupted, like a call that cannot be interrupted,
+	 * until it is stopped.
+	 */
+	private static class StubbornAction extends SleepingAction {
+		// Attributes
+		
+		private volatile boolean mStop;
+		
+		// Constructors
+		
+		private StubbornAction() {
+			super("stubborn", 0, ExecutionResultType.SUCCESS);
+		}
+		
+		// Operations
+		
+		@Override
+		public ExecutionResultType perform() throws InterruptedException {
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			
+			while (!mStop && System.nanoTime() < deadline) {
+				try {
+					Thread.sleep(10);
+				}
+				catch (InterruptedException e) {
+					// keeps going
+				}
+			}
+			
+			return super.perform();
+		}
+	}
+}
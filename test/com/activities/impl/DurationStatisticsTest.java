@@ -0,0 +1,74 @@
+package com.activities.impl;
+
+import static com.activities.TestSupport.check;
+
+import java.util.concurrent.TimeUnit;
+
+import com.activities.TestSupport;
+import com.activities.TestSupport.SleepingAction;
+import com.activities.api.Activity;
+import com.activities.api.ActivityAction.ExecutionResultType;
+
+/**
+ * Tests the duration estimates and percentiles of actions, and that the version of the statistics
+ * only changes once an estimate has moved far enough.
+ */
+public class DurationStatisticsTest {
+	public static void main(String[] args) {
+		TestSupport.runTests(DurationStatisticsTest.class);
+	}
+	
+	static void testPercentileRequestKeepsDefaultEstimate() throws Exception {
+		ActivityServiceImpl service = new ActivityServiceImpl();
+		DurationStatistics statistics = new DurationStatistics();
+		Activity asked = service.create(new SleepingAction("asked", 0, ExecutionResultType.SUCCESS));
+		Activity unknown = service.create(new SleepingAction("unknown", 0, ExecutionResultType.SUCCESS));
+	
+		check(statistics.getPercentile(asked, 95) == -1, "A percentile without durations");
+		check(statistics.getEstimate(asked).getAverage() == statistics.getEstimate(unknown).getAverage(),
+			"Asking for a percentile changed the estimate to " + statistics.getEstimate(asked).getAverage() + " us");
+	}
+	
+	static void testPercentileOfRecordedDurations() throws Exception {
+		ActivityServiceImpl service = new ActivityServiceImpl();
+		DurationStatistics statistics = new DurationStatistics();
+		Activity activity = service.create(new SleepingAction("recorded", 0, ExecutionResultType.SUCCESS));
+	
+		statistics.getPercentile(activity, 95);
+	
+		for (int i = 1; i <= 100; i++) {
+			statistics.record(activity, TimeUnit.MILLISECONDS.toNanos(i));
+		}
+	
+		check(statistics.getPercentile(activity, 95) == TimeUnit.MILLISECONDS.toNanos(95),
+			"The 95th percentile is " + statistics.getPercentile(activity, 95) + " ns");
+		check(statistics.getEstimate(activity).getAverage() > TimeUnit.MILLISECONDS.toMicros(90),
+			"The moving average is " + statistics.getEstimate(activity).getAverage() + " us");
+	}
+	
+	static void testSteadyDurationsKeepVersion() throws Exception {
+		ActivityServiceImpl service = new ActivityServiceImpl();
+		DurationStatistics statistics = new DurationStatistics();
+		Activity activity = service.create(new SleepingAction("steady", 0, ExecutionResultType.SUCCESS));
+		DurationStatistics.Estimate estimate = statistics.getEstimate(activity);
+	
+		check(statistics.getEstimate(activity) == estimate, "The estimate of the action was not kept");
+	
+		estimate.record(TimeUnit.MILLISECONDS.toNanos(10));
+	
+		long version = statistics.getVersion();
+	
+		for (int i = 0; i < 1000; i++) {
+			estimate.record(TimeUnit.MICROSECONDS.toNanos(9000 + (i % 3) * 1000));
+		}
+	
+		check(statistics.getVersion() == version, "Steady durations changed the version " +
+			(statistics.getVersion() - version) + " times");
+	
+		for (int i = 0; i < 10; i++) {
+			estimate.record(TimeUnit.MILLISECONDS.toNanos(50));
+		}
+	
+		check(statistics.getVersion() != version, "A five times longer duration did not change the version");
+	}
+}
@@ -0,0 +1,98 @@
+package com.activities.impl;
+
+import static com.activities.TestSupport.check;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.activities.TestSupport;
+import com.activities.TestSupport.SleepingAction;
+import com.activities.api.Activity;
+import com.activities.api.ActivityAction.ExecutionResultType;
+
+/**
+ * Tests that activities a full executor has no room for are submitted again later instead of
+ * being executed by the submitting thread.
+ */
+public class ExecutorSaturationTest {
+	public static void main(String[] args) {
+		TestSupport.runTests(ExecutorSaturationTest.class);
+	}
+	
+	static void testFullQueueDefersInsteadOfRunningInline() throws Exception {
+		ActivityServiceImpl service = new ActivityServiceImpl("saturated", 1, 1, 60, TimeUnit.SECONDS);
+		List<SleepingAction> actionList = new ArrayList<SleepingAction>();
+	
+		try {
+			for (int i = 0; i < 30; i++) {
+				SleepingAction action = new SleepingAction("a" + i, 2, ExecutionResultType.SUCCESS);
+	
+				actionList.add(action);
+				service.add(service.create(action));
+			}
+	
+			service.executeAll(true);
+		}
+		finally {
+			service.shutdown();
+		}
+	
+		for (SleepingAction action : actionList) {
+			check(action.getAttemptCount() == 1, action.getName() + " ran " + action.getAttemptCount() + " time(s)");
+			check(action.getThreadName().startsWith("saturated"),
+				action.getName() + " ran on " + action.getThreadName() + " instead of a worker");
+		}
+	}
+	
+	static void testChainsDoNotRecurseOnWorkers() throws Exception {
+		ActivityServiceImpl service = new ActivityServiceImpl("chains", 1, 1, 60, TimeUnit.SECONDS);
+		final AtomicInteger minDepth = new AtomicInteger(Integer.MAX_VALUE);
+		final AtomicInteger maxDepth = new AtomicInteger();
+		final AtomicInteger count = new AtomicInteger();
+	
+		try {
+			// two chains competing for one worker and a queue of one
+			for (int chain = 0; chain < 2; chain++) {
+				Activity previous = null;
+	
+				for (int i = 0; i < 100; i++) {
+					Activity activity = service.create(new SleepingAction("c" + chain + "-" + i, 0,
+						ExecutionResultType.SUCCESS) {
+						@Override
+						public ExecutionResultType perform() throws InterruptedException {
+							int depth = Thread.currentThread().getStackTrace().length;
+	
+							synchronized (count) {
+								minDepth.set(Math.min(minDepth.get(), depth));
+								maxDepth.set(Math.max(maxDepth.get(), depth));
+							}
+	
+							count.incrementAndGet();
+	
+							return super.perform();
+						}
+					});
+	
+					service.add(activity);
+	
+					if (previous != null) {
+						service.before(previous, activity);
+					}
+	
+					previous = activity;
+				}
+			}
+	
+			service.executeAll(true);
+		}
+		finally {
+			service.shutdown();
+		}
+	
+		check(count.get() == 200, count.get() + " of 200 activities ran");
+		check(maxDepth.get() - minDepth.get() < 50, "Activities ran nested " +
+			(maxDepth.get() - minDepth.get()) + " frames deep on the submitting thread");
+	}
+}
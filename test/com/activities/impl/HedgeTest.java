@@ -0,0 +1,136 @@
+package com.activities.impl;
+
+import static com.activities.TestSupport.check;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.activities.TestSupport;
+import com.activities.TestSupport.SleepingAction;
+import com.activities.api.Activity;
+import com.activities.api.ActivityAction.ExecutionResultType;
+import com.activities.api.HedgeableAction;
+
+/**
+ * Tests that a hedge that succeeds first completes the activity and releases its dependents
+ * without waiting for the first attempt, whose result is discarded whenever it returns.
+ */
+public class HedgeTest {
+	public static void main(String[] args) {
+		TestSupport.runTests(HedgeTest.class);
+	}
+	
+	static void testHedgeReleasesDependentsBeforeStragglerReturns() throws Exception {
+		ActivityServiceImpl service = new ActivityServiceImpl("hedge", 4, 100, 60, TimeUnit.SECONDS);
+		final AtomicLong dependentStart = new AtomicLong();
+		StragglingAction fetch = new StragglingAction();
+		
+		try {
+			Activity fetchActivity = service.create(fetch);
+			Activity dependent = service.create(new SleepingAction("dependent", 0, ExecutionResultType.SUCCESS) {
+				@Override
+				public ExecutionResultType perform() throws InterruptedException {
+					dependentStart.set(System.nanoTime());
+					
+					return super.perform();
+				}
+			});
+			
+			service.add(fetchActivity, dependent);
+			service.before(fetchActivity, dependent);
+			
+			// records enough durations for the action to be hedged
+			for (int i = 0; i < 30; i++) {
+				service.executeAll(true);
+			}
+			
+			fetch.mStraggle.set(true);
+			
+			long start = System.nanoTime();
+			
+			service.executeAll(true);
+			
+			long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			long dependentMs = TimeUnit.NANOSECONDS.toMillis(dependentStart.get() - start);
+			
+			check(elapsedMs < StragglingAction.STRAGGLE_MS / 2, "The execution waited " + elapsedMs +
+				" ms for the straggling attempt");
+			check(dependentMs < StragglingAction.STRAGGLE_MS / 2, "The dependent started after " + dependentMs +
+				" ms");
+			
+			// the activity may be executed again while the straggler is still performing
+			start = System.nanoTime();
+			service.executeAll(true);
+			elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			
+			check(elapsedMs < StragglingAction.STRAGGLE_MS / 2, "The next execution waited " + elapsedMs +
+				" ms for the straggling attempt");
+			
+			fetch.awaitStraggler();
+			
+			check(fetchActivity.isEnabled(), "The discarded result of the straggling attempt disabled the activity");
+		}
+		finally {
+			service.shutdown();
+		}
+	}
+	
+	// Inner classes
+	
+	/**
+	 * A hedgeable action whose first attempt after straggling is requested ignores interrupts
+	 * and returns {@link ExecutionResultType#DISABLE} long after the others have succeeded.
+	 */
+	private static class StragglingAction extends SleepingAction implements HedgeableAction {
+		// Constants
+		
+		private static final long STRAGGLE_MS = 2000;
+		
+		// Attributes
+		
+		private final AtomicBoolean mStraggle = new AtomicBoolean();
+		private final AtomicBoolean mStraggling = new AtomicBoolean();
+		
+		// Constructors
+		
+		private StragglingAction() {
+			super("fetch", 5, ExecutionResultType.SUCCESS);
+		}
+		
+		// Operations
+		
+		private synchronized void awaitStraggler() throws InterruptedException {
+			while (mStraggle.get() || mStraggling.get()) {
+				wait();
+			}
+		}
+		
+		@Override
+		public ExecutionResultType perform() throws InterruptedException {
+			if (!mStraggle.compareAndSet(true, false)) {
+				return super.perform();
+			}
+			
+			mStraggling.set(true);
+			
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(STRAGGLE_MS);
+			
+			while (System.nanoTime() < deadline) {
+				try {
+					Thread.sleep(10);
+				}
+				catch (InterruptedException e) {
+					// keeps going, like a call that cannot be interrupted
+				}
+			}
+			
+			synchronized (this) {
+				mStraggling.set(false);
+				notifyAll();
+			}
+			
+			return ExecutionResultType.DISABLE;
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.activities.impl;
+
+import static com.activities.TestSupport.check;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.activities.TestSupport;
+import com.activities.TestSupport.SleepingAction;
+import com.activities.api.Activity;
+import com.activities.api.ActivityAction.ExecutionResultType;
+import com.activities.api.ActivityGroup;
+import com.activities.utils.VirtualThreadExecutor;
+import com.activities.utils.WorkStealingPool;
+
+/**
+ * Tests that nested multi-threaded groups complete on every executor backend even though there
+ * are fewer workers than groups waiting for their activities.
+ */
+public class NestedGroupTest {
+	public static void main(String[] args) {
+		TestSupport.runTests(NestedGroupTest.class);
+	}
+	
+	static void testPriorityThreadPool() throws Exception {
+		checkNestedGroups(new ActivityServiceImpl("nested", 2, 100, 60, TimeUnit.SECONDS));
+	}
+	
+	static void testWorkStealingPool() throws Exception {
+		checkNestedGroups(new ActivityServiceImpl(new WorkStealingPool(2, "nested")));
+	}
+	
+	static void testVirtualThreadExecutor() throws Exception {
+		checkNestedGroups(new ActivityServiceImpl(new VirtualThreadExecutor(2, "nested")));
+	}
+	
+	private static void checkNestedGroups(ActivityServiceImpl service) throws Exception {
+		final AtomicInteger count = new AtomicInteger();
+	
+		try {
+			for (int g = 0; g < 4; g++) {
+				ActivityGroup outerGroup = service.createGroup("G" + g);
+	
+				outerGroup.setIsMultiThreaded(true);
+				service.add(outerGroup);
+	
+				for (int h = 0; h < 3; h++) {
+					ActivityGroup innerGroup = service.createGroup("G" + g + "." + h);
+	
+					innerGroup.setIsMultiThreaded(true);
+					outerGroup.add(innerGroup);
+	
+					for (int a = 0; a < 5; a++) {
+						Activity activity = service.create(new SleepingAction("a" + g + h + a, 5,
+							ExecutionResultType.SUCCESS) {
+							@Override
+							public ExecutionResultType perform() throws InterruptedException {
+								count.incrementAndGet();
+	
+								return super.perform();
+							}
+						});
+	
+						innerGroup.add(activity);
+					}
+				}
+			}
+	
+			// in parallel, from the workers, and sequentially, from the calling thread
+			service.executeAll(true, 20, TimeUnit.SECONDS);
+			check(count.get() == 60, count.get() + " of 60 activities ran in parallel");
+	
+			count.set(0);
+			service.executeAll(false, 20, TimeUnit.SECONDS);
+			check(count.get() == 60, count.get() + " of 60 activities ran sequentially");
+		}
+		finally {
+			service.shutdown();
+		}
+	}
+}
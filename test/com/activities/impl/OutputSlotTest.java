@@ -0,0 +1,128 @@
+package com.activities.impl;
+
+import static com.activities.TestSupport.check;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.activities.TestSupport;
+import com.activities.TestSupport.SleepingAction;
+import com.activities.api.Activity;
+import com.activities.api.ActivityAction.ExecutionResultType;
+import com.activities.api.OutputSlot;
+
+/**
+ * Tests that outputs reach the dependents and are released once every dependent has completed
+ * or been skipped, including dependents skipped before the output was set.
+ */
+public class OutputSlotTest {
+	public static void main(String[] args) {
+		TestSupport.runTests(OutputSlotTest.class);
+	}
+	
+	static void testOutputReleasedAfterEarlySkip() throws Exception {
+		ActivityServiceImpl service = new ActivityServiceImpl("outputs", 4, 100, 60, TimeUnit.SECONDS);
+		final AtomicReference<OutputSlot<Object>> slot = new AtomicReference<OutputSlot<Object>>();
+		final AtomicReference<WeakReference<Object>> outputRef = new AtomicReference<WeakReference<Object>>();
+		final AtomicBoolean received = new AtomicBoolean();
+		final AtomicBoolean released = new AtomicBoolean();
+	
+		try {
+			Activity producer = service.create(new SleepingAction("producer", 100, ExecutionResultType.SUCCESS) {
+				@Override
+				public ExecutionResultType perform() throws InterruptedException {
+					ExecutionResultType result = super.perform();
+					Object output = new byte[1 << 20];
+	
+					outputRef.set(new WeakReference<Object>(output));
+					slot.get().set(output);
+	
+					return result;
+				}
+			});
+			Activity failing = service.create(new SleepingAction("failing", 0, ExecutionResultType.FAILURE));
+			Activity skipped = service.create(new SleepingAction("skipped", 0, ExecutionResultType.SUCCESS));
+			Activity reader = service.create(new SleepingAction("reader", 0, ExecutionResultType.SUCCESS) {
+				@Override
+				public ExecutionResultType perform() throws InterruptedException {
+					received.set(slot.get().get() != null);
+	
+					return super.perform();
+				}
+			});
+			Activity watcher = service.create(new SleepingAction("watcher", 0, ExecutionResultType.SUCCESS) {
+				@Override
+				public ExecutionResultType perform() throws InterruptedException {
+					// every dependent of the producer has completed or been skipped by now
+					for (int i = 0; i < 20 && outputRef.get().get() != null; i++) {
+						System.gc();
+						Thread.sleep(10);
+					}
+	
+					released.set(outputRef.get().get() == null);
+	
+					return super.perform();
+				}
+			});
+			// keeps the execution, and with it the outputs, alive while the watcher looks
+			Activity slow = service.create(new SleepingAction("slow", 1000, ExecutionResultType.SUCCESS));
+	
+			slot.set(service.createOutputSlot(producer, Object.class));
+			service.add(producer, failing, skipped, reader, watcher, slow);
+			service.before(failing, skipped);
+			service.before(producer, skipped, reader);
+			service.before(reader, watcher);
+	
+			service.executeAll(true);
+		}
+		finally {
+			service.shutdown();
+		}
+	
+		check(received.get(), "The reader did not receive the output");
+		check(released.get(), "The output was kept after its last dependent completed");
+	}
+	
+	static void testOutputIsNotSharedAcrossExecutions() throws Exception {
+		ActivityServiceImpl service = new ActivityServiceImpl("outputs", 4, 100, 60, TimeUnit.SECONDS);
+		final AtomicReference<OutputSlot<String>> slot = new AtomicReference<OutputSlot<String>>();
+		final AtomicReference<String> seen = new AtomicReference<String>();
+		final AtomicBoolean first = new AtomicBoolean(true);
+	
+		try {
+			Activity producer = service.create(new SleepingAction("producer", 0, ExecutionResultType.SUCCESS) {
+				@Override
+				public ExecutionResultType perform() throws InterruptedException {
+					if (first.getAndSet(false)) {
+						slot.get().set("first");
+					}
+	
+					return super.perform();
+				}
+			});
+			Activity reader = service.create(new SleepingAction("reader", 0, ExecutionResultType.SUCCESS) {
+				@Override
+				public ExecutionResultType perform() throws InterruptedException {
+					seen.set(slot.get().get());
+	
+					return super.perform();
+				}
+			});
+	
+			slot.set(service.createOutputSlot(producer, String.class));
+			service.add(producer, reader);
+			service.before(producer, reader);
+	
+			service.executeAll(true);
+			check("first".equals(seen.get()), "The reader saw " + seen.get());
+	
+			service.executeAll(true);
+			check(seen.get() == null, "The reader saw " + seen.get() + " from the previous execution");
+		}
+		finally {
+			service.shutdown();
+		}
+	}
+}
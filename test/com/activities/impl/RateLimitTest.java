@@ -0,0 +1,113 @@
+package com.activities.impl;
+
+import static com.activities.TestSupport.check;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.activities.TestSupport;
+import com.activities.TestSupport.SleepingAction;
+import com.activities.api.Activity;
+import com.activities.api.ActivityAction.ExecutionResultType;
+import com.activities.api.ActivityCycle;
+import com.activities.api.Resource;
+import com.activities.api.ResourceAction;
+import com.activities.api.Tag;
+
+/**
+ * Tests that activities take one permit of their rate limits per attempt, however often they
+ * are offered again while waiting for their resources.
+ */
+public class RateLimitTest {
+	public static void main(String[] args) {
+		TestSupport.runTests(RateLimitTest.class);
+	}
+	
+	static void testWaitingForResourcesKeepsPermits() throws Exception {
+		runWaitingForResources(true);
+	}
+	
+	static void testWaitingForResourcesKeepsPermitsSequentially() throws Exception {
+		runWaitingForResources(false);
+	}
+	
+	private static void runWaitingForResources(boolean parallel) throws Exception {
+		ActivityServiceImpl service = new ActivityServiceImpl("limits", 8, 100, 60, TimeUnit.SECONDS);
+		int count = 8;
+	
+		try {
+			Tag api = service.createTag("api");
+			Resource db = service.createResource("db", 1);
+	
+			// a permit for every activity, refilled slower than the activities take turns
+			service.setRateLimit(api, 5, count);
+	
+			List<Activity> limitedList = new ArrayList<Activity>();
+	
+			for (int i = 0; i < count; i++) {
+				limitedList.add(service.create(new LimitedAction("limited" + i, 30, api, db)));
+			}
+	
+			// holds the resource in another execution while the limited activities are offered
+			Activity holder = service.create(new LimitedAction("holder", 300, null, db));
+	
+			service.add(holder);
+			service.add(limitedList.toArray(new Activity[count]));
+	
+			ActivityCycle holding = service.submitFiltered(Collections.singletonList(holder), true);
+	
+			while (db.getAvailable() > 0) {
+				Thread.sleep(5);
+			}
+	
+			long start = System.nanoTime();
+	
+			service.executeFiltered(limitedList, parallel);
+			holding.await();
+	
+			long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			long throttleMs = service.getThrottleDelay(api, TimeUnit.MILLISECONDS);
+	
+			check(elapsedMs < 1500, "The execution took " + elapsedMs + " ms");
+			check(throttleMs == 0, "The tag is throttled for " + throttleMs + " ms after " + count +
+				" attempts");
+		}
+		finally {
+			service.shutdown();
+		}
+	}
+	
+	// Inner classes
+	
+	/**
+	 * An action carrying a tag that sleeps while holding a token of a resource.
+	 */
+	private static class LimitedAction extends SleepingAction implements ResourceAction {
+		// Attributes
+	
+		private final Tag mTag;
+		private final Resource mResource;
+	
+		// Constructors
+	
+		private LimitedAction(String name, long sleepMs, Tag tag, Resource resource) {
+			super(name, sleepMs, ExecutionResultType.SUCCESS);
+			mTag = tag;
+			mResource = resource;
+		}
+	
+		// Operations
+	
+		@Override
+		public Tag[] getTags() {
+			return (mTag != null) ? new Tag[] { mTag } : null;
+		}
+	
+		@Override
+		public Resource[] getResources() {
+			return new Resource[] { mResource };
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package com.activities.impl;
+
+import static com.activities.TestSupport.check;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import com.activities.TestSupport;
+import com.activities.TestSupport.SleepingAction;
+import com.activities.api.Activity;
+import com.activities.api.ActivityAction.ExecutionResultType;
+import com.activities.api.ActivityCycle;
+import com.activities.api.ActivityException;
+import com.activities.api.Resource;
+import com.activities.api.ResourceAction;
+
+/**
+ * Tests that activities waiting for resources neither wait for tokens that can never be free
+ * nor stay queued once their execution was cancelled.
+ */
+public class ResourceWaiterTest {
+	public static void main(String[] args) {
+		TestSupport.runTests(ResourceWaiterTest.class);
+	}
+	
+	static void testMoreTokensThanCapacityFails() throws Exception {
+		ActivityServiceImpl service = new ActivityServiceImpl("resources", 4, 100, 60, TimeUnit.SECONDS);
+		Throwable cause = null;
+	
+		try {
+			Resource db = service.createResource("db", 1);
+	
+			service.add(service.create(new UsingAction("greedy", 0, db, db)));
+	
+			try {
+				service.executeAll(true, 5, TimeUnit.SECONDS);
+			}
+			catch (ActivityException e) {
+				cause = e.getCause();
+			}
+		}
+		finally {
+			service.shutdown();
+		}
+	
+		check(cause instanceof IllegalArgumentException, "The execution failed with " + cause +
+			" instead of rejecting the tokens needed");
+	}
+	
+	static void testCancelledExecutionLeavesNoWaiter() throws Exception {
+		ActivityServiceImpl service = new ActivityServiceImpl("resources", 4, 100, 60, TimeUnit.SECONDS);
+	
+		try {
+			Resource db = service.createResource("db", 1);
+			Activity holder = service.create(new UsingAction("holder", 2000, db));
+			Activity waiter = service.create(new UsingAction("waiter", 0, db));
+			Activity other = service.create(new SleepingAction("other", 0, ExecutionResultType.SUCCESS));
+	
+			service.add(holder, waiter, other);
+	
+			ActivityCycle holding = service.submitFiltered(Collections.singletonList(holder), true);
+	
+			while (db.getAvailable() > 0) {
+				Thread.sleep(5);
+			}
+	
+			ActivityCycle waiting = service.submitFiltered(Collections.singletonList(waiter), true);
+	
+			// lets the activity find the token taken and leave its waiter
+			Thread.sleep(100);
+			waiting.cancel(true);
+	
+			// the service forgets about executions that are done once it starts another one
+			service.executeFiltered(Collections.singletonList(other), true);
+	
+			WeakReference<ActivityCycle> waitingRef = new WeakReference<ActivityCycle>(waiting);
+	
+			waiting = null;
+	
+			for (int i = 0; i < 50 && waitingRef.get() != null; i++) {
+				System.gc();
+				Thread.sleep(10);
+			}
+	
+			check(db.getAvailable() == 0, "The holder released its token before the check");
+			check(waitingRef.get() == null, "The cancelled execution is kept by its waiter");
+	
+			holding.await();
+		}
+		finally {
+			service.shutdown();
+		}
+	}
+	
+	// Inner classes
+	
+	/**
+	 * An action that sleeps while holding a token of each of its resources.
+	 */
+	private static class UsingAction extends SleepingAction implements ResourceAction {
+		// Attributes
+	
+		private final Resource[] mResources;
+	
+		// Constructors
+	
+		private UsingAction(String name, long sleepMs, Resource... resources) {
+			super(name, sleepMs, ExecutionResultType.SUCCESS);
+			mResources = resources;
+		}
+	
+		// Operations
+	
+		@Override
+		public Resource[] getResources() {
+			return mResources;
+		}
+	}
+}
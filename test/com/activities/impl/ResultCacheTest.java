@@ -0,0 +1,120 @@
+package com.activities.impl;
+
+import static com.activities.TestSupport.check;
+
+import java.util.concurrent.TimeUnit;
+
+import com.activities.TestSupport;
+import com.activities.TestSupport.SleepingAction;
+import com.activities.api.Activity;
+import com.activities.api.ActivityAction.ExecutionResultType;
+import com.activities.api.FingerprintedAction;
+
+/**
+ * Tests that an activity whose fingerprint and inputs are unchanged is reused instead of
+ * executed, that its entry is invalidated once an activity it depends on executes again, and
+ * that the least recently used entries are evicted once the cache is full.
+ */
+public class ResultCacheTest {
+	public static void main(String[] args) {
+		TestSupport.runTests(ResultCacheTest.class);
+	}
+	
+	static void testUnchangedActivityIsReused() throws Exception {
+		runReuse(true);
+	}
+	
+	static void testUnchangedActivityIsReusedSequentially() throws Exception {
+		runReuse(false);
+	}
+	
+	static void testLeastRecentlyUsedEntryIsEvicted() throws Exception {
+		ActivityServiceImpl service = new ActivityServiceImpl();
+		ResultCache cache = new ResultCache();
+		int capacity = Long.getLong("com.quest.glue.activityResultCache.count", 1000).intValue();
+		Activity[] activities = new Activity[capacity + 1];
+		Activity[] noInputs = new Activity[0];
+		
+		for (int i = 0; i < activities.length; i++) {
+			activities[i] = service.create(new SleepingAction("cached" + i, 0, ExecutionResultType.SUCCESS));
+		}
+		
+		for (int i = 0; i < capacity; i++) {
+			cache.record(activities[i], "v1", noInputs);
+		}
+		
+		// using the eldest entry makes the next one the least recently used
+		check(cache.isUnchanged(activities[0], "v1", noInputs), "The eldest entry was not kept");
+		
+		cache.record(activities[capacity], "v1", noInputs);
+		
+		check(cache.isUnchanged(activities[0], "v1", noInputs), "The recently used entry was evicted");
+		check(!cache.isUnchanged(activities[1], "v1", noInputs), "The least recently used entry was not evicted");
+		check(cache.isUnchanged(activities[capacity], "v1", noInputs), "The new entry was not kept");
+	}
+	
+	private static void runReuse(boolean parallel) throws Exception {
+		ActivityServiceImpl service = new ActivityServiceImpl("cache", 4, 100, 60, TimeUnit.SECONDS);
+		CountingAction source = new CountingAction("source");
+		CountingAction derived = new CountingAction("derived");
+		SleepingAction dependent = new SleepingAction("dependent", 0, ExecutionResultType.SUCCESS);
+		
+		try {
+			Activity sourceActivity = service.create(source);
+			Activity derivedActivity = service.create(derived);
+			Activity dependentActivity = service.create(dependent);
+			
+			service.add(sourceActivity, derivedActivity, dependentActivity);
+			service.before(sourceActivity, derivedActivity);
+			service.before(derivedActivity, dependentActivity);
+			
+			service.executeAll(parallel);
+			service.executeAll(parallel);
+			
+			check(source.getAttemptCount() == 1 && derived.getAttemptCount() == 1,
+				"Unchanged activities were executed again");
+			check(dependent.getAttemptCount() == 2, "The dependent of reused activities was not released");
+			
+			// the source executes again, so the entry of the activity depending on it is stale
+			source.mFingerprint = "v2";
+			
+			service.executeAll(parallel);
+			
+			check(source.getAttemptCount() == 2, "The changed activity was not executed again");
+			check(derived.getAttemptCount() == 2, "The activity was reused although its input executed again");
+			check(dependent.getAttemptCount() == 3, "The dependent was not executed");
+			
+			service.executeAll(parallel);
+			
+			check(source.getAttemptCount() == 2 && derived.getAttemptCount() == 2,
+				"The new executions were not reused");
+		}
+		finally {
+			service.shutdown();
+		}
+	}
+	
+	// Inner classes
+	
+	/**
+	 * An action whose fingerprint only changes when the test changes it.
+	 */
+	private static class CountingAction extends SleepingAction implements FingerprintedAction {
+		// Attributes
+		
+		private volatile Object mFingerprint = "v1";
+		
+		// Constructors
+		
+		private CountingAction(String name) {
+			super(name, 0, ExecutionResultType.SUCCESS);
+		}
+		
+		// Operations
+		
+		@Override
+		public Object getFingerprint() {
+			return mFingerprint;
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package com.activities.impl;
+
+import static com.activities.TestSupport.check;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.activities.TestSupport;
+import com.activities.TestSupport.SleepingAction;
+import com.activities.api.Activity;
+import com.activities.api.ActivityAction.ExecutionResultType;
+import com.activities.api.RetryPolicy;
+import com.activities.api.RetryableAction;
+
+/**
+ * Tests that a failed activity is retried after the delay of its retry policy without holding a
+ * worker while it waits, and that the policy of an action overrides the default number of
+ * retries.
+ */
+public class RetryTest {
+	public static void main(String[] args) {
+		TestSupport.runTests(RetryTest.class);
+	}
+	
+	static void testRetryWaitsWithoutHoldingWorker() throws Exception {
+		ActivityServiceImpl service = new ActivityServiceImpl("retry", 1, 100, 60, TimeUnit.SECONDS);
+		long delayMs = 300;
+		RetriedAction flaky = new RetriedAction(1, new RetryPolicy(3, delayMs, delayMs, TimeUnit.MILLISECONDS, 1, false));
+		TimedAction[] others = new TimedAction[5];
+		
+		try {
+			Activity flakyActivity = service.create(flaky);
+			Activity dependent = service.create(new SleepingAction("dependent", 0, ExecutionResultType.SUCCESS));
+			
+			// the dependent puts the flaky activity on the critical path, so it is executed first
+			service.add(flakyActivity, dependent);
+			service.before(flakyActivity, dependent);
+			
+			for (int i = 0; i < others.length; i++) {
+				others[i] = new TimedAction("other" + i);
+				service.add(service.create(others[i]));
+			}
+			
+			service.executeAll(true);
+			
+			long failedAt = flaky.mFailedAt;
+			long retriedAt = flaky.mRetriedAt;
+			
+			check(flaky.mAttempts.get() == 2, "The flaky action was attempted " + flaky.mAttempts.get() + " times");
+			check(retriedAt - failedAt >= TimeUnit.MILLISECONDS.toNanos(delayMs - 20), "The retry came " +
+				TimeUnit.NANOSECONDS.toMillis(retriedAt - failedAt) + " ms after the failure");
+			
+			int startedWhileWaiting = 0;
+			
+			for (TimedAction other : others) {
+				if (other.mStartedAt > failedAt && other.mStartedAt < retriedAt) {
+					startedWhileWaiting++;
+				}
+			}
+			
+			check(startedWhileWaiting == others.length, "Only " + startedWhileWaiting +
+				" activities were executed by the only worker while the flaky one waited to be retried");
+		}
+		finally {
+			service.shutdown();
+		}
+	}
+	
+	static void testPolicyOverridesMaxRetries() throws Exception {
+		ActivityServiceImpl service = new ActivityServiceImpl("retry", 4, 100, 60, TimeUnit.SECONDS);
+		int defaultMaxRetries = Long.getLong("com.quest.glue.maxActivityRetry.count", 5).intValue();
+		
+		try {
+			for (int maxRetries : new int[] {1, defaultMaxRetries + 2}) {
+				for (boolean parallel : new boolean[] {true, false}) {
+					RetriedAction failing = new RetriedAction(Integer.MAX_VALUE,
+						new RetryPolicy(maxRetries, 0, 0, TimeUnit.MILLISECONDS, 1, false));
+					Activity activity = service.create(failing);
+					
+					service.add(activity);
+					service.executeAll(parallel);
+					service.remove(activity);
+					
+					check(failing.mAttempts.get() == maxRetries + 1, "An action allowed " + maxRetries +
+						" retries was attempted " + failing.mAttempts.get() + " times");
+				}
+			}
+		}
+		finally {
+			service.shutdown();
+		}
+	}
+	
+	// Inner classes
+	
+	/**
+	 * An action that fails a number of times before it succeeds, and is retried according to its
+	 * own policy.
+	 */
+	private static class RetriedAction extends SleepingAction implements RetryableAction {
+		// Attributes
+		
+		private final int mFailures;
+		private final RetryPolicy mRetryPolicy;
+		private final AtomicInteger mAttempts = new AtomicInteger();
+		private volatile long mFailedAt;
+		private volatile long mRetriedAt;
+		
+		// Constructors
+		
+		private RetriedAction(int failures, RetryPolicy retryPolicy) {
+			super("flaky", 0, ExecutionResultType.SUCCESS);
+			
+			mFailures = failures;
+			mRetryPolicy = retryPolicy;
+		}
+		
+		// Operations
+		
+		@Override
+		public ExecutionResultType perform() throws InterruptedException {
+			int attempt = mAttempts.incrementAndGet();
+			
+			if (attempt > 1) {
+				mRetriedAt = System.nanoTime();
+			}
+			
+			if (attempt <= mFailures) {
+				mFailedAt = System.nanoTime();
+				
+				return ExecutionResultType.FAILURE;
+			}
+			
+			return super.perform();
+		}
+		
+		@Override
+		public boolean canRetry() {
+			return true;
+		}
+		
+		@Override
+		public RetryPolicy getRetryPolicy() {
+			return mRetryPolicy;
+		}
+	}
+	
+	/**
+	 * An action that records when it started.
+	 */
+	private static class TimedAction extends SleepingAction {
+		// Attributes
+		
+		private volatile long mStartedAt;
+		
+		// Constructors
+		
+		private TimedAction(String name) {
+			super(name, 20, ExecutionResultType.SUCCESS);
+		}
+		
+		// Operations
+		
+		@Override
+		public ExecutionResultType perform() throws InterruptedException {
+			mStartedAt = System.nanoTime();
+			
+			return super.perform();
+		}
+	}
+}
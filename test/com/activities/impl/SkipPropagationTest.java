@@ -0,0 +1,131 @@
+package com.activities.impl;
+
+import static com.activities.TestSupport.check;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.activities.TestSupport;
+import com.activities.TestSupport.SleepingAction;
+import com.activities.api.Activity;
+import com.activities.api.ActivityAction.ExecutionResultType;
+
+/**
+ * Tests that the dependents of a failed activity are skipped for one execution only, each of
+ * them once, however deep or converging the graph below the failure is.
+ */
+public class SkipPropagationTest {
+	public static void main(String[] args) {
+		TestSupport.runTests(SkipPropagationTest.class);
+	}
+	
+	static void testDeepChainIsSkippedOnce() throws Exception {
+		runDeepChain(true);
+	}
+	
+	static void testDeepChainIsSkippedOnceSequentially() throws Exception {
+		runDeepChain(false);
+	}
+	
+	static void testConvergingDependentsAreCountedOnce() throws Exception {
+		runConverging(true);
+	}
+	
+	static void testConvergingDependentsAreCountedOnceSequentially() throws Exception {
+		runConverging(false);
+	}
+	
+	private static void runDeepChain(boolean parallel) throws Exception {
+		ActivityServiceImpl service = new ActivityServiceImpl("skips", 4, 100, 60, TimeUnit.SECONDS);
+		FlakyAction root = new FlakyAction();
+		int length = 3000;
+		SleepingAction[] actions = new SleepingAction[length];
+	
+		try {
+			Activity previous = service.create(root);
+	
+			service.add(previous);
+	
+			for (int i = 0; i < length; i++) {
+				actions[i] = new SleepingAction("link" + i, 0, ExecutionResultType.SUCCESS);
+	
+				Activity link = service.create(actions[i]);
+	
+				service.add(link);
+				service.before(previous, link);
+				previous = link;
+			}
+	
+			service.executeAll(parallel);
+	
+			for (SleepingAction action : actions) {
+				check(action.getAttemptCount() == 0, action.getName() + " was executed after its root failed");
+			}
+	
+			check(previous.isEnabled(), "The last link was disabled by a failure that only skips it");
+	
+			service.executeAll(parallel);
+	
+			for (SleepingAction action : actions) {
+				check(action.getAttemptCount() == 1, action.getName() + " was executed " + action.getAttemptCount() +
+					" times once its root succeeded");
+			}
+		}
+		finally {
+			service.shutdown();
+		}
+	}
+	
+	private static void runConverging(boolean parallel) throws Exception {
+		ActivityServiceImpl service = new ActivityServiceImpl("skips", 4, 100, 60, TimeUnit.SECONDS);
+		SleepingAction tail = new SleepingAction("tail", 0, ExecutionResultType.SUCCESS);
+		SleepingAction independent = new SleepingAction("independent", 300, ExecutionResultType.SUCCESS);
+	
+		try {
+			Activity first = service.create(new SleepingAction("first", 0, ExecutionResultType.FAILURE));
+			Activity second = service.create(new SleepingAction("second", 50, ExecutionResultType.DISABLE_ONCE));
+			Activity join = service.create(new SleepingAction("join", 0, ExecutionResultType.SUCCESS));
+			Activity last = service.create(tail);
+	
+			service.add(first, second, join, last, service.create(independent));
+			service.before(first, join);
+			service.before(second, join);
+			service.before(join, last);
+	
+			service.executeAll(parallel);
+	
+			// an execution that counted the skipped activities twice would return before it
+			check(independent.getAttemptCount() == 1, "The execution completed before the independent activity");
+			check(tail.getAttemptCount() == 0, "The tail was executed after both of its roots failed");
+		}
+		finally {
+			service.shutdown();
+		}
+	}
+	
+	// Inner classes
+	
+	/**
+	 * An action that fails its first attempt and succeeds afterwards.
+	 */
+	private static class FlakyAction extends SleepingAction {
+		// Attributes
+	
+		private final AtomicBoolean mFailed = new AtomicBoolean();
+	
+		// Constructors
+	
+		private FlakyAction() {
+			super("root", 0, ExecutionResultType.SUCCESS);
+		}
+	
+		// Operations
+	
+		@Override
+		public ExecutionResultType perform() throws InterruptedException {
+			ExecutionResultType result = super.perform();
+	
+			return mFailed.getAndSet(true) ? result : ExecutionResultType.FAILURE;
+		}
+	}
+}
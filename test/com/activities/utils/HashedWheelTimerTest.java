@@ -0,0 +1,86 @@
+package com.activities.utils;
+
+import static com.activities.TestSupport.check;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.activities.TestSupport;
+
+/**
+ * Tests that a timer with a dispatcher keeps ticking while one of its timeouts is slow.
+ */
+public class HashedWheelTimerTest {
+	public static void main(String[] args) {
+		TestSupport.runTests(HashedWheelTimerTest.class);
+	}
+	
+	static void testSlowTimeoutDoesNotDelayLaterTicks() throws Exception {
+		ExecutorService dispatcher = Executors.newCachedThreadPool(new CorePoolThreadFactory("TestDispatcher"));
+		HashedWheelTimer timer = new HashedWheelTimer("TestTimer", 10, TimeUnit.MILLISECONDS, 64, dispatcher);
+		final CountDownLatch latch = new CountDownLatch(1);
+		final AtomicLong firedAt = new AtomicLong();
+		final String[] threadName = new String[1];
+	
+		try {
+			long start = System.nanoTime();
+	
+			timer.schedule(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						Thread.sleep(500);
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}, 10, TimeUnit.MILLISECONDS);
+	
+			timer.schedule(new Runnable() {
+				@Override
+				public void run() {
+					threadName[0] = Thread.currentThread().getName();
+					firedAt.set(System.nanoTime());
+					latch.countDown();
+				}
+			}, 60, TimeUnit.MILLISECONDS);
+	
+			check(latch.await(2, TimeUnit.SECONDS), "The second timeout never ran");
+	
+			long delayMs = TimeUnit.NANOSECONDS.toMillis(firedAt.get() - start);
+	
+			check(delayMs < 300, "The second timeout ran after " + delayMs + " ms, behind the slow one");
+			check(threadName[0].startsWith("TestDispatcher"), "The timeout ran on " + threadName[0]);
+		}
+		finally {
+			timer.stop();
+			dispatcher.shutdownNow();
+		}
+	}
+	
+	static void testCancelledTimeoutDoesNotRun() throws Exception {
+		HashedWheelTimer timer = new HashedWheelTimer("TestTimer", 10, TimeUnit.MILLISECONDS, 64);
+		final AtomicLong runCount = new AtomicLong();
+	
+		try {
+			HashedWheelTimer.Timeout timeout = timer.schedule(new Runnable() {
+				@Override
+				public void run() {
+					runCount.incrementAndGet();
+				}
+			}, 30, TimeUnit.MILLISECONDS);
+	
+			check(timeout.cancel(), "The timeout could not be cancelled");
+			Thread.sleep(100);
+			check(runCount.get() == 0, "The cancelled timeout ran");
+			check(!timeout.isExpired(), "The cancelled timeout expired");
+		}
+		finally {
+			timer.stop();
+		}
+	}
+}
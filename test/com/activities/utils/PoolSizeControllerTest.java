@@ -0,0 +1,99 @@
+package com.activities.utils;
+
+import static com.activities.TestSupport.check;
+
+import java.util.concurrent.TimeUnit;
+
+import com.activities.TestSupport;
+
+/**
+ * Tests that the controller grows a pool whose tasks block and shrinks one whose tasks are bound
+ * by the CPU, staying within its bounds.
+ */
+public class PoolSizeControllerTest {
+	private static final int MIN_POOL_SIZE = 2;
+	private static final int MAX_POOL_SIZE = 64;
+	
+	private static volatile long sSink;
+	
+	public static void main(String[] args) {
+		TestSupport.runTests(PoolSizeControllerTest.class);
+	}
+	
+	static void testGrowsForBlockingTasks() throws Exception {
+		int size = runLoad(true, MIN_POOL_SIZE);
+	
+		check(size >= MAX_POOL_SIZE / 2, "The pool only grew to " + size + " threads for blocking tasks");
+	}
+	
+	static void testShrinksForCpuBoundTasks() throws Exception {
+		int size = runLoad(false, MAX_POOL_SIZE);
+		int expected = Math.max(2 * Runtime.getRuntime().availableProcessors(), 8);
+	
+		// with as many cores as the pool may have threads there is nothing to shed
+		if (expected < MAX_POOL_SIZE / 2) {
+			check(size <= expected, "The pool still has " + size + " threads for CPU-bound tasks");
+		}
+	}
+	
+	/**
+	 * Keeps the pool busy with tasks for a few seconds while the controller resizes it.
+	 *
+	 * @param blocking If true, the tasks sleep. Otherwise, they spin.
+	 * @param initialSize The maximum size of the pool before the controller starts.
+	 * @return The maximum size of the pool the controller settled on.
+	 */
+	private static int runLoad(final boolean blocking, int initialSize) throws Exception {
+		HashedWheelTimer timer = new HashedWheelTimer("TestTimer", 10, TimeUnit.MILLISECONDS, 64);
+		PriorityThreadPool pool = new PriorityThreadPool(1, initialSize, 60, TimeUnit.SECONDS,
+			new CorePoolThreadFactory("TestPool"));
+		PoolSizeController controller = new PoolSizeController(pool, MIN_POOL_SIZE, MAX_POOL_SIZE, 200,
+			TimeUnit.MILLISECONDS, timer);
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				if (blocking) {
+					try {
+						Thread.sleep(10);
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				else {
+					long start = System.nanoTime();
+	
+					while (System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(2)) {
+						sSink++;
+					}
+				}
+			}
+		};
+	
+		controller.start();
+	
+		try {
+			long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(6);
+	
+			while (System.nanoTime() < end) {
+				while (pool.getQueue().size() < 200) {
+					pool.submit(task);
+				}
+	
+				int size = pool.getMaximumPoolSize();
+	
+				check(size >= MIN_POOL_SIZE && size <= MAX_POOL_SIZE, "The pool was resized to " + size +
+					" threads");
+	
+				Thread.sleep(5);
+			}
+	
+			return pool.getMaximumPoolSize();
+		}
+		finally {
+			controller.stop();
+			pool.shutdownNow();
+			timer.stop();
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package com.activities.utils;
+
+import static com.activities.TestSupport.check;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import com.activities.TestSupport;
+
+/**
+ * Tests that the order rejects a dependency that would create a cycle as it is added, and that
+ * it stays a valid topological order while vertices and dependencies are added and removed.
+ */
+public class TopologicalOrderTest {
+	public static void main(String[] args) {
+		TestSupport.runTests(TopologicalOrderTest.class);
+	}
+	
+	static void testCyclicDependencyIsRejectedWithItsPath() throws Exception {
+		TopologicalOrder<String> order = new TopologicalOrder<String>();
+		DAGVertex<String> a = new DAGVertex<String>("a");
+		DAGVertex<String> b = new DAGVertex<String>("b");
+		DAGVertex<String> c = new DAGVertex<String>("c");
+		
+		order.before(a, b);
+		order.before(b, c);
+		
+		String message = null;
+		
+		try {
+			order.before(c, a);
+		}
+		catch (CyclicDataException e) {
+			message = e.getMessage();
+		}
+		
+		check(message != null, "The dependency closing the cycle was accepted");
+		check(message.contains("'c' -> 'a' -> 'b' -> 'c'"), "The cycle is not named by its path: " + message);
+		check(c.getSucceedingCount() == 0 && a.getPrecedingCount() == 0, "The rejected dependency was added");
+		checkOrder(order);
+	}
+	
+	static void testOrderStaysValidAfterInsertsAndRemovals() throws Exception {
+		TopologicalOrder<Integer> order = new TopologicalOrder<Integer>();
+		List<DAGVertex<Integer>> vertexList = new ArrayList<DAGVertex<Integer>>();
+		Random random = new Random(42);
+		int next = 0;
+		int rejected = 0;
+		
+		for (int i = 0; i < 100; i++) {
+			DAGVertex<Integer> vertex = new DAGVertex<Integer>(next++);
+			
+			order.add(vertex);
+			vertexList.add(vertex);
+		}
+		
+		for (int step = 0; step < 3000; step++) {
+			int operation = random.nextInt(10);
+			
+			if (operation == 0 && vertexList.size() > 10) {
+				order.remove(vertexList.remove(random.nextInt(vertexList.size())));
+			}
+			else if (operation == 1) {
+				DAGVertex<Integer> vertex = new DAGVertex<Integer>(next++);
+				
+				order.add(vertex);
+				vertexList.add(vertex);
+			}
+			else {
+				DAGVertex<Integer> preceding = vertexList.get(random.nextInt(vertexList.size()));
+				DAGVertex<Integer> succeeding = vertexList.get(random.nextInt(vertexList.size()));
+				
+				if (preceding == succeeding) {
+					continue;
+				}
+				
+				boolean cyclic = isReachable(succeeding, preceding);
+				
+				try {
+					order.before(preceding, succeeding);
+					
+					check(!cyclic, "A dependency of " + succeeding + " on " + preceding + " closed a cycle");
+				}
+				catch (CyclicDataException e) {
+					check(cyclic, "A dependency of " + succeeding + " on " + preceding + " was rejected: " +
+						e.getMessage());
+					
+					rejected++;
+				}
+			}
+			
+			check(order.size() == vertexList.size(), "The order holds " + order.size() + " vertices instead of " +
+				vertexList.size());
+			checkOrder(order);
+		}
+		
+		check(rejected > 0, "No dependency closed a cycle, so rejections were not exercised");
+	}
+	
+	/**
+	 * Checks that every dependency of the vertices in the order goes from an earlier to a later
+	 * vertex of the order.
+	 */
+	private static <E> void checkOrder(TopologicalOrder<E> order) {
+		List<DAGVertex<E>> sortedList = order.getSortedList();
+		HashMap<DAGVertex<E>, Integer> positionByVertexMap = new HashMap<DAGVertex<E>, Integer>();
+		
+		for (int i = 0; i < sortedList.size(); i++) {
+			positionByVertexMap.put(sortedList.get(i), i);
+		}
+		
+		for (int i = 0; i < sortedList.size(); i++) {
+			DAGVertex<E> vertex = sortedList.get(i);
+			
+			for (int j = 0; j < vertex.getSucceedingCount(); j++) {
+				Integer position = positionByVertexMap.get(vertex.getSucceeding(j));
+				
+				check(position != null && position > i, vertex + " is not ordered before " +
+					vertex.getSucceeding(j));
+			}
+		}
+	}
+	
+	private static <E> boolean isReachable(DAGVertex<E> from, DAGVertex<E> to) {
+		HashSet<DAGVertex<E>> foundSet = new HashSet<DAGVertex<E>>();
+		List<DAGVertex<E>> stack = new ArrayList<DAGVertex<E>>();
+		
+		stack.add(from);
+		
+		while (!stack.isEmpty()) {
+			DAGVertex<E> vertex = stack.remove(stack.size() - 1);
+			
+			if (vertex == to) {
+				return true;
+			}
+			
+			for (int i = 0; i < vertex.getSucceedingCount(); i++) {
+				if (foundSet.add(vertex.getSucceeding(i))) {
+					stack.add(vertex.getSucceeding(i));
+				}
+			}
+		}
+		
+		return false;
+	}
+}
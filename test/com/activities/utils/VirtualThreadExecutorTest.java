@@ -0,0 +1,108 @@
+package com.activities.utils;
+
+import static com.activities.TestSupport.check;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.activities.TestSupport;
+
+/**
+ * Tests that tasks are neither lost nor stranded when no thread can be started for them.
+ */
+public class VirtualThreadExecutorTest {
+	public static void main(String[] args) {
+		TestSupport.runTests(VirtualThreadExecutorTest.class);
+	}
+	
+	static void testTaskWithoutThreadIsRejected() throws Exception {
+		FailingThreadFactory threadFactory = new FailingThreadFactory();
+		VirtualThreadExecutor executor = new VirtualThreadExecutor(2, threadFactory);
+	
+		threadFactory.mFailing.set(true);
+	
+		boolean rejected = false;
+	
+		try {
+			executor.submit(new Task(null), 0);
+		}
+		catch (RejectedExecutionException e) {
+			rejected = true;
+		}
+	
+		check(rejected, "A task no thread could be started for was accepted");
+		check(executor.getQueueSize() == 0, "The rejected task was kept in the queue");
+		check(executor.getActiveCount() == 0, "The permit of the rejected task was kept");
+	
+		threadFactory.mFailing.set(false);
+	
+		Future<Boolean> future = executor.submit(new Task(null), 0);
+	
+		check(future.get(5, TimeUnit.SECONDS), "The task was not run once threads could be started again");
+		executor.shutdown();
+	}
+	
+	static void testQueuedTaskRunsOnFinishingThread() throws Exception {
+		FailingThreadFactory threadFactory = new FailingThreadFactory();
+		VirtualThreadExecutor executor = new VirtualThreadExecutor(1, threadFactory);
+		CountDownLatch release = new CountDownLatch(1);
+	
+		Future<Boolean> running = executor.submit(new Task(release), 0);
+		// waits for the only permit
+		Future<Boolean> queued = executor.submit(new Task(null), 0);
+	
+		threadFactory.mFailing.set(true);
+		release.countDown();
+	
+		check(running.get(5, TimeUnit.SECONDS), "The running task did not complete");
+		check(queued.get(5, TimeUnit.SECONDS), "The queued task was stranded when no thread could be started");
+		executor.shutdown();
+	}
+	
+	// Inner classes
+	
+	/**
+	 * A task that waits for a latch, if any.
+	 */
+	private static class Task implements Callable<Boolean> {
+		private final CountDownLatch mLatch;
+	
+		private Task(CountDownLatch latch) {
+			mLatch = latch;
+		}
+	
+		@Override
+		public Boolean call() throws InterruptedException {
+			if (mLatch != null) {
+				mLatch.await();
+			}
+	
+			return true;
+		}
+	}
+	
+	/**
+	 * A factory of daemon threads that fails to start them on request.
+	 */
+	private static class FailingThreadFactory implements ThreadFactory {
+		private final AtomicBoolean mFailing = new AtomicBoolean();
+	
+		@Override
+		public Thread newThread(Runnable runnable) {
+			if (mFailing.get()) {
+				throw new IllegalStateException("No more threads");
+			}
+	
+			Thread thread = new Thread(runnable);
+	
+			thread.setDaemon(true);
+	
+			return thread;
+		}
+	}
+}